@@ -0,0 +1,60 @@
+package com.mentalab;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of one {@link BandPowerEngine} update: every operation adds one hop of samples of all
+ * channels and analyses the windows
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BandPowerBenchmark {
+
+  private static final int HOP = 25;
+
+  @Param({"8"})
+  int channelCount;
+
+  @Param({"256", "512", "1024"})
+  int windowSize;
+
+  private BandPowerEngine engine;
+  private SampleBlock[] hop;
+
+  @Setup
+  public void setUp() {
+    engine = new BandPowerEngine(250, windowSize, HOP);
+    final Random random = new Random(42);
+    final float[] samples = new float[HOP * channelCount];
+    for (int index = 0; index < samples.length; index++) {
+      samples[index] = (float) random.nextGaussian() * 20;
+    }
+    hop = new SampleBlock[] {new SampleBlock(146, 0xFF, 0, -1, channelCount, HOP, samples)};
+    // fill the windows so every operation runs an update
+    for (int index = 0; index < windowSize / HOP + 1; index++) {
+      engine.onMessage(hop);
+    }
+  }
+
+  @Benchmark
+  public long update() {
+    engine.onMessage(hop);
+    return engine.getUpdateCount();
+  }
+}
@@ -0,0 +1,90 @@
+package com.mentalab;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/** Builds Explore frames for the benchmarks */
+final class BenchmarkFrames {
+
+  static final int ORIENTATION_RATE = 20;
+
+  private BenchmarkFrames() {}
+
+  /** PID of the ExG packet carrying channelCount channels */
+  static int exgPid(int channelCount) {
+    return channelCount == 4 ? 144 : channelCount == 8 ? 146 : 62;
+  }
+
+  /** Number of sample rows per ExG packet of channelCount channels */
+  static int exgRows(int channelCount) {
+    return channelCount == 4 ? 33 : channelCount == 8 ? 16 : 4;
+  }
+
+  /** Packet data of an ExG packet: rows of one status word and channelCount samples */
+  static byte[] exgData(int channelCount, Random random) {
+    return exgData(channelCount, true, random);
+  }
+
+  /** Packet data of an ExG packet, rows of the raw variants have no status word */
+  static byte[] exgData(int channelCount, boolean hasStatus, Random random) {
+    final int rowSamples = hasStatus ? channelCount + 1 : channelCount;
+    final byte[] data = new byte[exgRows(channelCount) * rowSamples * 3];
+    random.nextBytes(data);
+    return data;
+  }
+
+  static byte[] orientationData(Random random) {
+    final byte[] data = new byte[9 * 2];
+    random.nextBytes(data);
+    return data;
+  }
+
+  static byte[] environmentData(Random random) {
+    final byte[] data = new byte[5];
+    random.nextBytes(data);
+    return data;
+  }
+
+  static byte[] frame(int pid, int count, long timestamp, byte[] data) {
+    final int payloadLength = 4 + data.length + FrameParser.FLETCHER_LENGTH;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(pid);
+    out.write(count);
+    out.write(payloadLength);
+    out.write(payloadLength >> 8);
+    for (int shift = 0; shift < 32; shift += 8) {
+      out.write((int) (timestamp >> shift));
+    }
+    out.write(data, 0, data.length);
+    out.write(0xAF);
+    out.write(0xBE);
+    out.write(0xAD);
+    out.write(0xDE);
+    return out.toByteArray();
+  }
+
+  /**
+   * Builds a stream of frameCount frames mixing ExG, orientation and environment frames in the
+   * proportions a device sends them at the given sampling rate
+   */
+  static byte[] stream(int channelCount, int samplingRate, int frameCount) {
+    final Random random = new Random(42);
+    final int exgPerSecond = Math.max(1, samplingRate / exgRows(channelCount));
+    final int framesPerSecond = exgPerSecond + ORIENTATION_RATE + 1;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int index = 0; index < frameCount; index++) {
+      final int slot = index % framesPerSecond;
+      final long timestamp = index * 10_000L / framesPerSecond;
+      final byte[] frame;
+      if (slot < exgPerSecond) {
+        frame = frame(exgPid(channelCount), index, timestamp, exgData(channelCount, random));
+      } else if (slot < exgPerSecond + ORIENTATION_RATE) {
+        frame = frame(13, index, timestamp, orientationData(random));
+      } else {
+        frame = frame(19, index, timestamp, environmentData(random));
+      }
+      out.write(frame, 0, frame.length);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,62 @@
+package com.mentalab;
+
+import com.mentalab.exception.InvalidDataException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Full stream decoding through {@link MentalabCodec}, one operation per frame */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+  private static final int FRAMES = 1024;
+
+  @Param({"4", "8"})
+  int channelCount;
+
+  @Param({"250", "500", "1000"})
+  int samplingRate;
+
+  /** Decoding with and without {@link MetricsRegistry} recording, to show its cost */
+  @Param({"true", "false"})
+  boolean metrics;
+
+  private ByteArrayInputStream stream;
+  private FrameParser parser;
+
+  @Setup
+  public void setUp() {
+    MetricsRegistry.getInstance().setEnabled(metrics);
+    stream = new ByteArrayInputStream(BenchmarkFrames.stream(channelCount, samplingRate, FRAMES));
+    parser = MentalabCodec.createFrameParser(stream);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(FRAMES)
+  public int decodeStream() throws IOException, InvalidDataException {
+    stream.reset();
+    int frames = 0;
+    int read;
+    while ((read = parser.readFrames()) >= 0) {
+      frames += read;
+    }
+    return frames;
+  }
+}
@@ -0,0 +1,64 @@
+package com.mentalab;
+
+import com.mentalab.exception.InvalidDataException;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** ExG packet decoding, one operation per packet */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExgDecoderBenchmark {
+
+  @Param({"4", "8"})
+  int channelCount;
+
+  /** Enabled channels, 0 for all of them */
+  @Param({"0", "5"})
+  int channelMask;
+
+  private byte[] data;
+  private SampleStore store;
+  private DataPacket packet;
+
+  @Setup
+  public void setUp() throws InvalidDataException {
+    data = BenchmarkFrames.exgData(channelCount, new Random(42));
+    packet = channelCount == 4 ? new Eeg94() : new Eeg98();
+    packet.setChannelMask(channelMask);
+    packet.convertData(data, 0, data.length);
+    store = new SampleStore();
+  }
+
+  @Benchmark
+  public double[] toInt32() throws InvalidDataException, IOException {
+    return DataPacket.toInt32(data, 0, data.length);
+  }
+
+  @Benchmark
+  public DataPacket convertData() throws InvalidDataException {
+    packet.reset();
+    packet.convertData(data, 0, data.length);
+    return packet;
+  }
+
+  @Benchmark
+  public void pushDataInQueue() {
+    FrameDecoder.pushDataInQueue(store, packet);
+  }
+}
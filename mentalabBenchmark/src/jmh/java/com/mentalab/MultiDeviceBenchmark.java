@@ -0,0 +1,90 @@
+package com.mentalab;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Several {@link DeviceSession}s decoded at once on one {@link DecoderPool}, reports the aggregate
+ * frames per second next to the invocation rate
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiDeviceBenchmark {
+
+  private static final int FRAMES = 1024;
+
+  @Param({"1", "2", "4"})
+  int devices;
+
+  @Param({"2"})
+  int threads;
+
+  private byte[] frames;
+  private DecoderPool pool;
+  private DeviceSession[] sessions;
+
+  /** Frames decoded by all sessions */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public long frames;
+  }
+
+  @Setup
+  public void setUp() {
+    frames = BenchmarkFrames.stream(8, 250, FRAMES);
+    pool = new DecoderPool(threads);
+    sessions = new DeviceSession[devices];
+    for (int index = 0; index < devices; index++) {
+      sessions[index] = new DeviceSession("Explore_" + index);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public long decodeDevices(Counters counters) {
+    final long before = frameCount();
+    for (DeviceSession session : sessions) {
+      session.connect(new ByteArrayInputStream(frames), null, pool);
+    }
+    // byte array streams report no bytes at their end, so wait for the frames and disconnect
+    while (frameCount() - before < (long) FRAMES * devices) {
+      Thread.yield();
+    }
+    for (DeviceSession session : sessions) {
+      session.disconnect();
+    }
+    final long decoded = frameCount() - before;
+    counters.frames += decoded;
+    return decoded;
+  }
+
+  private long frameCount() {
+    long count = 0;
+    for (DeviceSession session : sessions) {
+      count += session.getFrameCount();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,59 @@
+package com.mentalab;
+
+import com.mentalab.exception.InvalidDataException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Orientation and environment packet decoding, one operation per packet */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SensorDecoderBenchmark {
+
+  private final Orientation orientation = new Orientation();
+  private final Environment environment = new Environment();
+  private SampleStore store;
+  private byte[] orientationData;
+  private byte[] environmentData;
+
+  @Setup
+  public void setUp() throws InvalidDataException {
+    final Random random = new Random(42);
+    orientationData = BenchmarkFrames.orientationData(random);
+    environmentData = BenchmarkFrames.environmentData(random);
+    convertOrientation();
+    store = new SampleStore();
+  }
+
+  @Benchmark
+  public Packet convertOrientation() throws InvalidDataException {
+    orientation.reset();
+    orientation.convertData(orientationData, 0, orientationData.length);
+    return orientation;
+  }
+
+  @Benchmark
+  public Packet convertEnvironment() throws InvalidDataException {
+    environment.reset();
+    environment.convertData(environmentData, 0, environmentData.length);
+    return environment;
+  }
+
+  @Benchmark
+  public void pushOrientation() {
+    FrameDecoder.pushDataInQueue(store, orientation);
+  }
+}
@@ -0,0 +1,178 @@
+package com.mentalab;
+
+/**
+ * Sliding window spectral analysis of the ExG channels of a device stream
+ *
+ * <p>Keeps the last windowSize samples of every channel and, every hop samples, computes the Hann
+ * windowed power spectrum of each channel and publishes the power of the EEG {@link
+ * BandPowers.Band}s. FFT tables, the window and all buffers are allocated when the engine is
+ * created or the channel count changes, so an update only allocates the published result:
+ *
+ * <pre>{@code
+ * BandPowerEngine engine = new BandPowerEngine(250, 256, 25); // ten updates per second
+ * PuSubManager.getInstance().subscribe(MentalabCodec.SAMPLE_BLOCKS, engine);
+ * PuSubManager.getInstance().subscribe(BandPowerEngine.BAND_POWERS, powers -> ...);
+ * }</pre>
+ */
+public final class BandPowerEngine implements PuSubManager.Listener<SampleBlock[]> {
+
+  /** Default topic the band powers are published on */
+  public static final Topic<BandPowers> BAND_POWERS = new Topic<>("BandPowers", BandPowers.class);
+
+  private static final int BAND_COUNT = BandPowers.BANDS.length;
+
+  private final Topic<BandPowers> topic;
+  private final int samplingRate;
+  private final int hop;
+  private final RealFft fft;
+  private final double[] window;
+  /** Converts summed |X[k]|^2 into the mean squared amplitude of the windowed signal */
+  private final double scale;
+
+  private final int[] firstBin = new int[BAND_COUNT];
+  private final int[] endBin = new int[BAND_COUNT];
+  private final double[] input;
+  private final double[] power;
+
+  private int channelCount = 0;
+  /** Last windowSize samples of every channel, channel by channel */
+  private float[] history = new float[0];
+
+  private int writeIndex = 0;
+  private int filled = 0;
+  private int sinceUpdate = 0;
+  private float[] latest = new float[0];
+  private long updateCount = 0;
+
+  /**
+   * Creates an engine publishing on {@link #BAND_POWERS}
+   *
+   * @param samplingRate ExG sampling rate in Hz
+   * @param windowSize samples per analysis window, a power of two
+   * @param hop samples between two updates, at most windowSize
+   */
+  public BandPowerEngine(int samplingRate, int windowSize, int hop) {
+    this(BAND_POWERS, samplingRate, windowSize, hop);
+  }
+
+  /** Creates an engine publishing on the given topic, e.g. one per device */
+  public BandPowerEngine(Topic<BandPowers> topic, int samplingRate, int windowSize, int hop) {
+    if (hop < 1 || hop > windowSize) {
+      throw new IllegalArgumentException("Hop out of range: " + hop);
+    }
+    if (samplingRate <= 0) {
+      throw new IllegalArgumentException("Illegal sampling rate: " + samplingRate);
+    }
+    this.topic = topic;
+    this.samplingRate = samplingRate;
+    this.hop = hop;
+    fft = new RealFft(windowSize);
+    input = new double[windowSize];
+    power = new double[windowSize / 2 + 1];
+
+    window = new double[windowSize];
+    double energy = 0;
+    for (int index = 0; index < windowSize; index++) {
+      window[index] = 0.5 - 0.5 * Math.cos(2 * Math.PI * index / windowSize);
+      energy += window[index] * window[index];
+    }
+    scale = 2 / (windowSize * energy);
+
+    for (int band = 0; band < BAND_COUNT; band++) {
+      firstBin[band] = bin(BandPowers.BANDS[band].getLow(), windowSize);
+      endBin[band] = bin(BandPowers.BANDS[band].getHigh(), windowSize);
+    }
+  }
+
+  /** First bin at or above a frequency, at most the Nyquist bin + 1 */
+  private int bin(double frequency, int windowSize) {
+    return (int) Math.min(Math.ceil(frequency * windowSize / samplingRate), windowSize / 2 + 1);
+  }
+
+  @Override
+  public synchronized void onMessage(SampleBlock[] blocks) {
+    for (SampleBlock block : blocks) {
+      if (CsvExporter.Source.EXG.matches(block.getPid())) {
+        add(block);
+      }
+    }
+  }
+
+  /** Number of windows analysed */
+  public synchronized long getUpdateCount() {
+    return updateCount;
+  }
+
+  /** Power of a band of a channel in the last window in uV^2, 0 before the first update */
+  public synchronized float getPower(int channel, BandPowers.Band band) {
+    final int index = channel * BAND_COUNT + band.ordinal();
+    return index < latest.length ? latest[index] : 0;
+  }
+
+  private void add(SampleBlock block) {
+    final int channels = block.getChannelCount();
+    final int size = fft.size();
+    if (channels != channelCount) {
+      channelCount = channels;
+      history = new float[channels * size];
+      latest = new float[channels * BAND_COUNT];
+      writeIndex = filled = sinceUpdate = 0;
+    }
+    for (int sample = 0; sample < block.getSampleCount(); sample++) {
+      for (int channel = 0; channel < channels; channel++) {
+        history[channel * size + writeIndex] = block.getSample(sample, channel);
+      }
+      writeIndex = (writeIndex + 1) & (size - 1);
+      if (filled < size) {
+        filled++;
+      }
+      if (++sinceUpdate >= hop && filled == size) {
+        sinceUpdate = 0;
+        update();
+        publish(block, sample);
+      }
+    }
+  }
+
+  private void update() {
+    final int size = fft.size();
+    for (int channel = 0; channel < channelCount; channel++) {
+      final int base = channel * size;
+      // oldest sample first, the mean is removed so DC does not leak into the delta band
+      double mean = 0;
+      for (int index = 0; index < size; index++) {
+        mean += history[base + ((writeIndex + index) & (size - 1))];
+      }
+      mean /= size;
+      for (int index = 0; index < size; index++) {
+        input[index] = (history[base + ((writeIndex + index) & (size - 1))] - mean) * window[index];
+      }
+      fft.powerSpectrum(input, power);
+      for (int band = 0; band < BAND_COUNT; band++) {
+        double sum = 0;
+        for (int bin = firstBin[band]; bin < endBin[band]; bin++) {
+          sum += power[bin];
+        }
+        latest[channel * BAND_COUNT + band] = (float) (sum * scale);
+      }
+    }
+    updateCount++;
+  }
+
+  private void publish(SampleBlock block, int sample) {
+    final PuSubManager manager = PuSubManager.getInstance();
+    if (!manager.hasSubscribers(topic)) {
+      return;
+    }
+    final long ticks = (long) sample * FrameParser.TICKS_PER_SECOND / samplingRate;
+    final long nanos = (long) sample * 1_000_000_000L / samplingRate;
+    final long hostTimestamp = block.getHostTimestamp();
+    manager.publish(
+        topic,
+        new BandPowers(
+            block.getDeviceTimestamp() + ticks,
+            hostTimestamp < 0 ? hostTimestamp : hostTimestamp + nanos,
+            channelCount,
+            latest.clone()));
+  }
+}
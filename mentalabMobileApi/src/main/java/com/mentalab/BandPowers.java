@@ -0,0 +1,93 @@
+package com.mentalab;
+
+/**
+ * Immutable power of the EEG frequency bands of every ExG channel at one point of the stream
+ *
+ * <p>Published by a {@link BandPowerEngine} after every hop. Powers are the mean squared amplitude
+ * of the band within the analysis window in uV^2.
+ */
+public final class BandPowers {
+
+  /** EEG frequency bands, lower bound inclusive, upper bound exclusive */
+  public enum Band {
+    DELTA(1, 4),
+    THETA(4, 8),
+    ALPHA(8, 13),
+    BETA(13, 30),
+    GAMMA(30, 45);
+
+    private final double low;
+    private final double high;
+
+    Band(double low, double high) {
+      this.low = low;
+      this.high = high;
+    }
+
+    public double getLow() {
+      return low;
+    }
+
+    public double getHigh() {
+      return high;
+    }
+  }
+
+  static final Band[] BANDS = Band.values();
+
+  private final long deviceTimestamp;
+  private final long hostTimestamp;
+  private final int channelCount;
+  private final float[] powers;
+
+  BandPowers(long deviceTimestamp, long hostTimestamp, int channelCount, float[] powers) {
+    this.deviceTimestamp = deviceTimestamp;
+    this.hostTimestamp = hostTimestamp;
+    this.channelCount = channelCount;
+    this.powers = powers;
+  }
+
+  /** Device timestamp of the last sample of the window in units of 100us */
+  public long getDeviceTimestamp() {
+    return deviceTimestamp;
+  }
+
+  /**
+   * Estimated host time of the last sample of the window, see {@link
+   * SampleBlock#getHostTimestamp()}
+   */
+  public long getHostTimestamp() {
+    return hostTimestamp;
+  }
+
+  public int getChannelCount() {
+    return channelCount;
+  }
+
+  /** Power of a band of a channel in uV^2 */
+  public float getPower(int channel, Band band) {
+    return powers[channel * BANDS.length + band.ordinal()];
+  }
+
+  /** Power of a band relative to the sum of all bands of the channel */
+  public float getRelativePower(int channel, Band band) {
+    float total = 0;
+    for (int index = 0; index < BANDS.length; index++) {
+      total += powers[channel * BANDS.length + index];
+    }
+    return total == 0 ? 0 : getPower(channel, band) / total;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder text = new StringBuilder("BandPowers[timestamp=").append(deviceTimestamp);
+    for (int channel = 0; channel < channelCount; channel++) {
+      text.append(", ch").append(channel + 1).append('=');
+      for (Band band : BANDS) {
+        text.append(band == BANDS[0] ? '[' : ' ').append(getPower(channel, band));
+      }
+      text.append(']');
+    }
+    return text.append(']').toString();
+  }
+}
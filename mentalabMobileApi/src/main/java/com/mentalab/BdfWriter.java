@@ -0,0 +1,364 @@
+package com.mentalab;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Streaming BDF+ writer for the ExG and orientation data of a device stream
+ *
+ * <p>Data records of one second are assembled in a fixed buffer and written as soon as they are
+ * full, so memory use does not depend on the length of the session. ExG samples are copied as the
+ * raw 24 bit counts of the frames, orientation samples as their raw 16 bit counts; the physical
+ * ranges in the header carry the scaling. Each record starts with a time-keeping annotation holding
+ * the device time of its first sample, so the file is written as discontinuous BDF+D and gaps from
+ * lost packets keep their true timing. MARKER packets are written as annotations. The header is
+ * written with the first ExG packet and the number of records is filled in on {@link #close()}; an
+ * incomplete last record is discarded.
+ */
+public final class BdfWriter implements Closeable {
+
+  static final int ORIENTATION_SAMPLES = 20;
+  static final int ANNOTATION_BYTES = 120;
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+  private static final int RECORD_COUNT_OFFSET = 236;
+  private static final int BYTES_PER_SAMPLE = 3;
+  private static final int ORIENTATION_CHANNELS = 9;
+  /** Physical value of one count of each orientation channel, Gyro_X is inverted by the device */
+  private static final double[] ORIENTATION_SCALES = {
+    0.061, 0.061, 0.061, 8.750, 8.750, 8.750, -1.52, 1.52, 1.52
+  };
+
+  private static final String[] ORIENTATION_UNITS = {
+    "mg", "mg", "mg", "mgauss", "mgauss", "mgauss", "mdps", "mdps", "mdps"
+  };
+
+  private final RandomAccessFile file;
+  private final int samplingRate;
+  private int channelCount = -1;
+  private byte[] record;
+  private int orientationOffset;
+  private int annotationOffset;
+
+  private long startTicks;
+  private int exgIndex = 0;
+  private int orientationIndex = 0;
+  private int annotationEnd = 0;
+  private final byte[] lastOrientation = new byte[ORIENTATION_CHANNELS * BYTES_PER_SAMPLE];
+  private final byte[] pending = new byte[ANNOTATION_BYTES];
+  private int pendingLength = 0;
+  private int pendingCount = 0;
+  private long recordCount = 0;
+  private long droppedAnnotations = 0;
+  private boolean closed = false;
+
+  /**
+   * Creates the file, replacing an existing one
+   *
+   * @param file BDF file
+   * @param samplingRate ExG sampling rate of the device in Hz, the number of ExG samples per record
+   * @throws IOException when the file can not be created
+   */
+  public BdfWriter(File file, int samplingRate) throws IOException {
+    if (samplingRate <= 0) {
+      throw new IllegalArgumentException("Illegal sampling rate: " + samplingRate);
+    }
+    this.file = new RandomAccessFile(file, "rw");
+    this.file.setLength(0);
+    this.samplingRate = samplingRate;
+  }
+
+  /** Number of data records written */
+  public synchronized long recordCount() {
+    return recordCount;
+  }
+
+  /** Number of markers that did not fit into the annotations of their record */
+  public synchronized long droppedAnnotations() {
+    return droppedAnnotations;
+  }
+
+  /**
+   * Adds the samples of a decoded frame. Must only be called from the decoding thread.
+   *
+   * @param packet packet decoded from the frame, or null for packets without decoder
+   * @param pid packet id of the frame
+   * @param timestamp device timestamp of the frame
+   * @param buffer buffer holding the packet data
+   * @param offset offset of the packet data in buffer
+   * @throws IOException when a record can not be written
+   */
+  synchronized void write(Packet packet, int pid, long timestamp, byte[] buffer, int offset)
+      throws IOException {
+    if (closed) {
+      return;
+    }
+    if (packet instanceof DataPacket) {
+      writeExg((DataPacket) packet, timestamp, buffer, offset);
+    } else if (channelCount < 0) {
+      return; // nothing is written before the header
+    } else if (packet instanceof Orientation) {
+      writeOrientation(buffer, offset);
+    } else if (pid == Packet.PacketId.MARKER.getNumVal()) {
+      final int code = (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+      addAnnotation(timestamp, "Marker " + code);
+    }
+  }
+
+  private void writeExg(DataPacket packet, long timestamp, byte[] buffer, int offset)
+      throws IOException {
+    final ExgLayout layout = packet.layout;
+    if (channelCount < 0) {
+      writeHeader(layout.channelIds, DataPacket.uvPerCount(layout.rowChannels), timestamp);
+    } else if (layout.channelCount != channelCount) {
+      return; // the channel count of a BDF file is fixed
+    }
+    for (int row = 0; row < packet.getSampleCount(); row++) {
+      if (exgIndex == 0) {
+        startRecord(timestamp + (long) row * FrameParser.TICKS_PER_SECOND / samplingRate);
+      }
+      // only the enabled channels are signals, in the order of the layout
+      final int rowStart = offset + row * layout.rowLength;
+      int dst = exgIndex * BYTES_PER_SAMPLE;
+      for (int channelOffset : layout.offsets) {
+        final int src = rowStart + channelOffset;
+        record[dst] = buffer[src];
+        record[dst + 1] = buffer[src + 1];
+        record[dst + 2] = buffer[src + 2];
+        dst += samplingRate * BYTES_PER_SAMPLE;
+      }
+      if (++exgIndex == samplingRate) {
+        finishRecord();
+      }
+    }
+  }
+
+  private void writeOrientation(byte[] buffer, int offset) {
+    for (int channel = 0; channel < ORIENTATION_CHANNELS; channel++) {
+      // sign extend the 16 bit counts to 24 bits
+      final byte high = buffer[offset + channel * 2 + 1];
+      lastOrientation[channel * BYTES_PER_SAMPLE] = buffer[offset + channel * 2];
+      lastOrientation[channel * BYTES_PER_SAMPLE + 1] = high;
+      lastOrientation[channel * BYTES_PER_SAMPLE + 2] = (byte) (high >> 7);
+    }
+    if (orientationIndex < ORIENTATION_SAMPLES) {
+      copyOrientation(orientationIndex++);
+    }
+  }
+
+  private void copyOrientation(int sample) {
+    for (int channel = 0; channel < ORIENTATION_CHANNELS; channel++) {
+      System.arraycopy(
+          lastOrientation,
+          channel * BYTES_PER_SAMPLE,
+          record,
+          orientationOffset + (channel * ORIENTATION_SAMPLES + sample) * BYTES_PER_SAMPLE,
+          BYTES_PER_SAMPLE);
+    }
+  }
+
+  private void startRecord(long ticks) {
+    Arrays.fill(record, annotationOffset, record.length, (byte) 0);
+    annotationEnd = annotationOffset;
+    // time-keeping annotation: onset without duration and an empty text
+    appendTal(tal(onset(ticks), ""));
+    // markers that arrived while no record was open
+    if (!appendTal(Arrays.copyOf(pending, pendingLength))) {
+      droppedAnnotations += pendingCount;
+    }
+    pendingLength = 0;
+    pendingCount = 0;
+  }
+
+  private void finishRecord() throws IOException {
+    // repeat the last orientation sample when the device sent fewer than expected
+    while (orientationIndex < ORIENTATION_SAMPLES) {
+      copyOrientation(orientationIndex++);
+    }
+    file.write(record);
+    recordCount++;
+    exgIndex = 0;
+    orientationIndex = 0;
+  }
+
+  private void addAnnotation(long ticks, String text) {
+    final byte[] tal = tal(onset(ticks), text);
+    if (exgIndex > 0) {
+      if (!appendTal(tal)) {
+        droppedAnnotations++;
+      }
+    } else if (pendingLength + tal.length <= pending.length) {
+      System.arraycopy(tal, 0, pending, pendingLength, tal.length);
+      pendingLength += tal.length;
+      pendingCount++;
+    } else {
+      droppedAnnotations++;
+    }
+  }
+
+  private static byte[] tal(String onset, String text) {
+    return (onset + "\u0014" + text + "\u0014\u0000").getBytes(ASCII);
+  }
+
+  /** Appends TALs to the annotations of the current record, false when they do not fit */
+  private boolean appendTal(byte[] tal) {
+    if (annotationEnd + tal.length > record.length) {
+      return false;
+    }
+    System.arraycopy(tal, 0, record, annotationEnd, tal.length);
+    annotationEnd += tal.length;
+    return true;
+  }
+
+  /** Seconds since the start of the recording with the 100us resolution of device time */
+  private String onset(long ticks) {
+    final long elapsed = (ticks - startTicks) & 0xFFFFFFFFL;
+    final String onset = "+" + elapsed / FrameParser.TICKS_PER_SECOND;
+    long fraction = elapsed % FrameParser.TICKS_PER_SECOND;
+    if (fraction == 0) {
+      return onset;
+    }
+    int digits = 4;
+    while (fraction % 10 == 0) {
+      fraction /= 10;
+      digits--;
+    }
+    final String decimals = "000" + fraction;
+    return onset + "." + decimals.substring(decimals.length() - digits);
+  }
+
+  /**
+   * Writes the header for the ExG channels with the given ids and the orientation channels
+   *
+   * @param uvPerCount ExG units (uV) per ADC count of the device
+   */
+  private void writeHeader(int[] channelIds, float uvPerCount, long timestamp) throws IOException {
+    final int channels = channelIds.length;
+    channelCount = channels;
+    startTicks = timestamp;
+    final int signals = channels + ORIENTATION_CHANNELS + 1;
+    orientationOffset = channels * samplingRate * BYTES_PER_SAMPLE;
+    annotationOffset =
+        orientationOffset + ORIENTATION_CHANNELS * ORIENTATION_SAMPLES * BYTES_PER_SAMPLE;
+    record = new byte[annotationOffset + ANNOTATION_BYTES];
+
+    final Date start = new Date();
+    final StringBuilder header = new StringBuilder();
+    field(header, "\u00FFBIOSEMI", 8);
+    field(header, "X X X X", 80);
+    field(
+        header,
+        "Startdate "
+            + new SimpleDateFormat("dd-MMM-yyyy", Locale.US).format(start).toUpperCase(Locale.US)
+            + " X X X",
+        80);
+    field(header, new SimpleDateFormat("dd.MM.yy", Locale.US).format(start), 8);
+    field(header, new SimpleDateFormat("HH.mm.ss", Locale.US).format(start), 8);
+    field(header, String.valueOf(256 * (signals + 1)), 8);
+    field(header, "BDF+D", 44);
+    field(header, "-1", 8);
+    field(header, "1", 8);
+    field(header, String.valueOf(signals), 4);
+
+    final String[] labels = new String[signals];
+    final String[] units = new String[signals];
+    final String[] physicalMin = new String[signals];
+    final String[] physicalMax = new String[signals];
+    final String[] digitalMin = new String[signals];
+    final String[] digitalMax = new String[signals];
+    final String[] samples = new String[signals];
+    // +-8388607 counts are exactly +-400000uV, or +-187500uV for 32 channel devices
+    final long fullScale = Math.round(8388607 * (double) uvPerCount);
+    for (int channel = 0; channel < channels; channel++) {
+      labels[channel] = SampleStore.channelName(channelIds[channel]);
+      units[channel] = "uV";
+      physicalMin[channel] = String.valueOf(-fullScale);
+      physicalMax[channel] = String.valueOf(fullScale);
+      digitalMin[channel] = "-8388607";
+      digitalMax[channel] = "8388607";
+      samples[channel] = String.valueOf(samplingRate);
+    }
+    for (int channel = 0; channel < ORIENTATION_CHANNELS; channel++) {
+      final int signal = channels + channel;
+      labels[signal] = SampleStore.channelName(SampleStore.ORIENTATION_CHANNEL + channel);
+      units[signal] = ORIENTATION_UNITS[channel];
+      physicalMin[signal] = number(-32768 * ORIENTATION_SCALES[channel]);
+      physicalMax[signal] = number(32767 * ORIENTATION_SCALES[channel]);
+      digitalMin[signal] = "-32768";
+      digitalMax[signal] = "32767";
+      samples[signal] = String.valueOf(ORIENTATION_SAMPLES);
+    }
+    final int annotations = signals - 1;
+    labels[annotations] = "BDF Annotations";
+    units[annotations] = "";
+    physicalMin[annotations] = "-1";
+    physicalMax[annotations] = "1";
+    digitalMin[annotations] = "-8388608";
+    digitalMax[annotations] = "8388607";
+    samples[annotations] = String.valueOf(ANNOTATION_BYTES / BYTES_PER_SAMPLE);
+
+    fields(header, labels, 16);
+    fields(header, new String[signals], 80);
+    fields(header, units, 8);
+    fields(header, physicalMin, 8);
+    fields(header, physicalMax, 8);
+    fields(header, digitalMin, 8);
+    fields(header, digitalMax, 8);
+    fields(header, new String[signals], 80);
+    fields(header, samples, 8);
+    fields(header, new String[signals], 32);
+
+    file.write(header.toString().getBytes(Charset.forName("ISO-8859-1")));
+  }
+
+  private static void fields(StringBuilder header, String[] values, int width) {
+    for (String value : values) {
+      field(header, value == null ? "" : value, width);
+    }
+  }
+
+  /** Appends a value left aligned and padded with spaces to the field width */
+  private static void field(StringBuilder header, String value, int width) {
+    final int length = Math.min(value.length(), width);
+    header.append(value, 0, length);
+    for (int index = length; index < width; index++) {
+      header.append(' ');
+    }
+  }
+
+  /** Formats a physical limit into the eight characters of a header field */
+  private static String number(double value) {
+    final String text = String.valueOf(value);
+    return text.length() > 8 ? text.substring(0, 8) : text;
+  }
+
+  /**
+   * Fills in the number of records and closes the file, further frames are ignored
+   *
+   * @throws IOException when the header can not be updated
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (channelCount >= 0) {
+        final StringBuilder count = new StringBuilder();
+        field(count, String.valueOf(recordCount), 8);
+        file.seek(RECORD_COUNT_OFFSET);
+        file.write(count.toString().getBytes(ASCII));
+      }
+    } finally {
+      file.close();
+    }
+  }
+}
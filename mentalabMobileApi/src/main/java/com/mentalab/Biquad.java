@@ -0,0 +1,48 @@
+package com.mentalab;
+
+/**
+ * Coefficients of a second order IIR section, normalized so that a0 is 1
+ *
+ * <p>The designs follow the audio EQ cookbook by Robert Bristow-Johnson.
+ */
+final class Biquad {
+
+  /** Q of a second order Butterworth section */
+  static final double BUTTERWORTH_Q = Math.sqrt(0.5);
+
+  final double b0;
+  final double b1;
+  final double b2;
+  final double a1;
+  final double a2;
+
+  private Biquad(double b0, double b1, double b2, double a0, double a1, double a2) {
+    this.b0 = b0 / a0;
+    this.b1 = b1 / a0;
+    this.b2 = b2 / a0;
+    this.a1 = a1 / a0;
+    this.a2 = a2 / a0;
+  }
+
+  static Biquad lowpass(double samplingRate, double cutoff, double q) {
+    final double cos = Math.cos(omega(samplingRate, cutoff));
+    final double alpha = Math.sin(omega(samplingRate, cutoff)) / (2 * q);
+    return new Biquad((1 - cos) / 2, 1 - cos, (1 - cos) / 2, 1 + alpha, -2 * cos, 1 - alpha);
+  }
+
+  static Biquad highpass(double samplingRate, double cutoff, double q) {
+    final double cos = Math.cos(omega(samplingRate, cutoff));
+    final double alpha = Math.sin(omega(samplingRate, cutoff)) / (2 * q);
+    return new Biquad((1 + cos) / 2, -(1 + cos), (1 + cos) / 2, 1 + alpha, -2 * cos, 1 - alpha);
+  }
+
+  static Biquad notch(double samplingRate, double frequency, double q) {
+    final double cos = Math.cos(omega(samplingRate, frequency));
+    final double alpha = Math.sin(omega(samplingRate, frequency)) / (2 * q);
+    return new Biquad(1, -2 * cos, 1, 1 + alpha, -2 * cos, 1 - alpha);
+  }
+
+  private static double omega(double samplingRate, double frequency) {
+    return 2 * Math.PI * frequency / samplingRate;
+  }
+}
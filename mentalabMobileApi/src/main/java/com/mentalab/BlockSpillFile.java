@@ -0,0 +1,132 @@
+package com.mentalab;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * First in first out file of {@link SampleBlock}s overflowing a {@link SampleBlockQueue}
+ *
+ * <p>Blocks are appended at the end of the file and read back from a separate read position, each
+ * one prefixed by its length. The file is truncated whenever all blocks were read, so it only grows
+ * while the consumer is behind. Not thread safe, the queue serializes the calls.
+ */
+final class BlockSpillFile implements Closeable {
+
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel channel;
+  private ByteBuffer buffer = ByteBuffer.allocate(4096);
+  private long readPosition = 0;
+  private long writePosition = 0;
+  private int blockCount = 0;
+  private long sampleCount = 0;
+
+  BlockSpillFile(File file) throws IOException {
+    this.file = file;
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    channel = randomAccessFile.getChannel();
+    channel.truncate(0);
+  }
+
+  /**
+   * Appends a block at the end of the file
+   *
+   * @throws IOException when the block can not be written, a partly written record is overwritten
+   *     by the next block
+   */
+  void write(SampleBlock block) throws IOException {
+    final int length = block.serializedLength();
+    ensureCapacity(4 + length);
+    buffer.clear();
+    buffer.putInt(length);
+    block.writeTo(buffer);
+    buffer.flip();
+    final long start = writePosition;
+    try {
+      while (buffer.hasRemaining()) {
+        writePosition += channel.write(buffer, writePosition);
+      }
+    } catch (IOException exception) {
+      writePosition = start;
+      throw exception;
+    }
+    blockCount++;
+    sampleCount += block.getSampleCount();
+  }
+
+  /** Removes and returns the oldest block, or null when the file holds none */
+  SampleBlock read() throws IOException {
+    if (blockCount == 0) {
+      return null;
+    }
+    buffer.clear();
+    buffer.limit(4);
+    readFully();
+    final int length = buffer.getInt(0);
+    if (length < SampleBlock.HEADER_LENGTH || readPosition + length > writePosition) {
+      throw new IOException("Spill file corrupt: " + file);
+    }
+    ensureCapacity(length);
+    buffer.clear();
+    buffer.limit(length);
+    readFully();
+    buffer.flip();
+    final SampleBlock block = SampleBlock.readFrom(buffer);
+    sampleCount -= block.getSampleCount();
+    if (--blockCount == 0) {
+      clear();
+    }
+    return block;
+  }
+
+  private void readFully() throws IOException {
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, readPosition);
+      if (read < 0) {
+        throw new IOException("Spill file truncated: " + file);
+      }
+      readPosition += read;
+    }
+  }
+
+  private void ensureCapacity(int length) {
+    if (buffer.capacity() < length) {
+      buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+    }
+  }
+
+  /** Number of blocks in the file */
+  int size() {
+    return blockCount;
+  }
+
+  /** Number of samples in the blocks of the file, the loss when the file can not be read */
+  long sampleCount() {
+    return sampleCount;
+  }
+
+  /** Discards all blocks */
+  void clear() throws IOException {
+    blockCount = 0;
+    sampleCount = 0;
+    readPosition = 0;
+    writePosition = 0;
+    channel.truncate(0);
+  }
+
+  /** Closes and deletes the file */
+  @Override
+  public void close() throws IOException {
+    try {
+      randomAccessFile.close();
+    } finally {
+      if (!file.delete() && file.exists()) {
+        throw new IOException("Can not delete spill file " + file);
+      }
+    }
+  }
+}
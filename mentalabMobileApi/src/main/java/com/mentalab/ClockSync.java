@@ -0,0 +1,129 @@
+package com.mentalab;
+
+/**
+ * Online model of the device clock against the host monotonic clock ({@link System#nanoTime()})
+ *
+ * <p>Every observation pairs a device timestamp with the host time it was received at. The model is
+ * an exponentially weighted linear regression of the host time on the device time, so it follows
+ * both the offset and the drift of the device oscillator while jitter of single observations is
+ * averaged out. Updates and estimates take constant time. Device timestamps are 32 bit counters of
+ * 100us ticks, wrap-arounds are unwrapped.
+ */
+public final class ClockSync {
+
+  /** Default weight of a new observation, the model follows about the last 50 observations */
+  public static final double DEFAULT_ALPHA = 0.02;
+  /** Largest drift accepted from the regression, Explore oscillators stay well below */
+  static final double MAX_DRIFT_PPM = 500;
+
+  private static final double NANOS_PER_TICK = 1e9 / FrameParser.TICKS_PER_SECOND;
+  private static final long WRAP = 1L << 32;
+  /** Device time observations have to span before the drift is estimated, 1 second squared */
+  private static final double MIN_VARIANCE =
+      (double) FrameParser.TICKS_PER_SECOND * FrameParser.TICKS_PER_SECOND;
+
+  private final double alpha;
+
+  private long count = 0;
+  private long lastTicks;
+  private long originTicks;
+  private long originNanos;
+  // weighted means, variance and covariance of device ticks and host nanos residuals
+  private double meanX;
+  private double meanY;
+  private double varX;
+  private double covXY;
+
+  public ClockSync() {
+    this(DEFAULT_ALPHA);
+  }
+
+  /**
+   * Creates a model
+   *
+   * @param alpha weight of a new observation between 0 and 1, higher values follow changes faster
+   */
+  public ClockSync(double alpha) {
+    if (!(alpha > 0 && alpha <= 1)) {
+      throw new IllegalArgumentException("Alpha out of range: " + alpha);
+    }
+    this.alpha = alpha;
+  }
+
+  /**
+   * Adds an observation
+   *
+   * @param deviceTimestamp device timestamp in units of 100us
+   * @param hostNanos {@link System#nanoTime()} the timestamp was received at
+   */
+  public synchronized void update(long deviceTimestamp, long hostNanos) {
+    if (count == 0) {
+      lastTicks = originTicks = deviceTimestamp;
+      originNanos = hostNanos;
+    }
+    final long ticks = unwrap(deviceTimestamp);
+    lastTicks = ticks;
+    final double x = ticks - originTicks;
+    final double y = hostNanos - originNanos - x * NANOS_PER_TICK;
+
+    count++;
+    // plain averages until enough observations were seen for the exponential weights
+    final double a = Math.max(alpha, 1.0 / count);
+    final double dx = x - meanX;
+    final double dy = y - meanY;
+    meanX += a * dx;
+    meanY += a * dy;
+    varX = (1 - a) * (varX + a * dx * dx);
+    covXY = (1 - a) * (covXY + a * dx * dy);
+  }
+
+  /**
+   * Estimates the host time of a device timestamp
+   *
+   * @param deviceTimestamp device timestamp in units of 100us
+   * @return estimated {@link System#nanoTime()}, or -1 before the first observation
+   */
+  public synchronized long toHostNanos(long deviceTimestamp) {
+    if (count == 0) {
+      return -1;
+    }
+    final double x = unwrap(deviceTimestamp) - originTicks;
+    return originNanos + (long) (x * NANOS_PER_TICK + meanY + slope() * (x - meanX));
+  }
+
+  /** Estimated drift of the device clock in parts per million, positive when it runs slow */
+  public synchronized double getDriftPpm() {
+    return slope() / NANOS_PER_TICK * 1e6;
+  }
+
+  /** Number of observations since the last reset */
+  public synchronized long getUpdateCount() {
+    return count;
+  }
+
+  /** Forgets all observations, e.g. when the device clock restarted */
+  public synchronized void reset() {
+    count = 0;
+    meanX = meanY = varX = covXY = 0;
+  }
+
+  /** Extra host nanos per device tick */
+  private double slope() {
+    if (varX < MIN_VARIANCE) {
+      return 0;
+    }
+    final double limit = MAX_DRIFT_PPM * 1e-6 * NANOS_PER_TICK;
+    return Math.max(-limit, Math.min(limit, covXY / varX));
+  }
+
+  /** Extends a 32 bit device timestamp to the wrap-around closest to the last observation */
+  private long unwrap(long deviceTimestamp) {
+    long ticks = (lastTicks & -WRAP) | (deviceTimestamp & (WRAP - 1));
+    if (ticks < lastTicks - WRAP / 2) {
+      ticks += WRAP;
+    } else if (ticks > lastTicks + WRAP / 2) {
+      ticks -= WRAP;
+    }
+    return ticks;
+  }
+}
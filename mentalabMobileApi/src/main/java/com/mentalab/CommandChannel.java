@@ -0,0 +1,217 @@
+package com.mentalab;
+
+import com.mentalab.exception.CommandFailedException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends {@link DeviceCommand}s to a device and matches them with its acknowledgements
+ *
+ * <p>Commands are written without waiting for the previous one, so a batch costs a single round
+ * trip. The CMDRCV and CMDSTAT packets of the device are routed here by the decoder of the session,
+ * which keeps running while commands are in flight:
+ *
+ * <pre>{@code
+ * CommandChannel channel = session.getCommandChannel();
+ * List<CommandFuture> results =
+ *     channel.sendAll(
+ *         Arrays.asList(DeviceCommand.setSamplingRate(500), DeviceCommand.setChannelMask(0x0F)));
+ * for (CommandFuture result : results) {
+ *   result.get(); // throws when the device rejected the command or did not answer
+ * }
+ * }</pre>
+ */
+public final class CommandChannel {
+
+  /** Time the device gets to report a command as executed */
+  public static final long DEFAULT_TIMEOUT_MILLIS = 3000;
+
+  private final WritableByteChannel output;
+  /**
+   * Keeps batches in order on the output. Writes hold it without the lock of the channel, so the
+   * decoder matches acknowledgements while a write waits for room.
+   */
+  private final Object writeLock = new Object();
+  /** Commands waiting for their status, oldest first */
+  private final List<CommandFuture> pending = new ArrayList<>();
+
+  private int count = 0;
+  private boolean closed = false;
+
+  CommandChannel(OutputStream output) {
+    this(Channels.newChannel(output));
+  }
+
+  CommandChannel(WritableByteChannel output) {
+    this.output = output;
+  }
+
+  /** Sends a command with the default timeout */
+  public CommandFuture send(DeviceCommand command) throws IOException {
+    return sendAll(Collections.singletonList(command), DEFAULT_TIMEOUT_MILLIS).get(0);
+  }
+
+  /** Sends several commands in one write with the default timeout */
+  public List<CommandFuture> sendAll(List<DeviceCommand> commands) throws IOException {
+    return sendAll(commands, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Sends several commands in one write, the device executes them in order
+   *
+   * @param timeoutMillis time each command gets to be reported as executed
+   * @return one future per command
+   * @throws IOException when writing fails, the futures of the batch are failed as well
+   */
+  public List<CommandFuture> sendAll(List<DeviceCommand> commands, long timeoutMillis)
+      throws IOException {
+    final byte[] frames = new byte[commands.size() * DeviceCommand.FRAME_LENGTH];
+    final List<CommandFuture> futures = new ArrayList<>(commands.size());
+    // the device echoes an unsigned 32 bit host time in seconds
+    final long hostTimestamp = (System.currentTimeMillis() / 1000) & 0xFFFFFFFFL;
+    synchronized (writeLock) {
+      synchronized (this) {
+        if (closed) {
+          throw new IOException("Command channel closed");
+        }
+        int offset = 0;
+        for (DeviceCommand command : commands) {
+          offset = command.encode(frames, offset, count++, hostTimestamp);
+          futures.add(new CommandFuture(command, hostTimestamp));
+        }
+        // registered before writing, the acknowledgement may arrive before write() returns
+        pending.addAll(futures);
+      }
+      try {
+        final ByteBuffer batch = ByteBuffer.wrap(frames);
+        while (batch.hasRemaining()) {
+          output.write(batch);
+        }
+      } catch (IOException exception) {
+        synchronized (this) {
+          fail(futures, new CommandFailedException("Sending command failed", exception));
+        }
+        throw exception;
+      }
+    }
+    for (CommandFuture future : futures) {
+      future.setTimeout(
+          Timer.INSTANCE.schedule(() -> expire(future), timeoutMillis, TimeUnit.MILLISECONDS));
+    }
+    return futures;
+  }
+
+  /** Number of commands waiting for their status */
+  public synchronized int getPendingCount() {
+    removeDone();
+    return pending.size();
+  }
+
+  /** Handles a CMDRCV packet */
+  synchronized void onReceived(int opcode, long hostTimestamp) {
+    final CommandFuture future = match(opcode, hostTimestamp);
+    if (future != null) {
+      future.markReceived();
+    }
+  }
+
+  /**
+   * Handles a CMDSTAT packet
+   *
+   * @return the command the device executed, null when it failed or was not sent on this channel
+   */
+  DeviceCommand onStatus(int opcode, long hostTimestamp, boolean success) {
+    final CommandFuture future;
+    synchronized (this) {
+      future = match(opcode, hostTimestamp);
+      if (future == null) {
+        return null;
+      }
+      pending.remove(future);
+    }
+    future.complete(
+        success
+            ? null
+            : new CommandFailedException("Device rejected " + future.getCommand(), null));
+    return success ? future.getCommand() : null;
+  }
+
+  /**
+   * Finds the oldest command with the opcode and host time, or with the opcode only for devices
+   * that do not echo the host time
+   */
+  private CommandFuture match(int opcode, long hostTimestamp) {
+    removeDone();
+    CommandFuture sameOpcode = null;
+    for (CommandFuture future : pending) {
+      if (future.getCommand().getOpcode() == opcode) {
+        if (future.hostTimestamp == hostTimestamp) {
+          return future;
+        }
+        if (sameOpcode == null) {
+          sameOpcode = future;
+        }
+      }
+    }
+    return sameOpcode;
+  }
+
+  private void removeDone() {
+    for (Iterator<CommandFuture> iterator = pending.iterator(); iterator.hasNext(); ) {
+      if (iterator.next().isDone()) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private void expire(CommandFuture future) {
+    synchronized (this) {
+      pending.remove(future);
+    }
+    future.complete(
+        new CommandFailedException(
+            (future.isReceived() ? "No status for " : "No acknowledgement for ")
+                + future.getCommand(),
+            null));
+  }
+
+  private void fail(List<CommandFuture> futures, CommandFailedException failure) {
+    pending.removeAll(futures);
+    for (CommandFuture future : futures) {
+      future.complete(failure);
+    }
+  }
+
+  /** Fails all commands in flight, called when the connection closes */
+  synchronized void close() {
+    closed = true;
+    fail(new ArrayList<>(pending), new CommandFailedException("Connection closed", null));
+  }
+
+  /** Daemon thread expiring the commands of all channels */
+  private static final class Timer {
+    static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+    private static ScheduledThreadPoolExecutor create() {
+      final ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(
+              1,
+              runnable -> {
+                final Thread thread = new Thread(runnable, "Explore-commands");
+                thread.setDaemon(true);
+                return thread;
+              });
+      executor.setRemoveOnCancelPolicy(true);
+      return executor;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.mentalab;
+
+import com.mentalab.exception.CommandFailedException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Outcome of a {@link DeviceCommand} sent through a {@link CommandChannel}
+ *
+ * <p>Completes when the device reports the command as executed. It fails with a {@link
+ * CommandFailedException} as cause when the device reports a failure, no status arrives in time or
+ * the connection closes.
+ */
+public final class CommandFuture implements Future<Void> {
+
+  private final DeviceCommand command;
+  /** Host time sent with the command, echoed by the acknowledgements */
+  final long hostTimestamp;
+
+  private boolean received = false;
+  private boolean done = false;
+  private boolean cancelled = false;
+  private CommandFailedException failure = null;
+  private ScheduledFuture<?> timeout = null;
+
+  CommandFuture(DeviceCommand command, long hostTimestamp) {
+    this.command = command;
+    this.hostTimestamp = hostTimestamp;
+  }
+
+  public DeviceCommand getCommand() {
+    return command;
+  }
+
+  /** Whether the device acknowledged the reception of the command */
+  public synchronized boolean isReceived() {
+    return received;
+  }
+
+  synchronized void setTimeout(ScheduledFuture<?> timeout) {
+    if (done) {
+      timeout.cancel(false);
+    } else {
+      this.timeout = timeout;
+    }
+  }
+
+  synchronized void markReceived() {
+    received = true;
+  }
+
+  /** Completes the future, returns false when it was already done */
+  synchronized boolean complete(CommandFailedException failure) {
+    if (done) {
+      return false;
+    }
+    done = true;
+    this.failure = failure;
+    if (timeout != null) {
+      timeout.cancel(false);
+    }
+    notifyAll();
+    return true;
+  }
+
+  /** Stops waiting for the device, the command may still be executed */
+  @Override
+  public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+    if (!complete(new CommandFailedException("Command cancelled", null))) {
+      return false;
+    }
+    cancelled = true;
+    return true;
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return done;
+  }
+
+  /** Waits for the device to execute the command */
+  @Override
+  public synchronized Void get() throws InterruptedException, ExecutionException {
+    while (!done) {
+      wait();
+    }
+    return result();
+  }
+
+  @Override
+  public synchronized Void get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!done) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new TimeoutException();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return result();
+  }
+
+  private Void result() throws ExecutionException {
+    if (failure != null) {
+      throw new ExecutionException(failure.getMessage(), failure);
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "CommandFuture["
+        + command
+        + (done ? (failure == null ? ", done" : ", " + failure.getMessage()) : ", pending")
+        + "]";
+  }
+}
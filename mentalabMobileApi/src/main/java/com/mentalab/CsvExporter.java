@@ -0,0 +1,301 @@
+package com.mentalab;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * CSV sink for the ExG, orientation or environment {@link SampleBlock}s of a device stream
+ *
+ * <p>Every sample becomes a row of a timestamp in seconds of device time followed by the selected
+ * channels. Rows are formatted by hand into one reusable byte buffer, which is written to the
+ * output stream when it is full, so formatting does not allocate. Subscribe the exporter with an
+ * asynchronous mailbox to keep file I/O off the decoding thread:
+ *
+ * <pre>{@code
+ * CsvExporter exporter = new CsvExporter(new FileOutputStream(file), CsvExporter.Source.EXG);
+ * PuSubManager.Subscription subscription =
+ *     PuSubManager.getInstance()
+ *         .subscribe(
+ *             MentalabCodec.SAMPLE_BLOCKS, exporter, 256, PuSubManager.OverflowPolicy.BLOCK);
+ * ...
+ * subscription.unsubscribe();
+ * exporter.close();
+ * }</pre>
+ */
+public final class CsvExporter
+    implements PuSubManager.Listener<SampleBlock[]>, Flushable, Closeable {
+
+  /** Stream of blocks an exporter writes */
+  public enum Source {
+    EXG,
+    ORIENTATION,
+    ENVIRONMENT;
+
+    boolean matches(int pid) {
+      if (pid == Packet.PacketId.ORIENTATION.getNumVal()) {
+        return this == ORIENTATION;
+      } else if (pid == Packet.PacketId.ENVIRONMENT.getNumVal()) {
+        return this == ENVIRONMENT;
+      }
+      return this == EXG;
+    }
+
+    int firstChannelId() {
+      switch (this) {
+        case ORIENTATION:
+          return SampleStore.ORIENTATION_CHANNEL;
+        case ENVIRONMENT:
+          return SampleStore.ENVIRONMENT_CHANNEL;
+        default:
+          return 0;
+      }
+    }
+  }
+
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private static final int MAX_PRECISION = 9;
+  private static final long[] POWERS_OF_TEN = new long[MAX_PRECISION + 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int index = 1; index < POWERS_OF_TEN.length; index++) {
+      POWERS_OF_TEN[index] = POWERS_OF_TEN[index - 1] * 10;
+    }
+  }
+
+  /** Values this large are not formatted by hand to keep the scaled value within a long */
+  private static final float MAX_FIXED = 1e9f;
+  /** Longest formatted value: sign, ten integer digits, point and the decimals */
+  private static final int MAX_VALUE_LENGTH = 12 + MAX_PRECISION;
+  /** Longest formatted timestamp: ten digits of seconds, point and four decimals */
+  private static final int MAX_TIMESTAMP_LENGTH = 15;
+
+  private final OutputStream out;
+  private final Source source;
+  private final byte[] buffer;
+  private int position = 0;
+  private int[] channels;
+  private int precision = 4;
+  private int samplingRate = 0;
+  private boolean headerWritten = false;
+  private IOException error;
+
+  /**
+   * Creates an exporter of all channels of a source
+   *
+   * @param out stream the CSV is written to, closed with the exporter
+   * @param source blocks to export
+   */
+  public CsvExporter(OutputStream out, Source source) {
+    this(out, source, DEFAULT_BUFFER_SIZE);
+  }
+
+  CsvExporter(OutputStream out, Source source, int bufferSize) {
+    this.out = out;
+    this.source = source;
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Exports only the given channels in the given order. Channels are indices of the values of a
+   * block, counted among the enabled channels: with Channel_1 disabled, ExG channel 0 is Channel_2.
+   */
+  public synchronized CsvExporter setChannels(int... channels) {
+    this.channels = channels.clone();
+    return this;
+  }
+
+  /** Number of decimals of the sample values, 0 to 9, default 4 */
+  public synchronized CsvExporter setPrecision(int precision) {
+    if (precision < 0 || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("Illegal precision: " + precision);
+    }
+    this.precision = precision;
+    return this;
+  }
+
+  /**
+   * Sampling rate used to give every sample of a block its own timestamp, 0 to stamp all samples of
+   * a block with the block timestamp
+   */
+  public synchronized CsvExporter setSamplingRate(int samplingRate) {
+    this.samplingRate = samplingRate;
+    return this;
+  }
+
+  /** Writes the rows of all blocks of the exporter's source, called by {@link PuSubManager} */
+  @Override
+  public synchronized void onMessage(SampleBlock[] blocks) {
+    if (error != null) {
+      return;
+    }
+    try {
+      for (SampleBlock block : blocks) {
+        if (source.matches(block.getPid())) {
+          write(block);
+        }
+      }
+    } catch (IOException exception) {
+      error = exception;
+    }
+  }
+
+  /**
+   * Writes the rows of one block
+   *
+   * @throws IOException when the output stream fails
+   */
+  public synchronized void write(SampleBlock block) throws IOException {
+    if (channels == null) {
+      channels = new int[block.getChannelCount()];
+      for (int index = 0; index < channels.length; index++) {
+        channels[index] = index;
+      }
+    }
+    if (!headerWritten) {
+      writeHeader(block);
+      headerWritten = true;
+    }
+    final int rowLength = MAX_TIMESTAMP_LENGTH + channels.length * (MAX_VALUE_LENGTH + 1) + 1;
+    for (int sample = 0; sample < block.getSampleCount(); sample++) {
+      if (buffer.length - position < rowLength) {
+        flushBuffer();
+      }
+      long ticks = block.getDeviceTimestamp();
+      if (samplingRate > 0) {
+        ticks += (long) sample * FrameParser.TICKS_PER_SECOND / samplingRate;
+      }
+      writeTicks(ticks);
+      for (int channel : channels) {
+        buffer[position++] = ',';
+        if (channel < block.getChannelCount()) {
+          writeFloat(block.getSample(sample, channel));
+        }
+      }
+      buffer[position++] = '\n';
+    }
+  }
+
+  /**
+   * Writes buffered rows to the output stream and flushes it
+   *
+   * @throws IOException when the output stream failed now or while writing blocks
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    throwError();
+    flushBuffer();
+    out.flush();
+  }
+
+  /**
+   * Writes buffered rows and closes the output stream
+   *
+   * @throws IOException when the output stream failed now or while writing blocks
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      out.close();
+    }
+  }
+
+  private void throwError() throws IOException {
+    if (error != null) {
+      final IOException exception = error;
+      error = null;
+      throw exception;
+    }
+  }
+
+  /** Labels the columns after the channels of the first block, ExG blocks skip disabled ones */
+  private void writeHeader(SampleBlock block) throws IOException {
+    final StringBuilder header = new StringBuilder("TimeStamp");
+    for (int channel : channels) {
+      final int channelId = source.firstChannelId() + block.getChannelId(channel);
+      header.append(',').append(SampleStore.channelName(channelId).trim());
+    }
+    header.append('\n');
+    for (int index = 0; index < header.length(); index++) {
+      if (position == buffer.length) {
+        flushBuffer();
+      }
+      buffer[position++] = (byte) header.charAt(index);
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (position > 0) {
+      out.write(buffer, 0, position);
+      position = 0;
+    }
+  }
+
+  /** Writes device time as seconds with the four decimals of its 100us resolution */
+  private void writeTicks(long ticks) {
+    writeLong(ticks / FrameParser.TICKS_PER_SECOND);
+    buffer[position++] = '.';
+    writeDecimals(ticks % FrameParser.TICKS_PER_SECOND, 4);
+  }
+
+  /** Writes a value rounded to the configured number of decimals without allocating */
+  private void writeFloat(float value) {
+    if (value != value) {
+      writeAscii("NaN");
+      return;
+    }
+    if (value < 0) {
+      buffer[position++] = '-';
+      value = -value;
+    }
+    if (value >= MAX_FIXED) {
+      writeAscii(Float.toString(value)); // out of any sensor range, formatting speed is moot
+      return;
+    }
+    final long scale = POWERS_OF_TEN[precision];
+    final long scaled = Math.round((double) value * scale);
+    writeLong(scaled / scale);
+    if (precision > 0) {
+      buffer[position++] = '.';
+      writeDecimals(scaled % scale, precision);
+    }
+  }
+
+  /** Writes a non-negative number */
+  private void writeLong(long value) {
+    final int start = position;
+    do {
+      buffer[position++] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value > 0);
+    reverse(start, position - 1);
+  }
+
+  /** Writes a non-negative number below 10^digits padded with leading zeros */
+  private void writeDecimals(long value, int digits) {
+    for (int index = position + digits - 1; index >= position; index--) {
+      buffer[index] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    position += digits;
+  }
+
+  private void writeAscii(String text) {
+    for (int index = 0; index < text.length(); index++) {
+      buffer[position++] = (byte) text.charAt(index);
+    }
+  }
+
+  private void reverse(int from, int to) {
+    while (from < to) {
+      final byte swap = buffer[from];
+      buffer[from++] = buffer[to];
+      buffer[to--] = swap;
+    }
+  }
+}
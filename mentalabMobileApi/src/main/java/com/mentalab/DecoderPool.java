@@ -0,0 +1,88 @@
+package com.mentalab;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of threads decoding the streams of all connected {@link DeviceSession}s
+ *
+ * <p>A worker only reads the bytes a device stream has available, so it never blocks on a device
+ * that is not sending. Sessions with data are pumped round robin a few chunks at a time, idle ones
+ * are polled again after {@link #IDLE_DELAY_MICROS}.
+ */
+public final class DecoderPool {
+
+  /** Delay before an idle device stream is checked again */
+  static final long IDLE_DELAY_MICROS = 5000;
+
+  private final ScheduledThreadPoolExecutor executor;
+
+  /**
+   * Creates a pool
+   *
+   * @param threads maximum number of sessions decoded at the same time
+   */
+  public DecoderPool(int threads) {
+    final AtomicInteger count = new AtomicInteger();
+    final ThreadFactory factory =
+        runnable -> {
+          final Thread thread = new Thread(runnable, "Explore-decoder-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        };
+    executor = new ScheduledThreadPoolExecutor(threads, factory);
+  }
+
+  /** Shared pool with one thread per processor, at most four */
+  public static DecoderPool getDefault() {
+    return Holder.INSTANCE;
+  }
+
+  /** Stops all workers, sessions of the pool stop decoding */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  void add(DeviceSession.Connection connection) {
+    try {
+      executor.execute(new Pump(connection));
+    } catch (RejectedExecutionException exception) {
+      connection.close(false);
+      throw new IllegalStateException("Decoder pool is shut down", exception);
+    }
+  }
+
+  /** Pumps one connection and reschedules itself until the connection ends */
+  private final class Pump implements Runnable {
+    private final DeviceSession.Connection connection;
+
+    Pump(DeviceSession.Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public void run() {
+      final int reads = connection.pump();
+      if (reads < 0) {
+        return;
+      }
+      try {
+        if (reads > 0) {
+          executor.execute(this); // queue behind the other sessions
+        } else {
+          executor.schedule(this, IDLE_DELAY_MICROS, TimeUnit.MICROSECONDS);
+        }
+      } catch (RejectedExecutionException exception) {
+        connection.close(false);
+      }
+    }
+  }
+
+  private static final class Holder {
+    static final DecoderPool INSTANCE =
+        new DecoderPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+  }
+}
@@ -0,0 +1,135 @@
+package com.mentalab;
+
+import com.mentalab.exception.InvalidCommandException;
+
+/**
+ * Configuration command for an Explore device
+ *
+ * <p>Commands are sent as frames with PID 0xA0: the usual 8 byte header with the host time in
+ * seconds in place of the device timestamp, an opcode byte, a parameter byte and the fletcher. The
+ * device acknowledges every command with a CMDRCV packet when it is received and a CMDSTAT packet
+ * when it was executed, both echo the opcode and the host time. Send commands through a {@link
+ * CommandChannel}.
+ */
+public final class DeviceCommand {
+
+  /** PID of commands with a one byte parameter */
+  static final int PID = 0xA0;
+  /** Length of an encoded command frame */
+  static final int FRAME_LENGTH = FrameParser.HEADER_LENGTH + 2 + FrameParser.FLETCHER_LENGTH;
+
+  static final int SET_SAMPLING_RATE = 0xA1;
+  static final int SET_CHANNEL_MASK = 0xA2;
+  static final int FORMAT_MEMORY = 0xA3;
+  static final int SOFT_RESET = 0xA4;
+  static final int DISABLE_MODULE = 0xA5;
+  static final int ENABLE_MODULE = 0xA6;
+
+  /** Sensor modules that can be switched on and off as a whole */
+  public enum Module {
+    ENVIRONMENT(1),
+    ORIENTATION(2),
+    EXG(3);
+
+    private final int value;
+
+    Module(int value) {
+      this.value = value;
+    }
+  }
+
+  private final int opcode;
+  private final int parameter;
+
+  private DeviceCommand(int opcode, int parameter) {
+    this.opcode = opcode;
+    this.parameter = parameter;
+  }
+
+  /**
+   * Sets the ExG sampling rate
+   *
+   * @param samplingRate 250, 500 or 1000 Hz
+   * @throws InvalidCommandException when the device does not support the rate
+   */
+  public static DeviceCommand setSamplingRate(int samplingRate) throws InvalidCommandException {
+    // the device samples at 16000Hz divided by 2^parameter
+    switch (samplingRate) {
+      case 250:
+        return new DeviceCommand(SET_SAMPLING_RATE, 6);
+      case 500:
+        return new DeviceCommand(SET_SAMPLING_RATE, 5);
+      case 1000:
+        return new DeviceCommand(SET_SAMPLING_RATE, 4);
+      default:
+        throw new InvalidCommandException("Unsupported sampling rate: " + samplingRate, null);
+    }
+  }
+
+  /**
+   * Selects the ExG channels the device samples
+   *
+   * @param channelMask bit n set to enable channel n + 1, at least one bit
+   * @throws InvalidCommandException when the mask is empty or has more than 8 bits
+   */
+  public static DeviceCommand setChannelMask(int channelMask) throws InvalidCommandException {
+    if (channelMask <= 0 || channelMask > 0xFF) {
+      throw new InvalidCommandException("Illegal channel mask: " + channelMask, null);
+    }
+    return new DeviceCommand(SET_CHANNEL_MASK, channelMask);
+  }
+
+  /** Switches a sensor module on or off */
+  public static DeviceCommand setModuleEnabled(Module module, boolean enabled) {
+    return new DeviceCommand(enabled ? ENABLE_MODULE : DISABLE_MODULE, module.value);
+  }
+
+  /** Restores the default settings: 250Hz, all modules and channels enabled */
+  public static DeviceCommand softReset() {
+    return new DeviceCommand(SOFT_RESET, 0);
+  }
+
+  /** Erases the recordings on the device memory */
+  public static DeviceCommand formatMemory() {
+    return new DeviceCommand(FORMAT_MEMORY, 0);
+  }
+
+  public int getOpcode() {
+    return opcode;
+  }
+
+  public int getParameter() {
+    return parameter;
+  }
+
+  /**
+   * Writes the command frame
+   *
+   * @param out buffer with at least FRAME_LENGTH bytes from offset
+   * @param count frame counter
+   * @param hostTimestamp host time the device echoes in its acknowledgements, unsigned 32 bit
+   * @return offset after the frame
+   */
+  int encode(byte[] out, int offset, int count, long hostTimestamp) {
+    final int payloadLength = FRAME_LENGTH - 4;
+    out[offset] = (byte) PID;
+    out[offset + 1] = (byte) count;
+    out[offset + 2] = (byte) payloadLength;
+    out[offset + 3] = (byte) (payloadLength >> 8);
+    for (int index = 0; index < 4; index++) {
+      out[offset + 4 + index] = (byte) (hostTimestamp >> (8 * index));
+    }
+    out[offset + 8] = (byte) opcode;
+    out[offset + 9] = (byte) parameter;
+    out[offset + 10] = (byte) 0xAF;
+    out[offset + 11] = (byte) 0xBE;
+    out[offset + 12] = (byte) 0xAD;
+    out[offset + 13] = (byte) 0xDE;
+    return offset + FRAME_LENGTH;
+  }
+
+  @Override
+  public String toString() {
+    return "DeviceCommand[0x" + Integer.toHexString(opcode) + ", " + parameter + "]";
+  }
+}
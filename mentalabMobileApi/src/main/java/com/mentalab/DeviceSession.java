@@ -0,0 +1,432 @@
+package com.mentalab;
+
+import android.util.Log;
+import com.mentalab.exception.InvalidDataException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * One connected Explore device with its own decoder state and outputs
+ *
+ * <p>Every session has its own {@link SampleStore}, sample block queue and topic, recordings and
+ * channel mask, so several devices can stream at once without mixing their data. Sessions are
+ * decoded on a shared {@link DecoderPool} instead of a thread per device:
+ *
+ * <pre>{@code
+ * DeviceSession session = new DeviceSession("Explore_1234");
+ * session.connect(socket.getInputStream(), socket.getOutputStream());
+ * Map<String, Queue<Float>> map = session.getDecodedDataMap();
+ * }</pre>
+ */
+public final class DeviceSession implements Closeable {
+
+  private static final String TAG = "Explore";
+  /** ExG sampling rate assumed until the device reports its configuration */
+  static final int DEFAULT_SAMPLING_RATE = 250;
+  /** Chunks read by one pump before the worker moves on to the next session */
+  private static final int MAX_READS_PER_PUMP = 4;
+
+  private final String name;
+  private final Topic<SampleBlock[]> sampleBlockTopic;
+  final SampleStore sampleStore = new SampleStore();
+  final ClockSync clockSync = new ClockSync();
+  final FrameTrace trace = new FrameTrace();
+  volatile SampleBlockQueue sampleBlockQueue = null;
+  volatile FrameJournal frameJournal = null;
+  volatile BdfWriter bdfWriter = null;
+  volatile int channelMask = 0;
+  volatile int samplingRate = DEFAULT_SAMPLING_RATE;
+  volatile ExgFilter exgFilter = null;
+  volatile PlotDecimator plotDecimator = null;
+  /** Written by the decoding thread only */
+  volatile long frameCount = 0;
+
+  volatile long resyncCount = 0;
+  volatile long skippedBytes = 0;
+
+  private Connection connection;
+
+  /**
+   * Creates a session without a connection
+   *
+   * @param name name of the device, e.g. Explore_1234
+   */
+  public DeviceSession(String name) {
+    this(name, new Topic<>(name + "/SampleBlocks", SampleBlock[].class));
+  }
+
+  DeviceSession(String name, Topic<SampleBlock[]> sampleBlockTopic) {
+    this.name = name;
+    this.sampleBlockTopic = sampleBlockTopic;
+    // the ring buffers behind getDecodedDataMap(), the fullest channel overflows first
+    final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    metrics.registerGauge(name + "/sampleStore.depth", sampleStore::maxDepth);
+    metrics.registerGauge(name + "/sampleStore.fillPercent", sampleStore::maxFillPercent);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Starts decoding a device stream on the default {@link DecoderPool}
+   *
+   * <p>A previous connection is disconnected first, the outputs of the session are kept. The stream
+   * is read ahead by its own thread, see {@link Transports#of(InputStream, OutputStream)}. Decoding
+   * stops when the stream reports its end or fails, e.g. when the Bluetooth link drops, or on
+   * {@link #disconnect()}.
+   *
+   * @param input device data stream
+   * @param output stream commands are sent to, may be null
+   */
+  public void connect(InputStream input, OutputStream output) {
+    connect(Transports.of(input, output));
+  }
+
+  /** Starts decoding a device stream on the given pool */
+  public void connect(InputStream input, OutputStream output, DecoderPool pool) {
+    connect(Transports.of(input, output), pool);
+  }
+
+  /**
+   * Starts decoding a transport on the default {@link DecoderPool}
+   *
+   * <p>A previous connection is disconnected first, the outputs of the session are kept. Decoding
+   * stops when the transport reaches its end or fails, or on {@link #disconnect()}. Commands can be
+   * sent when the transport is writable.
+   */
+  public void connect(Transport transport) {
+    connect(transport, DecoderPool.getDefault());
+  }
+
+  /** Starts decoding a transport on the given pool */
+  public void connect(Transport transport, DecoderPool pool) {
+    final Connection next = new Connection(transport);
+    final Connection previous;
+    synchronized (this) {
+      previous = connection;
+      connection = next;
+    }
+    // closed without the session lock, a running pump may call back into the session
+    if (previous != null) {
+      previous.close(true);
+    }
+    clockSync.reset();
+    pool.add(next);
+  }
+
+  /** Stops decoding and closes the transport, the outputs of the session are kept */
+  public void disconnect() {
+    final Connection current;
+    synchronized (this) {
+      current = connection;
+      connection = null;
+    }
+    if (current != null) {
+      current.close(true);
+    }
+  }
+
+  /** Whether a device stream is being decoded */
+  public synchronized boolean isConnected() {
+    return connection != null && !connection.closed;
+  }
+
+  /**
+   * Returns the channel to configure the device with
+   *
+   * @return CommandChannel of the current connection, null when not connected or connected to a
+   *     read-only transport
+   */
+  public synchronized CommandChannel getCommandChannel() {
+    return connection == null ? null : connection.commandChannel;
+  }
+
+  /** Read-only map of channel name to queue of decoded samples */
+  public Map<String, Queue<Float>> getDecodedDataMap() {
+    return sampleStore.asMap();
+  }
+
+  public SampleStore getSampleStore() {
+    return sampleStore;
+  }
+
+  /**
+   * Returns the queue of decoded {@link SampleBlock}s of this device
+   *
+   * <p>Blocks are only queued after the first call.
+   */
+  public synchronized SampleBlockQueue getSampleBlockQueue() {
+    if (sampleBlockQueue == null) {
+      setSampleBlockQueue(new SampleBlockQueue());
+    }
+    return sampleBlockQueue;
+  }
+
+  /**
+   * Queues the decoded {@link SampleBlock}s of this device in a queue with its own capacity and
+   * {@link SampleBlockQueue.BufferPolicy}. The previous queue is no longer filled, the caller
+   * closes it.
+   */
+  public synchronized void setSampleBlockQueue(SampleBlockQueue queue) {
+    final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    metrics.registerGauge(name + "/blockQueue.depth", queue::size);
+    metrics.registerGauge(
+        name + "/blockQueue.fillPercent", () -> queue.size() * 100L / queue.capacity());
+    sampleBlockQueue = queue;
+  }
+
+  /** Topic the {@link SampleBlock}s of each decoded chunk are published on */
+  public Topic<SampleBlock[]> getSampleBlockTopic() {
+    return sampleBlockTopic;
+  }
+
+  /**
+   * ExG channels enabled on the device, bit n set when channel n + 1 is enabled. Reported by its
+   * info packet and updated by executed channel mask commands, 0 until known.
+   */
+  public int getChannelMask() {
+    return channelMask;
+  }
+
+  /** ExG sampling rate reported by the last device info packet, 250Hz before the first one */
+  public int getSamplingRate() {
+    return samplingRate;
+  }
+
+  /**
+   * Sets the filter the ExG samples of this device are passed through before they reach the outputs
+   * of the session
+   *
+   * @param filter filter applied in place, null to stop filtering
+   */
+  public void setExgFilter(ExgFilter filter) {
+    exgFilter = filter;
+  }
+
+  public ExgFilter getExgFilter() {
+    return exgFilter;
+  }
+
+  /**
+   * Sets the decimator the ExG samples of this device are added to, after the {@link ExgFilter}
+   *
+   * @param decimator decimator kept up to date while decoding, null to stop updating
+   */
+  public void setPlotDecimator(PlotDecimator decimator) {
+    plotDecimator = decimator;
+  }
+
+  public PlotDecimator getPlotDecimator() {
+    return plotDecimator;
+  }
+
+  /** Model of the device clock the host times of {@link SampleBlock}s are estimated with */
+  public ClockSync getClockSync() {
+    return clockSync;
+  }
+
+  /** Last decoder events of this device, dumped to the log when decoding stops on an error */
+  public FrameTrace getTrace() {
+    return trace;
+  }
+
+  /** Number of frames decoded */
+  public long getFrameCount() {
+    return frameCount;
+  }
+
+  /** Number of times the stream of this device was corrupt and decoding searched the next frame */
+  public long getResyncCount() {
+    return resyncCount;
+  }
+
+  /** Number of bytes of the device stream discarded while resynchronizing */
+  public long getSkippedBytes() {
+    return skippedBytes;
+  }
+
+  /**
+   * Starts recording the raw frames of this device into a {@link FrameJournal}, a running recording
+   * is stopped first
+   *
+   * @throws IOException when the journal can not be created
+   */
+  public synchronized void startRecording(File file) throws IOException {
+    stopRecording();
+    frameJournal = new FrameJournal(file);
+  }
+
+  /**
+   * Stops recording and closes the journal, does nothing when no recording is running
+   *
+   * @throws IOException when the journal can not be trimmed
+   */
+  public synchronized void stopRecording() throws IOException {
+    final FrameJournal journal = frameJournal;
+    if (journal != null) {
+      frameJournal = null;
+      journal.close();
+    }
+  }
+
+  /**
+   * Starts writing the ExG and orientation data of this device into a BDF+ file, a running BDF
+   * recording is stopped first
+   *
+   * @param samplingRate ExG sampling rate the device is configured to
+   * @throws IOException when the file can not be created
+   */
+  public synchronized void startBdfRecording(File file, int samplingRate) throws IOException {
+    stopBdfRecording();
+    bdfWriter = new BdfWriter(file, samplingRate);
+  }
+
+  /**
+   * Stops the BDF recording and completes the file, does nothing when no recording is running
+   *
+   * @throws IOException when the header can not be completed
+   */
+  public synchronized void stopBdfRecording() throws IOException {
+    final BdfWriter writer = bdfWriter;
+    if (writer != null) {
+      bdfWriter = null;
+      writer.close();
+    }
+  }
+
+  /**
+   * Disconnects and completes running recordings
+   *
+   * @throws IOException when a recording can not be completed
+   */
+  @Override
+  public void close() throws IOException {
+    disconnect();
+    final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    metrics.unregisterGauge(name + "/sampleStore.depth");
+    metrics.unregisterGauge(name + "/sampleStore.fillPercent");
+    metrics.unregisterGauge(name + "/blockQueue.depth");
+    metrics.unregisterGauge(name + "/blockQueue.fillPercent");
+    final SampleBlockQueue queue = sampleBlockQueue;
+    try {
+      stopRecording();
+    } finally {
+      try {
+        stopBdfRecording();
+      } finally {
+        if (queue != null) {
+          queue.close();
+        }
+      }
+    }
+  }
+
+  /** Removes a recording that failed, unless it was already replaced */
+  synchronized void detach(Closeable recording) {
+    if (frameJournal == recording) {
+      frameJournal = null;
+    }
+    if (bdfWriter == recording) {
+      bdfWriter = null;
+    }
+  }
+
+  boolean consumesBlocks() {
+    return sampleBlockQueue != null || PuSubManager.getInstance().hasSubscribers(sampleBlockTopic);
+  }
+
+  @Override
+  public String toString() {
+    return "DeviceSession[" + name + "]";
+  }
+
+  /** One device stream decoded by the pool until it ends or is disconnected */
+  final class Connection {
+    private final Transport transport;
+    private final CommandChannel commandChannel;
+    private final FrameDecoder decoder;
+    private final FrameParser parser;
+    private volatile boolean closed = false;
+
+    Connection(Transport transport) {
+      this.transport = transport;
+      commandChannel = transport.isWritable() ? new CommandChannel(transport) : null;
+      decoder = new FrameDecoder(DeviceSession.this, commandChannel);
+      parser = new FrameParser(transport, decoder);
+    }
+
+    DeviceSession session() {
+      return DeviceSession.this;
+    }
+
+    /**
+     * Decodes the bytes the transport has available without blocking
+     *
+     * @return number of chunks decoded, or -1 once the connection ended
+     */
+    synchronized int pump() {
+      if (closed) {
+        return -1;
+      }
+      try {
+        return readFrames();
+      } catch (RuntimeException exception) {
+        // e.g. a synchronous subscriber failing while blocks are flushed, the pool does not
+        // reschedule a pump that throws
+        stop("Decoding " + name + " failed: " + exception);
+        return -1;
+      }
+    }
+
+    private int readFrames() {
+      int reads = 0;
+      try {
+        while (reads < MAX_READS_PER_PUMP && transport.isReadable()) {
+          reads++;
+          if (parser.readFrames() < 0) {
+            Log.d(TAG, "End of device stream reached: " + name);
+            trace.record(FrameTrace.Stage.STOPPED, 0, 0, 0, 0);
+            close(false);
+            return -1;
+          }
+        }
+      } catch (IOException | InvalidDataException exception) {
+        stop("Decoding " + name + " stopped: " + exception.getMessage());
+        return -1;
+      } finally {
+        decoder.flushBlocks();
+        resyncCount = parser.getResyncCount();
+        skippedBytes = parser.getSkippedBytes();
+      }
+      return reads;
+    }
+
+    private void stop(String message) {
+      Log.e(TAG, message);
+      trace.record(FrameTrace.Stage.STOPPED, 0, 0, 0, 0);
+      Log.e(TAG, trace.dump());
+      close(false);
+    }
+
+    /** Stops decoding, waiting for a running pump, and optionally closes the transport */
+    synchronized void close(boolean closeStreams) {
+      closed = true;
+      if (commandChannel != null) {
+        commandChannel.close();
+      }
+      if (closeStreams) {
+        try {
+          transport.close();
+        } catch (IOException exception) {
+          Log.e(TAG, "Closing " + name + " failed: " + exception.getMessage());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package com.mentalab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming filter of the ExG channels of one device, applied right after the packets are decoded
+ *
+ * <p>Every channel runs the same cascade of second order sections: a DC blocking highpass, a
+ * bandpass made of a highpass and a lowpass, and a mains notch, each one optional. The state of
+ * every channel is kept across packets and samples are filtered in place, so filtering a packet
+ * does not allocate. Coefficients are recomputed when the sampling rate or the configuration
+ * changes, which also resets the state. Cutoffs at or above the Nyquist frequency are skipped.
+ *
+ * <pre>{@code
+ * session.setExgFilter(new ExgFilter().setHighpass(0.5).setNotch(50).setBandpass(1, 40));
+ * }</pre>
+ */
+public final class ExgFilter {
+
+  /** Q of the notch, about 1.7Hz wide at 50Hz */
+  static final double NOTCH_Q = 30;
+
+  private double highpass = 0;
+  private double bandpassLow = 0;
+  private double bandpassHigh = 0;
+  private double notch = 0;
+
+  private boolean dirty = true;
+  private int samplingRate = 0;
+  private int channelCount = 0;
+  private Biquad[] sections = new Biquad[0];
+  /** z1 and z2 of every section of every channel */
+  private double[] state = new double[0];
+
+  /**
+   * Sets the cutoff of the DC blocking highpass
+   *
+   * @param cutoff cutoff frequency in Hz, 0 to disable
+   */
+  public synchronized ExgFilter setHighpass(double cutoff) {
+    highpass = checkFrequency(cutoff);
+    dirty = true;
+    return this;
+  }
+
+  /**
+   * Sets the pass band
+   *
+   * @param low lower cutoff frequency in Hz, 0 for none
+   * @param high upper cutoff frequency in Hz, 0 for none
+   */
+  public synchronized ExgFilter setBandpass(double low, double high) {
+    if (high > 0 && low >= high) {
+      throw new IllegalArgumentException("Empty pass band: " + low + " to " + high);
+    }
+    bandpassLow = checkFrequency(low);
+    bandpassHigh = checkFrequency(high);
+    dirty = true;
+    return this;
+  }
+
+  /**
+   * Sets the mains frequency to remove
+   *
+   * @param frequency 50 or 60 Hz, 0 to disable
+   */
+  public synchronized ExgFilter setNotch(double frequency) {
+    notch = checkFrequency(frequency);
+    dirty = true;
+    return this;
+  }
+
+  /** Clears the state of all channels, e.g. after a gap in the stream */
+  public synchronized void reset() {
+    Arrays.fill(state, 0);
+  }
+
+  /**
+   * Filters samples in place
+   *
+   * @param samples interleaved samples, channel by channel
+   * @param channelCount number of channels per sample row
+   * @param sampleCount number of sample rows
+   * @param samplingRate sampling rate of the samples in Hz
+   */
+  public synchronized void process(
+      float[] samples, int channelCount, int sampleCount, int samplingRate) {
+    if (dirty || samplingRate != this.samplingRate || channelCount != this.channelCount) {
+      configure(channelCount, samplingRate);
+    }
+    final Biquad[] sections = this.sections;
+    if (sections.length == 0) {
+      return;
+    }
+    final double[] state = this.state;
+    int index = 0;
+    for (int row = 0; row < sampleCount; row++) {
+      for (int channel = 0; channel < channelCount; channel++) {
+        double x = samples[index];
+        int z = channel * sections.length * 2;
+        for (Biquad section : sections) {
+          // transposed direct form II
+          final double y = section.b0 * x + state[z];
+          state[z] = section.b1 * x - section.a1 * y + state[z + 1];
+          state[z + 1] = section.b2 * x - section.a2 * y;
+          x = y;
+          z += 2;
+        }
+        samples[index++] = (float) x;
+      }
+    }
+  }
+
+  private void configure(int channelCount, int samplingRate) {
+    final double nyquist = samplingRate / 2.0;
+    final List<Biquad> designs = new ArrayList<>();
+    if (highpass > 0 && highpass < nyquist) {
+      designs.add(Biquad.highpass(samplingRate, highpass, Biquad.BUTTERWORTH_Q));
+    }
+    if (bandpassLow > 0 && bandpassLow < nyquist) {
+      designs.add(Biquad.highpass(samplingRate, bandpassLow, Biquad.BUTTERWORTH_Q));
+    }
+    if (bandpassHigh > 0 && bandpassHigh < nyquist) {
+      designs.add(Biquad.lowpass(samplingRate, bandpassHigh, Biquad.BUTTERWORTH_Q));
+    }
+    if (notch > 0 && notch < nyquist) {
+      designs.add(Biquad.notch(samplingRate, notch, NOTCH_Q));
+    }
+    sections = designs.toArray(new Biquad[0]);
+    state = new double[channelCount * sections.length * 2];
+    this.channelCount = channelCount;
+    this.samplingRate = samplingRate;
+    dirty = false;
+  }
+
+  private static double checkFrequency(double frequency) {
+    if (!(frequency >= 0)) {
+      throw new IllegalArgumentException("Invalid frequency: " + frequency);
+    }
+    return frequency;
+  }
+}
@@ -0,0 +1,127 @@
+package com.mentalab;
+
+import java.util.Arrays;
+
+/**
+ * Where the status word and the enabled channels are in a row of an ExG packet
+ *
+ * <p>Devices send every channel whether it is enabled or not. A layout is computed once per channel
+ * mask and lists the byte offsets of the enabled channels, so decoding reads only those and writes
+ * them into a compact array without testing the mask per sample. Rows start with a status word,
+ * except in the raw packet variants. Layouts are immutable and shared.
+ */
+final class ExgLayout {
+
+  private static final int BYTES_PER_SAMPLE = 3;
+  /** Devices report masks of up to 8 channels */
+  private static final int MASK_CHANNELS = 8;
+
+  private static final int MAX_CHANNELS = 32;
+
+  /**
+   * Layouts of rows without and with a status word, by channels per row and mask. A single complete
+   * layout beyond MASK_CHANNELS.
+   */
+  private static final ExgLayout[][][] LAYOUTS = new ExgLayout[2][MAX_CHANNELS + 1][];
+
+  static {
+    for (int status = 0; status < 2; status++) {
+      final boolean hasStatus = status == 1;
+      for (int channels = 0; channels <= MASK_CHANNELS; channels++) {
+        LAYOUTS[status][channels] = new ExgLayout[1 << channels];
+        for (int mask = 0; mask < 1 << channels; mask++) {
+          LAYOUTS[status][channels][mask] =
+              new ExgLayout(channels, hasStatus, mask == 0 ? (1 << channels) - 1 : mask);
+        }
+      }
+      for (int channels = MASK_CHANNELS + 1; channels <= MAX_CHANNELS; channels++) {
+        LAYOUTS[status][channels] =
+            new ExgLayout[] {new ExgLayout(channels, hasStatus, (int) ((1L << channels) - 1))};
+      }
+    }
+  }
+
+  /** Channel samples per row, enabled or not */
+  final int rowChannels;
+  /** Bytes per row: the status word if any and rowChannels samples */
+  final int rowLength;
+  /** Offset of the status word in a row, -1 for rows without status word */
+  final int statusOffset;
+  /** Enabled channels, bit n set for channel n + 1 */
+  final int mask;
+  /** Number of enabled channels */
+  final int channelCount;
+  /** Offset of every enabled channel in a row, in channel order */
+  final int[] offsets;
+  /** Channel number of every enabled channel, 0 for Channel_1 */
+  final int[] channelIds;
+  /** Whether all channels are enabled, their samples then follow each other in a row */
+  final boolean complete;
+
+  private ExgLayout(int rowChannels, boolean hasStatus, int mask) {
+    final int firstChannel = hasStatus ? 1 : 0;
+    this.rowChannels = rowChannels;
+    rowLength = (firstChannel + rowChannels) * BYTES_PER_SAMPLE;
+    statusOffset = hasStatus ? 0 : -1;
+    this.mask = mask;
+    channelCount = Integer.bitCount(mask);
+    offsets = new int[channelCount];
+    channelIds = new int[channelCount];
+    for (int channel = 0, index = 0; channel < rowChannels; channel++) {
+      if ((mask & 1 << channel) != 0) {
+        channelIds[index] = channel;
+        offsets[index++] = (firstChannel + channel) * BYTES_PER_SAMPLE;
+      }
+    }
+    complete = channelCount == rowChannels;
+  }
+
+  /**
+   * Returns the layout of the enabled channels of a packet type
+   *
+   * @param rowChannels channel samples per row, enabled or not, at most 32
+   * @param hasStatus whether rows start with a status word
+   * @param mask enabled channels, 0 when unknown to decode all channels. Ignored for packets of
+   *     more than 8 channels.
+   */
+  static ExgLayout of(int rowChannels, boolean hasStatus, int mask) {
+    final ExgLayout[] layouts = LAYOUTS[hasStatus ? 1 : 0][rowChannels];
+    if (rowChannels > MASK_CHANNELS) {
+      return layouts[0];
+    }
+    return layouts[mask & ((1 << rowChannels) - 1)];
+  }
+
+  /**
+   * Decodes rows of 24 bit little endian samples
+   *
+   * @param src buffer holding the packet data
+   * @param offset offset of the first row in src
+   * @param rows number of rows to decode
+   * @param scale factor applied to every ADC count
+   * @param status receives the status word of every row, 0 for rows without status word
+   * @param samples receives rows * channelCount scaled samples, interleaved channel by channel
+   */
+  void decode(byte[] src, int offset, int rows, float scale, int[] status, float[] samples) {
+    if (complete && statusOffset == 0) {
+      DataPacket.decodeExg(src, offset, rows, rowChannels, scale, status, samples);
+      return;
+    }
+    if (complete) {
+      // rows without status words are a single run of samples
+      Arrays.fill(status, 0, rows, 0);
+      DataPacket.decodeInt24(src, offset, rows * rowChannels, scale, samples, 0);
+      return;
+    }
+    final int[] channelOffsets = offsets;
+    int in = offset;
+    int out = 0;
+    for (int row = 0; row < rows; row++) {
+      status[row] = statusOffset < 0 ? 0 : DataPacket.readInt24(src, in + statusOffset);
+      for (int channelOffset : channelOffsets) {
+        samples[out++] = DataPacket.readInt24(src, in + channelOffset) * scale;
+      }
+      in += rowLength;
+    }
+  }
+}
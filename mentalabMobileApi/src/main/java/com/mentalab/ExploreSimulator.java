@@ -0,0 +1,395 @@
+package com.mentalab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+/**
+ * Generates the byte stream of a simulated Explore device
+ *
+ * <p>The stream carries byte accurate ExG (EEG94, EEG98 or EEG99 depending on the channel count)
+ * and ORIENTATION frames, an ENVIRONMENT and a TIMESTAMP frame every second and optionally MARKER
+ * frames. It can be paced in real time, N times faster or not at all, and can inject delivery
+ * jitter, packet loss and corruption. Use it to run the decoder without a device:
+ *
+ * <pre>{@code
+ * InputStream stream = new ExploreSimulator(8, 1000).setSpeed(1).openStream();
+ * Map<String, Queue<Float>> map = MentalabCodec.decode(stream);
+ * }</pre>
+ */
+public final class ExploreSimulator {
+
+  /** Device timestamps count in units of 100us */
+  public static final int TICKS_PER_SECOND = FrameParser.TICKS_PER_SECOND;
+
+  private static final int ORIENTATION_RATE = 20;
+  private static final double SIGNAL_FREQUENCY = 10;
+  private static final double SIGNAL_AMPLITUDE_UV = 50;
+  private static final int MAX_FRAME_LENGTH = 1024;
+
+  private final int channelCount;
+  private final int samplingRate;
+  private final int exgPid;
+  private final int rowsPerPacket;
+
+  private double speed = 0;
+  private int jitterMillis = 0;
+  private double packetLoss = 0;
+  private double corruption = 0;
+  private double durationSeconds = 0;
+  private double markerIntervalSeconds = 0;
+  private long seed = 42;
+
+  /**
+   * Creates a simulator of a device with the given ExG configuration
+   *
+   * @param channelCount 4, 8 or 32 ExG channels
+   * @param samplingRate 250, 500 or 1000 Hz
+   */
+  public ExploreSimulator(int channelCount, int samplingRate) {
+    if (samplingRate != 250 && samplingRate != 500 && samplingRate != 1000) {
+      throw new IllegalArgumentException("Unsupported sampling rate: " + samplingRate);
+    }
+    switch (channelCount) {
+      case 4:
+        exgPid = Packet.PacketId.EEG94.getNumVal();
+        rowsPerPacket = 33;
+        break;
+      case 8:
+        exgPid = Packet.PacketId.EEG98.getNumVal();
+        rowsPerPacket = 16;
+        break;
+      case 32:
+        exgPid = Packet.PacketId.EEG99.getNumVal();
+        rowsPerPacket = 4;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported channel count: " + channelCount);
+    }
+    this.channelCount = channelCount;
+    this.samplingRate = samplingRate;
+  }
+
+  /** Pacing relative to real time: 1 for real time, N for N times faster, 0 for no pacing */
+  public ExploreSimulator setSpeed(double speed) {
+    this.speed = speed;
+    return this;
+  }
+
+  /** Delays the delivery of every paced frame by a random 0 to jitterMillis milliseconds */
+  public ExploreSimulator setJitterMillis(int jitterMillis) {
+    this.jitterMillis = jitterMillis;
+    return this;
+  }
+
+  /** Probability of a frame being dropped, the frame counter still advances */
+  public ExploreSimulator setPacketLoss(double probability) {
+    this.packetLoss = probability;
+    return this;
+  }
+
+  /** Probability of a frame having a byte flipped, deleted or inserted */
+  public ExploreSimulator setCorruption(double probability) {
+    this.corruption = probability;
+    return this;
+  }
+
+  /** Ends the stream after the given device time, 0 for an endless stream */
+  public ExploreSimulator setDurationSeconds(double seconds) {
+    this.durationSeconds = seconds;
+    return this;
+  }
+
+  /** Emits a MARKER frame every given number of seconds, 0 for no markers */
+  public ExploreSimulator setMarkerIntervalSeconds(double seconds) {
+    this.markerIntervalSeconds = seconds;
+    return this;
+  }
+
+  /** Seed of the random generator, streams with equal settings and seed are identical */
+  public ExploreSimulator setSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /** Opens a new stream starting at device time 0 */
+  public InputStream openStream() {
+    return new SimulatedStream();
+  }
+
+  private final class SimulatedStream extends InputStream {
+    private final Random random = new Random(seed);
+    private final int[][] signal = new int[channelCount][];
+    private final byte[] frame = new byte[MAX_FRAME_LENGTH];
+    private final long endTicks = (long) (durationSeconds * TICKS_PER_SECOND);
+    private final long markerTicks = (long) (markerIntervalSeconds * TICKS_PER_SECOND);
+    private int position = 0;
+    private int limit = 0;
+    private int counter = 0;
+    private long startNanos = -1;
+    /** Time the current frame may be read, unused for unpaced streams */
+    private long dueNanos;
+
+    private boolean infoSent = false;
+    private long exgRow = 0;
+    private long orientationIndex = 0;
+    private long environmentIndex = 0;
+    private long timestampIndex = 0;
+    private long markerIndex = 1;
+
+    SimulatedStream() {
+      // one period of a sine per channel, so samples are table lookups
+      final int period = (int) (samplingRate / SIGNAL_FREQUENCY);
+      final float uvPerCount = DataPacket.uvPerCount(channelCount);
+      for (int channel = 0; channel < channelCount; channel++) {
+        signal[channel] = new int[period];
+        for (int index = 0; index < period; index++) {
+          final double phase = 2 * Math.PI * index / period + channel * Math.PI / channelCount;
+          final double microVolts = SIGNAL_AMPLITUDE_UV * Math.sin(phase) + channel * 10;
+          signal[channel][index] = (int) Math.round(microVolts / uvPerCount);
+        }
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (position == limit && !nextFrame()) {
+        return -1;
+      }
+      awaitDue();
+      return frame[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (position == limit && !nextFrame()) {
+        return -1;
+      }
+      awaitDue();
+      int read = 0;
+      // fill the caller's buffer with as many frames as fit, but do not wait for paced frames
+      while (read < length) {
+        final int chunk = Math.min(length - read, limit - position);
+        System.arraycopy(frame, position, buffer, offset + read, chunk);
+        position += chunk;
+        read += chunk;
+        if (position == limit && (speed > 0 || !nextFrame())) {
+          break;
+        }
+      }
+      return read;
+    }
+
+    /** Bytes of the current frame once it is due, 0 while paced or at the end of the stream */
+    @Override
+    public int available() throws IOException {
+      if (position == limit && !nextFrame()) {
+        return 0;
+      }
+      return speed <= 0 || System.nanoTime() - dueNanos >= 0 ? limit - position : 0;
+    }
+
+    /**
+     * Generates the next frame into the frame buffer and computes when it is due, false at the end
+     * of the stream
+     */
+    private boolean nextFrame() throws IOException {
+      if (!infoSent) {
+        // like a device, announce the configuration first
+        infoSent = true;
+        limit = writeInfo();
+        position = 0;
+        counter = (counter + 1) & 0xFF;
+        schedule(0);
+        return true;
+      }
+      while (true) {
+        final long exgTicks = exgRow * TICKS_PER_SECOND / samplingRate;
+        final long orientationTicks = orientationIndex * TICKS_PER_SECOND / ORIENTATION_RATE;
+        final long environmentTicks = environmentIndex * TICKS_PER_SECOND;
+        final long timestampTicks = timestampIndex * TICKS_PER_SECOND + TICKS_PER_SECOND / 2;
+        final long nextMarkerTicks = markerTicks > 0 ? markerIndex * markerTicks : Long.MAX_VALUE;
+        final long ticks =
+            Math.min(
+                Math.min(exgTicks, orientationTicks),
+                Math.min(Math.min(environmentTicks, timestampTicks), nextMarkerTicks));
+        if (endTicks > 0 && ticks >= endTicks) {
+          position = limit = 0;
+          return false;
+        }
+
+        if (ticks == exgTicks) {
+          limit = writeExg(ticks);
+        } else if (ticks == orientationTicks) {
+          limit = writeOrientation(ticks);
+        } else if (ticks == environmentTicks) {
+          limit = writeEnvironment(ticks);
+        } else if (ticks == timestampTicks) {
+          limit = writeTimestamp(ticks);
+        } else {
+          limit = writeMarker(ticks);
+        }
+        position = 0;
+        counter = (counter + 1) & 0xFF;
+
+        if (packetLoss > 0 && random.nextDouble() < packetLoss) {
+          continue;
+        }
+        if (corruption > 0 && random.nextDouble() < corruption) {
+          corrupt();
+        }
+        schedule(ticks);
+        return true;
+      }
+    }
+
+    private int writeInfo() {
+      int out = writeHeader(Packet.PacketId.INFO.getNumVal(), 0);
+      final int firmwareVersion = 0x0235;
+      frame[out++] = (byte) firmwareVersion;
+      frame[out++] = (byte) (firmwareVersion >> 8);
+      frame[out++] = (byte) Integer.numberOfTrailingZeros(16000 / samplingRate);
+      frame[out++] = (byte) (channelCount >= 8 ? 0xFF : (1 << channelCount) - 1);
+      return finish(out);
+    }
+
+    private int writeExg(long ticks) {
+      int out = writeHeader(exgPid, ticks);
+      for (int row = 0; row < rowsPerPacket; row++) {
+        // the low status byte carries the channel mask
+        out = writeInt24(out, channelCount >= 8 ? 0xFF : (1 << channelCount) - 1);
+        final long sample = exgRow + row;
+        for (int channel = 0; channel < channelCount; channel++) {
+          final int[] table = signal[channel];
+          out = writeInt24(out, table[(int) (sample % table.length)] + random.nextInt(64) - 32);
+        }
+      }
+      exgRow += rowsPerPacket;
+      return finish(out);
+    }
+
+    private int writeOrientation(long ticks) {
+      int out = writeHeader(Packet.PacketId.ORIENTATION.getNumVal(), ticks);
+      for (int axis = 0; axis < 9; axis++) {
+        // gravity on the z axis of the accelerometer, noise elsewhere
+        final int value = (axis == 2 ? 16393 : 0) + random.nextInt(32) - 16;
+        frame[out++] = (byte) value;
+        frame[out++] = (byte) (value >> 8);
+      }
+      orientationIndex++;
+      return finish(out);
+    }
+
+    private int writeEnvironment(long ticks) {
+      int out = writeHeader(Packet.PacketId.ENVIRONMENT.getNumVal(), ticks);
+      final int light = 2000;
+      final int battery = 2155; // about 3.9V
+      frame[out++] = 25;
+      frame[out++] = (byte) light;
+      frame[out++] = (byte) (light >> 8);
+      frame[out++] = (byte) battery;
+      frame[out++] = (byte) (battery >> 8);
+      environmentIndex++;
+      return finish(out);
+    }
+
+    private int writeTimestamp(long ticks) {
+      int out = writeHeader(Packet.PacketId.TIMESTAMP.getNumVal(), ticks);
+      final long hostMicros = ticks * (1_000_000 / TICKS_PER_SECOND);
+      for (int shift = 0; shift < 64; shift += 8) {
+        frame[out++] = (byte) (hostMicros >> shift);
+      }
+      timestampIndex++;
+      return finish(out);
+    }
+
+    private int writeMarker(long ticks) {
+      int out = writeHeader(Packet.PacketId.MARKER.getNumVal(), ticks);
+      frame[out++] = (byte) markerIndex;
+      frame[out++] = 0;
+      frame[out++] = 0;
+      frame[out++] = 0;
+      markerIndex++;
+      return finish(out);
+    }
+
+    private int writeHeader(int pid, long ticks) {
+      frame[0] = (byte) pid;
+      frame[1] = (byte) counter;
+      frame[4] = (byte) ticks;
+      frame[5] = (byte) (ticks >> 8);
+      frame[6] = (byte) (ticks >> 16);
+      frame[7] = (byte) (ticks >> 24);
+      return FrameParser.HEADER_LENGTH;
+    }
+
+    private int writeInt24(int out, int value) {
+      frame[out] = (byte) value;
+      frame[out + 1] = (byte) (value >> 8);
+      frame[out + 2] = (byte) (value >> 16);
+      return out + 3;
+    }
+
+    /** Appends the fletcher and fills in the payload length, returns the frame length */
+    private int finish(int out) {
+      frame[out++] = (byte) 0xAF;
+      frame[out++] = (byte) 0xBE;
+      frame[out++] = (byte) 0xAD;
+      frame[out++] = (byte) 0xDE;
+      final int payloadLength = out - 4;
+      frame[2] = (byte) payloadLength;
+      frame[3] = (byte) (payloadLength >> 8);
+      return out;
+    }
+
+    private void corrupt() {
+      final int index = random.nextInt(limit);
+      switch (random.nextInt(3)) {
+        case 0:
+          frame[index] ^= (byte) (1 << random.nextInt(8));
+          break;
+        case 1:
+          System.arraycopy(frame, index + 1, frame, index, limit - index - 1);
+          limit--;
+          break;
+        default:
+          System.arraycopy(frame, index, frame, index + 1, limit - index);
+          frame[index] = (byte) random.nextInt(256);
+          limit++;
+          break;
+      }
+    }
+
+    private void schedule(long ticks) {
+      if (speed <= 0) {
+        return;
+      }
+      if (startNanos < 0) {
+        startNanos = System.nanoTime();
+      }
+      dueNanos = startNanos + (long) (ticks * (1e9 / TICKS_PER_SECOND) / speed);
+      if (jitterMillis > 0) {
+        dueNanos += random.nextInt(jitterMillis * 1000) * 1000L;
+      }
+    }
+
+    private void awaitDue() throws IOException {
+      if (speed <= 0) {
+        return;
+      }
+      long wait;
+      while ((wait = dueNanos - System.nanoTime()) > 0) {
+        try {
+          Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        } catch (InterruptedException exception) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Simulated stream interrupted");
+        }
+      }
+    }
+  }
+}
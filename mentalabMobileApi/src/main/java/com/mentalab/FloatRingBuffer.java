@@ -0,0 +1,263 @@
+package com.mentalab;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded ring buffer of primitive float samples for a single channel
+ *
+ * <p>There must only be one writer, usually the thread decoding the device stream. Any number of
+ * readers may drain samples concurrently without locking. When readers fall behind by more than the
+ * capacity, the oldest samples are overwritten and counted as dropped.
+ *
+ * <p>The writer claims the slots it is about to overwrite before storing into them, and readers
+ * check the claim after copying. Slots hold the raw bits of the samples and are stored with release
+ * stores and loaded with volatile loads, so a reader that loads an overwritten slot also sees the
+ * claim covering it and copies again.
+ */
+public final class FloatRingBuffer {
+
+  /** Raw float bits of the samples */
+  private final AtomicIntegerArray samples;
+
+  private final int mask;
+  /** Sequence up to which samples are published to readers */
+  private final AtomicLong head = new AtomicLong();
+  /** Sequence up to which the writer may have started overwriting slots */
+  private final AtomicLong claim = new AtomicLong();
+  /** Sequence of the next sample handed out to a reader */
+  private final AtomicLong tail = new AtomicLong();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * Creates an empty buffer
+   *
+   * @param capacity minimum number of samples kept, rounded up to the next power of two
+   */
+  public FloatRingBuffer(int capacity) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Illegal capacity: " + capacity);
+    }
+    final int size = Integer.highestOneBit(capacity - 1) << 1;
+    samples = new AtomicIntegerArray(Math.max(size, 2));
+    mask = samples.length() - 1;
+  }
+
+  /** Number of samples the buffer can hold */
+  public int capacity() {
+    return mask + 1;
+  }
+
+  /** Appends one sample. Must only be called from the writer thread. */
+  void write(float sample) {
+    final long sequence = head.get();
+    claim.set(sequence + 1);
+    samples.lazySet((int) sequence & mask, Float.floatToRawIntBits(sample));
+    head.lazySet(sequence + 1);
+  }
+
+  /**
+   * Appends count samples taken from src at offset, offset + stride, offset + 2 * stride... Must
+   * only be called from the writer thread.
+   */
+  void write(float[] src, int offset, int stride, int count) {
+    long sequence = head.get();
+    while (count > 0) {
+      // never claim more than half a lap so readers can validate their copies
+      final int chunk = Math.min(count, capacity() >> 1);
+      claim.set(sequence + chunk);
+      for (int index = 0; index < chunk; index++) {
+        samples.lazySet((int) (sequence + index) & mask, Float.floatToRawIntBits(src[offset]));
+        offset += stride;
+      }
+      sequence += chunk;
+      count -= chunk;
+      head.lazySet(sequence);
+    }
+  }
+
+  /**
+   * Moves all available samples, oldest first, into dst
+   *
+   * @return number of samples copied
+   */
+  public int drainTo(float[] dst) {
+    return drainTo(dst, 0, dst.length);
+  }
+
+  /**
+   * Moves up to maxSamples available samples, oldest first, into dst starting at offset
+   *
+   * @return number of samples copied
+   */
+  public int drainTo(float[] dst, int offset, int maxSamples) {
+    while (true) {
+      final long read = tail.get();
+      final long write = head.get();
+      final long start = Math.max(read, write - capacity());
+      final int count = (int) Math.min(maxSamples, write - start);
+      if (count <= 0) {
+        return 0;
+      }
+      copy(start, dst, offset, count);
+      if (claim.get() - capacity() > start) {
+        continue; // the writer lapped us while copying
+      }
+      if (tail.compareAndSet(read, start + count)) {
+        if (start > read) {
+          dropped.addAndGet(start - read);
+        }
+        return count;
+      }
+    }
+  }
+
+  /** Removes and returns the oldest available sample, or NaN when the buffer is empty */
+  public float poll() {
+    final long bits = take();
+    return bits < 0 ? Float.NaN : Float.intBitsToFloat((int) bits);
+  }
+
+  /** Removes the oldest available sample and returns its bits, or -1 when the buffer is empty */
+  private long take() {
+    while (true) {
+      final long read = tail.get();
+      final long write = head.get();
+      final long start = Math.max(read, write - capacity());
+      if (start >= write) {
+        return -1;
+      }
+      final int bits = samples.get((int) start & mask);
+      if (claim.get() - capacity() > start) {
+        continue;
+      }
+      if (tail.compareAndSet(read, start + 1)) {
+        if (start > read) {
+          dropped.addAndGet(start - read);
+        }
+        return bits & 0xFFFFFFFFL;
+      }
+    }
+  }
+
+  /** Number of samples currently available to readers */
+  public int size() {
+    final long read = tail.get();
+    final long write = head.get();
+    return (int) Math.max(0, write - Math.max(read, write - capacity()));
+  }
+
+  /** Total number of samples overwritten before any reader consumed them */
+  public long droppedCount() {
+    return dropped.get();
+  }
+
+  /** Discards all available samples */
+  public void clear() {
+    while (true) {
+      final long read = tail.get();
+      final long write = head.get();
+      if (read >= write || tail.compareAndSet(read, write)) {
+        return;
+      }
+    }
+  }
+
+  /** Returns a boxing {@link java.util.Queue} view backed by this buffer */
+  QueueView asQueue() {
+    return new QueueView();
+  }
+
+  private void copy(long start, float[] dst, int offset, int count) {
+    for (int index = 0; index < count; index++) {
+      dst[offset + index] = Float.intBitsToFloat(samples.get((int) (start + index) & mask));
+    }
+  }
+
+  /** Snapshot of the available samples without consuming them */
+  private float[] snapshot() {
+    while (true) {
+      final long write = head.get();
+      final long start = Math.max(tail.get(), write - capacity());
+      final float[] copy = new float[(int) Math.max(0, write - start)];
+      copy(start, copy, 0, copy.length);
+      if (claim.get() - capacity() <= start) {
+        return copy;
+      }
+    }
+  }
+
+  /**
+   * Queue of boxed samples over the ring buffer, kept for the map based API of {@link
+   * MentalabCodec#decodedDataMap}. Samples are returned oldest first.
+   */
+  final class QueueView extends AbstractQueue<Float> {
+
+    FloatRingBuffer buffer() {
+      return FloatRingBuffer.this;
+    }
+
+    /** Appends a sample. Only the decoding thread may write to the buffer. */
+    @Override
+    public boolean offer(Float sample) {
+      write(sample);
+      return true;
+    }
+
+    @Override
+    public Float poll() {
+      final long bits = take();
+      return bits < 0 ? null : Float.intBitsToFloat((int) bits);
+    }
+
+    @Override
+    public Float peek() {
+      while (true) {
+        final long write = head.get();
+        final long start = Math.max(tail.get(), write - capacity());
+        if (start >= write) {
+          return null;
+        }
+        final float sample = Float.intBitsToFloat(samples.get((int) start & mask));
+        if (claim.get() - capacity() <= start) {
+          return sample;
+        }
+      }
+    }
+
+    @Override
+    public int size() {
+      return FloatRingBuffer.this.size();
+    }
+
+    @Override
+    public void clear() {
+      FloatRingBuffer.this.clear();
+    }
+
+    @Override
+    public Iterator<Float> iterator() {
+      final float[] available = snapshot();
+      return new Iterator<Float>() {
+        private int index = 0;
+
+        @Override
+        public boolean hasNext() {
+          return index < available.length;
+        }
+
+        @Override
+        public Float next() {
+          if (index >= available.length) {
+            throw new NoSuchElementException();
+          }
+          return available[index++];
+        }
+      };
+    }
+  }
+}
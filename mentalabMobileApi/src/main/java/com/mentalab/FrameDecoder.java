@@ -0,0 +1,249 @@
+package com.mentalab;
+
+import android.util.Log;
+import com.mentalab.exception.InvalidDataException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Decodes the frames of one device stream into the outputs of its {@link DeviceSession}
+ *
+ * <p>Holds the per-stream decoder state: reusable packets and the {@link SampleBlock}s collected
+ * from the current chunk while anybody consumes them. Must only be used from one thread at a time.
+ */
+final class FrameDecoder implements FrameParser.FrameHandler {
+
+  private static final String TAG = "Explore";
+  private static final SampleBlock[] NO_BLOCKS = new SampleBlock[0];
+  private static final MetricsRegistry METRICS = MetricsRegistry.getInstance();
+
+  private final DeviceSession session;
+  private final CommandChannel commandChannel;
+  private final PacketPool packetPool = new PacketPool();
+  private final ArrayList<SampleBlock> blocks = new ArrayList<>();
+  private boolean collectBlocks;
+  /** Frame counter of the previous frame, -1 before the first frame */
+  private int lastCount = -1;
+  /** Arrival of the first frame since the last flush, 0 when none arrived or metrics are off */
+  private long chunkStartNanos = 0;
+
+  FrameDecoder(DeviceSession session) {
+    this(session, null);
+  }
+
+  /**
+   * Creates a decoder
+   *
+   * @param commandChannel channel the command acknowledgements of the stream are routed to, may be
+   *     null
+   */
+  FrameDecoder(DeviceSession session, CommandChannel commandChannel) {
+    this.session = session;
+    this.commandChannel = commandChannel;
+    collectBlocks = session.consumesBlocks();
+  }
+
+  @Override
+  public void onFrame(int pid, int count, long timestamp, byte[] buffer, int offset, int length)
+      throws InvalidDataException {
+    final boolean measure = METRICS.isEnabled();
+    final long start = measure ? System.nanoTime() : 0;
+    if (measure) {
+      if (chunkStartNanos == 0) {
+        chunkStartNanos = start;
+      }
+      countMissingFrames(count);
+    }
+    final FrameTrace trace = session.trace;
+    trace.record(FrameTrace.Stage.RECEIVED, pid, count, length, timestamp);
+    final FrameJournal journal = session.frameJournal;
+    if (journal != null) {
+      record(journal, timestamp, buffer, offset, length);
+    }
+    final Packet packet;
+    try {
+      packet = parsePayloadData(pid, timestamp, buffer, offset, length);
+    } catch (InvalidDataException exception) {
+      trace.record(FrameTrace.Stage.CORRUPT, pid, count, length, timestamp);
+      if (measure) {
+        METRICS.increment(MetricsRegistry.Counter.FRAMES_CORRUPT);
+      }
+      // the frame boundaries are intact, so only this frame is lost
+      return;
+    }
+    final BdfWriter writer = session.bdfWriter;
+    if (writer != null) {
+      writeBdf(writer, packet, pid, timestamp, buffer, offset);
+    }
+    session.frameCount++;
+    trace.record(FrameTrace.Stage.DECODED, pid, count, length, timestamp);
+    if (measure) {
+      METRICS.recordFrame(
+          pid,
+          length + FrameParser.HEADER_LENGTH + FrameParser.FLETCHER_LENGTH,
+          System.nanoTime() - start);
+    }
+  }
+
+  /** Counts the frames the device sent but the stream lost, from gaps in the frame counter */
+  private void countMissingFrames(int count) {
+    if (lastCount >= 0) {
+      final int missing = (count - lastCount - 1) & 0xFF;
+      if (missing > 0) {
+        METRICS.add(MetricsRegistry.Counter.FRAMES_DROPPED, missing);
+      }
+    }
+    lastCount = count;
+  }
+
+  private void record(FrameJournal journal, long timestamp, byte[] buffer, int offset, int length) {
+    try {
+      journal.append(
+          buffer,
+          offset - FrameParser.HEADER_LENGTH,
+          length + FrameParser.HEADER_LENGTH + FrameParser.FLETCHER_LENGTH,
+          timestamp);
+    } catch (IOException exception) {
+      Log.e(TAG, "Recording stopped: " + exception.getMessage());
+      session.detach(journal);
+      closeQuietly(journal);
+    }
+  }
+
+  private void writeBdf(
+      BdfWriter writer, Packet packet, int pid, long timestamp, byte[] buffer, int offset) {
+    try {
+      writer.write(packet, pid, timestamp, buffer, offset);
+    } catch (IOException exception) {
+      Log.e(TAG, "BDF recording stopped: " + exception.getMessage());
+      session.detach(writer);
+      closeQuietly(writer);
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException exception) {
+      Log.e(TAG, "Closing the recording failed: " + exception.getMessage());
+    }
+  }
+
+  Packet parsePayloadData(int pId, long timestamp, byte[] byteBuffer, int offset, int length)
+      throws InvalidDataException {
+
+    Packet packet = packetPool.acquire(pId);
+    if (packet != null) {
+      if (packet instanceof DataPacket) {
+        ((DataPacket) packet).setChannelMask(session.channelMask);
+      }
+      packet.convertData(byteBuffer, offset, length);
+      final ClockSync clock = session.clockSync;
+      if (packet instanceof TimeStampPacket || clock.getUpdateCount() == 0) {
+        // the first frame anchors the host times until the device sends timestamp packets
+        clock.update(timestamp, System.nanoTime());
+      }
+      if (packet instanceof DataPacket) {
+        final DataPacket dataPacket = (DataPacket) packet;
+        final ExgFilter filter = session.exgFilter;
+        if (filter != null) {
+          filter.process(
+              dataPacket.getVoltageValues(),
+              dataPacket.getDataCount(),
+              dataPacket.getSampleCount(),
+              session.samplingRate);
+        }
+        final PlotDecimator decimator = session.plotDecimator;
+        if (decimator != null) {
+          decimator.add(
+              dataPacket.getVoltageValues(),
+              dataPacket.getDataCount(),
+              dataPacket.getSampleCount(),
+              timestamp,
+              session.samplingRate);
+        }
+      } else if (packet instanceof DeviceInfoPacket) {
+        final DeviceInfoPacket info = (DeviceInfoPacket) packet;
+        session.samplingRate = info.samplingRate;
+        session.channelMask = info.adcMask;
+      } else if (packet instanceof AckPacket) {
+        acknowledge((AckPacket) packet);
+      }
+      pushDataInQueue(session.sampleStore, packet);
+      if (collectBlocks) {
+        final SampleBlock block =
+            packet.toSampleBlock(pId, timestamp, clock.toHostNanos(timestamp));
+        if (block != null) {
+          blocks.add(block);
+        }
+      }
+    }
+    return packet;
+  }
+
+  private void acknowledge(AckPacket ack) {
+    if (commandChannel == null) {
+      return;
+    }
+    if (ack instanceof CommandStatusPacket) {
+      final DeviceCommand executed =
+          commandChannel.onStatus(
+              ack.opcode, ack.hostTimestamp, ((CommandStatusPacket) ack).success);
+      if (executed != null && executed.getOpcode() == DeviceCommand.SET_CHANNEL_MASK) {
+        // rows still carry every channel, the following ExG packets decode only the new ones
+        session.channelMask = executed.getParameter();
+      }
+    } else {
+      commandChannel.onReceived(ack.opcode, ack.hostTimestamp);
+    }
+  }
+
+  static void pushDataInQueue(SampleStore sampleStore, Packet packet) {
+    if (packet instanceof DataPacket) {
+      DataPacket dataPacket = (DataPacket) packet;
+      float[] convertedSamples = dataPacket.getVoltageValues();
+      int channelCount = packet.getDataCount();
+
+      // samples of the enabled channels are interleaved channel by channel
+      for (int index = 0; index < channelCount; index++) {
+        sampleStore.write(
+            dataPacket.getChannelId(index),
+            convertedSamples,
+            index,
+            channelCount,
+            dataPacket.getSampleCount());
+      }
+    } else if (packet instanceof InfoPacket) {
+      InfoPacket infoPacket = (InfoPacket) packet;
+      int channelCount = packet.getDataCount();
+
+      for (int index = 0; index < channelCount; index++) {
+        sampleStore.write(infoPacket.firstChannelId + index, infoPacket.convertedSamples[index]);
+      }
+    }
+  }
+
+  /** Hands the blocks collected since the last call to the queue and topic subscribers */
+  void flushBlocks() {
+    if (!blocks.isEmpty()) {
+      final SampleBlock[] batch = blocks.toArray(NO_BLOCKS);
+      blocks.clear();
+      final SampleBlockQueue queue = session.sampleBlockQueue;
+      if (queue != null) {
+        for (SampleBlock block : batch) {
+          queue.offer(block);
+        }
+      }
+      PuSubManager.getInstance().publish(session.getSampleBlockTopic(), batch);
+      session.trace.record(
+          FrameTrace.Stage.PUBLISHED, 0, 0, batch.length, batch[0].getDeviceTimestamp());
+      if (chunkStartNanos != 0 && METRICS.isEnabled()) {
+        METRICS.recordPublish(System.nanoTime() - chunkStartNanos);
+      }
+    }
+    chunkStartNanos = 0;
+    // re-checked once per chunk so consumers can join and leave while decoding
+    collectBlocks = session.consumesBlocks();
+  }
+}
@@ -0,0 +1,83 @@
+package com.mentalab;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of the sidecar index of a {@link FrameJournal}
+ *
+ * <p>Entry i holds the journal offset and device timestamp of frame i. Device timestamps grow
+ * through a recording, so the frame at a given time is found by binary search.
+ */
+public final class FrameIndex {
+
+  private final MappedByteBuffer entries;
+  private final int size;
+
+  private FrameIndex(MappedByteBuffer entries, int size) {
+    this.entries = entries;
+    this.size = size;
+  }
+
+  /**
+   * Maps the index of a journal
+   *
+   * <p>The index of a journal that was not closed still holds its zero filled preallocation, such
+   * trailing entries are ignored.
+   *
+   * @param journalFile journal file, not the index file itself
+   * @throws IOException when the index can not be read
+   */
+  public static FrameIndex open(File journalFile) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(FrameJournal.indexFile(journalFile), "r")) {
+      final FileChannel channel = file.getChannel();
+      final MappedByteBuffer entries =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      entries.order(ByteOrder.LITTLE_ENDIAN);
+      int size = (int) (channel.size() / FrameJournal.INDEX_ENTRY_LENGTH);
+      while (size > 1 && entries.getLong((size - 1) * FrameJournal.INDEX_ENTRY_LENGTH) == 0) {
+        size--;
+      }
+      return new FrameIndex(entries, size);
+    }
+  }
+
+  /** Number of frames in the journal */
+  public int size() {
+    return size;
+  }
+
+  /** Journal offset of a frame */
+  public long offset(int frame) {
+    return entries.getLong(frame * FrameJournal.INDEX_ENTRY_LENGTH);
+  }
+
+  /** Device timestamp of a frame in units of 100us */
+  public long timestamp(int frame) {
+    return entries.getInt(frame * FrameJournal.INDEX_ENTRY_LENGTH + 8) & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Finds the first frame at or after a device time in O(log n)
+   *
+   * @param timestamp device timestamp in units of 100us
+   * @return frame number, size() when all frames are older
+   */
+  public int search(long timestamp) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (timestamp(middle) < timestamp) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+}
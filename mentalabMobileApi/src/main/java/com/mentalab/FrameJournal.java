@@ -0,0 +1,157 @@
+package com.mentalab;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only recording of the raw frames of a device stream
+ *
+ * <p>Frames are copied byte for byte, header and fletcher included, into a memory-mapped journal
+ * file, so the journal can be decoded again exactly like the device stream. A sidecar index file
+ * (see {@link FrameIndex}) holds the journal offset and device timestamp of every frame. Both files
+ * are mapped in large regions, so appending a frame is a memory copy without any system call. On
+ * {@link #close()} the files are truncated to the data written.
+ */
+public final class FrameJournal implements Closeable {
+
+  /** Size of the journal regions mapped at a time */
+  static final int JOURNAL_REGION_SIZE = 8 << 20;
+  /** Size of the index regions mapped at a time */
+  static final int INDEX_REGION_SIZE = 1 << 20;
+  /** Length of an index entry: journal offset (8 bytes) and device timestamp (4 bytes) */
+  static final int INDEX_ENTRY_LENGTH = 12;
+
+  private final RegionWriter journal;
+  private final RegionWriter index;
+  private long frameCount = 0;
+  private boolean closed = false;
+
+  /**
+   * Creates a new journal, replacing existing journal and index files
+   *
+   * @param file journal file, the index is written next to it (see {@link #indexFile(File)})
+   * @throws IOException when the files can not be created
+   */
+  public FrameJournal(File file) throws IOException {
+    this(file, JOURNAL_REGION_SIZE, INDEX_REGION_SIZE);
+  }
+
+  FrameJournal(File file, int journalRegionSize, int indexRegionSize) throws IOException {
+    journal = new RegionWriter(file, journalRegionSize);
+    try {
+      index = new RegionWriter(indexFile(file), indexRegionSize);
+    } catch (IOException exception) {
+      journal.close();
+      throw exception;
+    }
+  }
+
+  /** Sidecar index file of a journal */
+  public static File indexFile(File journalFile) {
+    return new File(journalFile.getPath() + ".idx");
+  }
+
+  /**
+   * Appends one raw frame. Must only be called from the decoding thread.
+   *
+   * @param buffer buffer holding the frame
+   * @param offset offset of the frame header in buffer
+   * @param length length of the frame including header and fletcher
+   * @param timestamp device timestamp of the frame
+   * @throws IOException when the next region can not be mapped
+   */
+  synchronized void append(byte[] buffer, int offset, int length, long timestamp)
+      throws IOException {
+    if (closed) {
+      return;
+    }
+    final long position = journal.position();
+    journal.reserve(length).put(buffer, offset, length);
+    index.reserve(INDEX_ENTRY_LENGTH).putLong(position).putInt((int) timestamp);
+    frameCount++;
+  }
+
+  /** Number of frames appended */
+  public synchronized long frameCount() {
+    return frameCount;
+  }
+
+  /** Number of journal bytes appended */
+  public synchronized long length() {
+    return journal.position();
+  }
+
+  /** Writes the mapped regions through to the storage device */
+  public synchronized void flush() {
+    if (!closed) {
+      journal.force();
+      index.force();
+    }
+  }
+
+  /** Trims both files to the data appended and closes them, further frames are ignored */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      journal.close();
+    } finally {
+      index.close();
+    }
+  }
+
+  /** Appends to a file through consecutive read-write mapped regions */
+  private static final class RegionWriter {
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int regionSize;
+    private MappedByteBuffer region;
+    private long regionStart = 0;
+
+    RegionWriter(File path, int regionSize) throws IOException {
+      file = new RandomAccessFile(path, "rw");
+      file.setLength(0);
+      channel = file.getChannel();
+      this.regionSize = regionSize;
+    }
+
+    long position() {
+      return region == null ? regionStart : regionStart + region.position();
+    }
+
+    /** Returns the current region with at least length bytes remaining */
+    MappedByteBuffer reserve(int length) throws IOException {
+      if (region == null || region.remaining() < length) {
+        regionStart = position();
+        region =
+            channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(regionSize, length));
+        region.order(ByteOrder.LITTLE_ENDIAN);
+      }
+      return region;
+    }
+
+    void force() {
+      if (region != null) {
+        region.force();
+      }
+    }
+
+    void close() throws IOException {
+      final long end = position();
+      region = null;
+      try {
+        channel.truncate(end);
+      } finally {
+        file.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package com.mentalab;
+
+import com.mentalab.exception.InvalidDataException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming parser for the binary frame format of Explore devices
+ *
+ * <p>A frame consists of an 8 byte header (PID, count, payload length and device timestamp), the
+ * packet data and a 4 byte fletcher trailer. The payload length covers everything after the first
+ * four header bytes. The {@link Transport} reads in large chunks straight into one reusable buffer,
+ * every complete frame in the buffer is dispatched and a trailing partial frame is carried over to
+ * the next read. Packet data is handed to the {@link FrameHandler} as a slice of the internal
+ * buffer, which is only valid for the duration of the callback. The slice is surrounded by the rest
+ * of the frame, so the raw frame starts HEADER_LENGTH bytes before the packet data.
+ *
+ * <p>Every frame must end with the fletcher bytes AF BE AD DE. When a byte is lost, inserted or
+ * flipped the frame fails this check or has an implausible header, and the parser resynchronizes:
+ * it scans the buffered bytes for the next header with a known PID and a sane payload length,
+ * preferring one whose frame is complete, ends with a valid fletcher and is followed by another
+ * plausible header. Only the corrupt frame is dropped and decoding goes on.
+ */
+final class FrameParser {
+
+  static final int HEADER_LENGTH = 8;
+  static final int FLETCHER_LENGTH = 4;
+  /** Smallest legal payload length: device timestamp and fletcher without any packet data */
+  static final int MIN_PAYLOAD_LENGTH = 8;
+  /** Largest accepted payload length, frames of 32 channel devices are well below */
+  static final int MAX_PAYLOAD_LENGTH = 4096;
+  /** Device timestamps count in units of 100us */
+  static final int TICKS_PER_SECOND = 10000;
+
+  private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+  private final Transport transport;
+  private final FrameHandler handler;
+  private byte[] buffer;
+  /** View of buffer the transport reads into */
+  private ByteBuffer view;
+
+  private int start;
+  private int end;
+  /** False from a corrupt frame until the next valid frame */
+  private boolean synced = true;
+
+  private long resyncCount = 0;
+  private long skippedBytes = 0;
+
+  FrameParser(InputStream inputStream, FrameHandler handler) {
+    this(Transports.blocking(inputStream), handler, DEFAULT_BUFFER_SIZE);
+  }
+
+  FrameParser(InputStream inputStream, FrameHandler handler, int bufferSize) {
+    this(Transports.blocking(inputStream), handler, bufferSize);
+  }
+
+  FrameParser(Transport transport, FrameHandler handler) {
+    this(transport, handler, DEFAULT_BUFFER_SIZE);
+  }
+
+  FrameParser(Transport transport, FrameHandler handler, int bufferSize) {
+    this.transport = transport;
+    this.handler = handler;
+    this.buffer = new byte[Math.max(bufferSize, HEADER_LENGTH)];
+    this.view = ByteBuffer.wrap(buffer);
+  }
+
+  /**
+   * Reads the next chunk of the stream and dispatches all frames that are complete
+   *
+   * @return number of frames dispatched, or -1 when the end of the stream is reached
+   * @throws IOException when reading from the transport fails
+   * @throws InvalidDataException when the handler rejects a frame
+   */
+  int readFrames() throws IOException, InvalidDataException {
+    compact();
+    view.limit(buffer.length).position(end);
+    final int read = transport.read(view);
+    if (read < 0) {
+      return -1;
+    }
+    end += read;
+    return parseBuffered();
+  }
+
+  /** Number of bytes read from the stream but not yet consumed as part of a complete frame */
+  int pendingBytes() {
+    return end - start;
+  }
+
+  /** Number of times the parser lost the frame boundaries and searched for the next frame */
+  long getResyncCount() {
+    return resyncCount;
+  }
+
+  /** Number of bytes discarded while resynchronizing, corrupt frames included */
+  long getSkippedBytes() {
+    return skippedBytes;
+  }
+
+  private int parseBuffered() throws InvalidDataException {
+    final byte[] buf = buffer;
+    int frames = 0;
+    while (end - start >= HEADER_LENGTH) {
+      if (!isPlausibleHeader(start)) {
+        resync();
+        continue;
+      }
+      final int frameLength = 4 + payloadLength(start);
+      if (end - start < frameLength) {
+        if (!synced) {
+          // the candidate may be garbage, do not wait for it when a verified frame follows
+          final int verified = findFrame(start + 1, true);
+          if (verified >= 0) {
+            skipTo(verified);
+            continue;
+          }
+        }
+        ensureCapacity(frameLength);
+        break;
+      }
+      if (!isFletcher(buf, start + frameLength - FLETCHER_LENGTH)) {
+        resync();
+        continue;
+      }
+      synced = true;
+
+      final int pid = buf[start] & 0xFF;
+      final int count = buf[start + 1] & 0xFF;
+      final long timestamp =
+          ((buf[start + 4] & 0xFF)
+                  | (buf[start + 5] & 0xFF) << 8
+                  | (buf[start + 6] & 0xFF) << 16
+                  | (buf[start + 7] & 0xFF) << 24)
+              & 0xFFFFFFFFL;
+      final int dataLength = frameLength - HEADER_LENGTH - FLETCHER_LENGTH;
+
+      // advance before dispatching so a throwing handler does not see the frame again
+      final int dataOffset = start + HEADER_LENGTH;
+      start += frameLength;
+      handler.onFrame(pid, count, timestamp, buf, dataOffset, dataLength);
+      frames++;
+    }
+    return frames;
+  }
+
+  private int payloadLength(int offset) {
+    return (buffer[offset + 2] & 0xFF) | (buffer[offset + 3] & 0xFF) << 8;
+  }
+
+  /** A sane payload length, and a known PID unless the previous frame was valid */
+  private boolean isPlausibleHeader(int offset) {
+    final int payloadLength = payloadLength(offset);
+    return payloadLength >= MIN_PAYLOAD_LENGTH
+        && payloadLength <= MAX_PAYLOAD_LENGTH
+        && (synced || Packet.PacketId.fromNumVal(buffer[offset]) != null);
+  }
+
+  private static boolean isFletcher(byte[] buf, int offset) {
+    return buf[offset] == (byte) 0xAF
+        && buf[offset + 1] == (byte) 0xBE
+        && buf[offset + 2] == (byte) 0xAD
+        && buf[offset + 3] == (byte) 0xDE;
+  }
+
+  /**
+   * Searches the buffered bytes for the next frame
+   *
+   * @param from first offset to look at
+   * @param verifiedOnly false to also accept a plausible header whose frame is not complete yet
+   * @return offset of the first complete frame with a valid fletcher that is followed by a
+   *     plausible header or the end of the buffered bytes, else of the first plausible header when
+   *     verifiedOnly is false, else -1
+   */
+  private int findFrame(int from, boolean verifiedOnly) {
+    int plausible = -1;
+    for (int offset = from; offset <= end - HEADER_LENGTH; offset++) {
+      if (!isPlausibleHeader(offset)) {
+        continue;
+      }
+      final int frameEnd = offset + 4 + payloadLength(offset);
+      if (frameEnd > end) {
+        if (plausible < 0) {
+          plausible = offset;
+        }
+      } else if (isFletcher(buffer, frameEnd - FLETCHER_LENGTH)
+          && (end - frameEnd < HEADER_LENGTH || isPlausibleHeader(frameEnd))) {
+        return offset;
+      }
+    }
+    return verifiedOnly ? -1 : plausible;
+  }
+
+  /**
+   * Drops the frame at start and moves to the next frame in the buffered bytes, keeping only the
+   * bytes that may begin a header when there is none
+   */
+  private void resync() {
+    if (synced) {
+      synced = false;
+      resyncCount++;
+      final MetricsRegistry metrics = MetricsRegistry.getInstance();
+      if (metrics.isEnabled()) {
+        metrics.increment(MetricsRegistry.Counter.RESYNCS);
+      }
+    }
+    final int next = findFrame(start + 1, false);
+    skipTo(next >= 0 ? next : Math.max(start + 1, end - (HEADER_LENGTH - 1)));
+  }
+
+  private void skipTo(int offset) {
+    skippedBytes += offset - start;
+    final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    if (metrics.isEnabled()) {
+      metrics.add(MetricsRegistry.Counter.BYTES_SKIPPED, offset - start);
+    }
+    start = offset;
+  }
+
+  /** Moves a trailing partial frame to the beginning of the buffer */
+  private void compact() {
+    if (start == 0) {
+      return;
+    }
+    final int pending = end - start;
+    if (pending > 0) {
+      System.arraycopy(buffer, start, buffer, 0, pending);
+    }
+    start = 0;
+    end = pending;
+  }
+
+  /** Grows the buffer once for frames larger than the current buffer */
+  private void ensureCapacity(int frameLength) {
+    if (frameLength <= buffer.length) {
+      return;
+    }
+    final byte[] grown = new byte[Math.max(frameLength, buffer.length * 2)];
+    System.arraycopy(buffer, start, grown, 0, end - start);
+    end -= start;
+    start = 0;
+    buffer = grown;
+    view = ByteBuffer.wrap(grown);
+  }
+
+  /** Receives every complete frame read from the stream */
+  interface FrameHandler {
+
+    /**
+     * Called once per frame on the reading thread
+     *
+     * @param pid packet id of the frame
+     * @param count frame counter set by the device
+     * @param timestamp device timestamp, unsigned
+     * @param buffer buffer holding the packet data, only valid during this call
+     * @param offset offset of the packet data in buffer
+     * @param length length of the packet data without header and fletcher
+     * @throws InvalidDataException when the packet data can not be decoded
+     */
+    void onFrame(int pid, int count, long timestamp, byte[] buffer, int offset, int length)
+        throws InvalidDataException;
+  }
+}
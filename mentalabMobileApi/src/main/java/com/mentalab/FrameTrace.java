@@ -0,0 +1,132 @@
+package com.mentalab;
+
+/**
+ * Ring buffer of the last decoder events of a device stream, for post-mortem debugging
+ *
+ * <p>Every event is a few longs written into a preallocated array: no strings are built and nothing
+ * is allocated while decoding. Events are only formatted when the trace is dumped, which the
+ * session does when decoding stops on an error:
+ *
+ * <pre>{@code
+ * Log.i("Explore", session.getTrace().dump());
+ * }</pre>
+ *
+ * Events are written by the decoding thread only. A dump from another thread skips the events that
+ * were overwritten while it copied them.
+ */
+public final class FrameTrace {
+
+  /** Default number of events kept, every decoded frame records two */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /** Point of the decoding pipeline an event was recorded at */
+  public enum Stage {
+    /** A complete frame was read from the stream */
+    RECEIVED,
+    /** The packet data of a frame was decoded */
+    DECODED,
+    /** The packet data of a frame could not be decoded */
+    CORRUPT,
+    /** The sample blocks of a chunk were published, length is the number of blocks */
+    PUBLISHED,
+    /** Decoding stopped */
+    STOPPED
+  }
+
+  private static final Stage[] STAGES = Stage.values();
+  /** Longs per event: nanoTime, device timestamp, packed pid, count, stage and length */
+  private static final int EVENT_LONGS = 3;
+
+  private final int capacity;
+  private final long[] events;
+  private volatile boolean enabled = true;
+  /** Number of events recorded, published after the event is written */
+  private volatile long written = 0;
+
+  public FrameTrace() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a trace
+   *
+   * @param capacity number of events kept, a power of two
+   */
+  public FrameTrace(int capacity) {
+    if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two");
+    }
+    this.capacity = capacity;
+    events = new long[capacity * EVENT_LONGS];
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Turns recording on or off, recorded events are kept */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Number of events recorded since the trace was created, including overwritten ones */
+  public long getEventCount() {
+    return written;
+  }
+
+  /**
+   * Records an event, called by the decoding thread
+   *
+   * @param length payload length of the frame, or a stage specific count
+   */
+  void record(Stage stage, int pid, int count, int length, long timestamp) {
+    if (!enabled) {
+      return;
+    }
+    final long sequence = written;
+    final int base = (int) (sequence & (capacity - 1)) * EVENT_LONGS;
+    events[base] = System.nanoTime();
+    events[base + 1] = timestamp;
+    events[base + 2] =
+        (pid & 0xFFL) | (count & 0xFFL) << 8 | (long) stage.ordinal() << 16 | (long) length << 32;
+    written = sequence + 1;
+  }
+
+  /**
+   * Formats the kept events, oldest first, one line per event: host nanoTime, stage, pid, frame
+   * counter, length and device timestamp
+   */
+  public String dump() {
+    final long end = written;
+    final long start = Math.max(0, end - capacity);
+    final long[] copy = events.clone();
+    // slots the writer reused while copying, or is writing to, are no longer consistent
+    final long first = Math.max(start, written - capacity + 1);
+
+    final StringBuilder builder = new StringBuilder();
+    builder
+        .append("FrameTrace: ")
+        .append(Math.max(0, end - first))
+        .append(" of ")
+        .append(end)
+        .append(" events");
+    for (long sequence = first; sequence < end; sequence++) {
+      final int base = (int) (sequence & (capacity - 1)) * EVENT_LONGS;
+      final long packed = copy[base + 2];
+      builder
+          .append('\n')
+          .append(copy[base])
+          .append(' ')
+          .append(STAGES[(int) (packed >>> 16 & 0xFF)])
+          .append(" pid=")
+          .append(packed & 0xFF)
+          .append(" count=")
+          .append(packed >>> 8 & 0xFF)
+          .append(" length=")
+          .append((int) (packed >>> 32))
+          .append(" timestamp=")
+          .append(copy[base + 1]);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,39 @@
+package com.mentalab;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram of fixed power of two buckets
+ *
+ * <p>Bucket n counts durations from 2^(n-1) to 2^n - 1 nanoseconds, so recording is a leading zero
+ * count and two atomic adds, and percentiles are accurate to a factor of two.
+ */
+final class LatencyHistogram {
+
+  static final int BUCKETS = 64;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+    totalNanos.addAndGet(nanos);
+    long max;
+    while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+      // another thread raised the maximum, compare again
+    }
+  }
+
+  MetricsSnapshot.Histogram snapshot() {
+    final long[] counts = new long[BUCKETS];
+    for (int index = 0; index < BUCKETS; index++) {
+      counts[index] = buckets.get(index);
+    }
+    return new MetricsSnapshot.Histogram(counts, totalNanos.get(), maxNanos.get());
+  }
+}
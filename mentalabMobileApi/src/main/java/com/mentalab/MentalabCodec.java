@@ -1,167 +1,183 @@
 package com.mentalab;
 
-import android.util.Log;
-import com.mentalab.exception.InvalidCommandException;
 import com.mentalab.exception.InvalidDataException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedDeque;
 
 public class MentalabCodec {
 
-  private static final String TAG = "Explore";
+  /**
+   * Topic of the {@link SampleBlock}s decoded from each chunk of the device stream, published
+   * through {@link PuSubManager} in stream order
+   */
+  public static final Topic<SampleBlock[]> SAMPLE_BLOCKS =
+      new Topic<>("SampleBlocks", SampleBlock[].class);
+
   public static Map<String, Queue<Float>> decodedDataMap = null;
+  private static SampleStore sampleStore = null;
+  private static DeviceSession defaultSession = null;
 
   /**
    * Decodes a device raw data stream
    *
-   * <p>Incoming bytes from Bluetooth are converted to an immutable Map of Double Ended Queue of
-   * Float numbers. ExG channels are saved as single precision floating point numbers (Float) in the
-   * unit of mVolt. Launches one worker thread on first invocation. Currently the it provides the
-   * following data queues from Explore device: Channel_1, Channel_2...Channel_N where N is the maximum
-   * available numbers of channel of the device. Acc_X, Acc_Y, Acc_Z in the units of mg/LSB. Gyro_X,
-   * Gyro_Y and Gyro_Z in mdps/LSB. MAG_X, Mag_Y, Mag_Z in mgauss/LSB. To get a specific instance of
-   * the queue:
+   * <p>Incoming bytes from Bluetooth are converted to an immutable Map of bounded Queues of Float
+   * numbers, backed by the primitive ring buffers of {@link #getSampleStore()}. Samples are polled
+   * oldest first; when a queue is not drained fast enough the oldest samples are dropped. ExG
+   * channels are saved as single precision floating point numbers (Float) in the unit of mVolt.
+   * Decodes on the shared {@link DecoderPool}. Currently the it provides the following data queues
+   * from Explore device: Channel_1, Channel_2...Channel_N where N is the maximum available numbers
+   * of channel of the device. Acc_X, Acc_Y, Acc_Z in the units of mg/LSB. Gyro_X, Gyro_Y and Gyro_Z
+   * in mdps/LSB. MAG_X, Mag_Y, Mag_Z in mgauss/LSB. To get a specific instance of the queue:
    * <pre>{@code
    * Map<String, Queue<Float>> map = MentalabCodec.decode(stream);
    * Queue<Float> accXMap = map.get("Acc_X").poll();
    * Queue<Float> channel2 = map.get("Channel2").poll();
    * }<pre>
    *
+   * <p>Commands can not be sent to a device decoded from its input stream alone, decode it with
+   * {@link MentalabCommands#startDecoding()} or {@link #decode(Transport)} instead.
+   *
    * @throws InvalidDataException throws when invalid data is received
    * @parameter InputStream of device bytes
    * @return Immutable Map of Queues of Numbers
    */
   public static Map<String, Queue<Float>> decode(InputStream stream) throws InvalidDataException {
 
-    ConnectedThread thread = new ConnectedThread(stream);
-    thread.start();
+    if (stream == null) {
+      throw new InvalidDataException("Input stream is null", null);
+    }
+    getDefaultSession().connect(stream, null);
     return decodedDataMap;
   }
 
   /**
-   * Encodes a command
+   * Decodes a device, a recording or a test server through a {@link Transport}, see {@link
+   * #decode(InputStream)}
+   *
+   * <pre>{@code
+   * Map<String, Queue<Float>> map = MentalabCodec.decode(MentalabCommands.getTransport());
+   * }</pre>
    *
-   * @throws InvalidCommandException when the command is not recognized
-   * @return byte[] encoded commands that can be sent to the device
+   * @throws InvalidDataException when the transport is null
    */
-  static byte[] encodeCommand(final String command) throws InvalidCommandException {
-    return new byte[10]; // Some example while stub
+  public static Map<String, Queue<Float>> decode(Transport transport) throws InvalidDataException {
+    if (transport == null) {
+      throw new InvalidDataException("Transport is null", null);
+    }
+    getDefaultSession().connect(transport);
+    return decodedDataMap;
   }
 
-  private static Packet parsePayloadData(int pId, byte[] byteBuffer) throws InvalidDataException {
-
-    for (Packet.PacketId packetId : Packet.PacketId.values()) {
-      if (packetId.getNumVal() == pId) {
-        Log.d(TAG, "Converting data for Explore");
-        Packet packet = packetId.createInstance();
-        if (packet != null) {
-          packet.convertData(byteBuffer);
-          Log.d(TAG, "Data decoded is " + packet.toString());
-          pushDataInQueue(packet);
-        }
-      }
-    }
-    return null;
+  /**
+   * Returns the session behind the static API of this class
+   *
+   * <p>{@link #decode(InputStream)} connects the stream to this session; to stream from several
+   * devices at once create a {@link DeviceSession} per device instead.
+   *
+   * @return DeviceSession decoding into {@link #decodedDataMap}
+   */
+  public static DeviceSession getDefaultSession() {
+    initializeMapInstance();
+    return defaultSession;
   }
 
-  private static void pushDataInQueue(Packet packet) {
-    if (packet instanceof DataPacket) {
-      DataPacket dataPacket = (DataPacket) packet;
-      int channelCount = dataPacket.getDataCount();
-
-      for (int index = 0; index < channelCount; index++) {
-        synchronized (decodedDataMap) {
-          ArrayList<Float> convertedSamples = ((DataPacket) packet).getVoltageValues();
-          String channelKey = "Channel_" + String.valueOf(index + 1);
-          if (decodedDataMap.get(channelKey) == null) {
-            decodedDataMap.put(channelKey, new ConcurrentLinkedDeque<>());
-          }
-
-          ConcurrentLinkedDeque<Float> floats =
-              (ConcurrentLinkedDeque) decodedDataMap.get(channelKey);
-          floats.offerFirst(((DataPacket) packet).convertedSamples.get(index));
-        }
-      }
-    } else if (packet instanceof InfoPacket) {
-
-      int channelCount = packet.getDataCount();
-
-      for (int index = 0; index < channelCount; index++) {
-        synchronized (decodedDataMap) {
-          String channelKey = ((InfoPacket) packet).attributes.get(index);
-          if (decodedDataMap.get(channelKey) == null) {
-            decodedDataMap.put(channelKey, new ConcurrentLinkedDeque<>());
-          }
-          ConcurrentLinkedDeque<Float> floats =
-              (ConcurrentLinkedDeque) decodedDataMap.get(channelKey);
-          floats.offerFirst(((InfoPacket) packet).convertedSamples.get(index));
-        }
-      }
-    }
+  /**
+   * Returns the primitive sample store behind {@link #decodedDataMap}
+   *
+   * <p>Reading through the store avoids boxing every sample, e.g. {@code
+   * getSampleStore().drainTo(SampleStore.ORIENTATION_CHANNEL, samples)} moves all available Acc_X
+   * samples into a float array.
+   *
+   * @return SampleStore of the decoder, null before the first call to decode
+   */
+  public static SampleStore getSampleStore() {
+    return sampleStore;
   }
 
-  private static class ConnectedThread extends Thread {
-    private final InputStream mmInStream;
+  /**
+   * Returns the queue of decoded {@link SampleBlock}s, keeping all channels of a packet together
+   *
+   * <p>Blocks are only queued after the first call, e.g. {@code
+   * getSampleBlockQueue().drainTo(blocks, 64)} moves up to 64 blocks into a list. To be called back
+   * with every batch of blocks instead, subscribe to {@link #SAMPLE_BLOCKS}.
+   *
+   * @return SampleBlockQueue filled by the decoder
+   */
+  public static SampleBlockQueue getSampleBlockQueue() {
+    return getDefaultSession().getSampleBlockQueue();
+  }
 
-    public ConnectedThread(InputStream inputStream) {
-      mmInStream = inputStream;
-      initializeMapInstance();
-    }
+  /**
+   * Starts recording the raw frames of the device stream into a {@link FrameJournal}
+   *
+   * <p>Every frame read after this call is appended before it is decoded, a running recording is
+   * stopped first.
+   *
+   * @param file journal file, its index is written next to it
+   * @throws IOException when the journal can not be created
+   */
+  public static void startRecording(File file) throws IOException {
+    getDefaultSession().startRecording(file);
+  }
 
-    public void run() {
-      int pId = 0;
-      while (true) {
-        try {
-          byte[] buffer = new byte[1024];
-          // reading PID
-          mmInStream.read(buffer, 0, 1);
-          pId = ByteBuffer.wrap(buffer).order(java.nio.ByteOrder.LITTLE_ENDIAN).getInt();
-          Log.d(TAG, "pid .." + pId);
-          buffer = new byte[1024];
-
-          // reading count
-          mmInStream.read(buffer, 0, 1);
-          int count = ByteBuffer.wrap(buffer).order(java.nio.ByteOrder.LITTLE_ENDIAN).getInt();
-          buffer = new byte[1024];
-
-          // reading payload
-          mmInStream.read(buffer, 0, 2);
-          int payload = ByteBuffer.wrap(buffer).order(java.nio.ByteOrder.LITTLE_ENDIAN).getInt();
-          buffer = new byte[1024];
-
-          // reading timestamp
-          mmInStream.read(buffer, 0, 4);
-          int timeStamp = ByteBuffer.wrap(buffer).order(java.nio.ByteOrder.LITTLE_ENDIAN).getInt();
-
-          Log.d(TAG, "pid .." + pId + " payload is : " + payload);
-
-          // reading payload data
-          buffer = new byte[payload - 4];
-          int read = mmInStream.read(buffer, 0, buffer.length);
-          Log.d(TAG, "reading count is ...." + read);
-          // parsing payload data
-
-          Packet packet = parsePayloadData(pId, Arrays.copyOfRange(buffer, 0, buffer.length - 4));
-
-        } catch (IOException | InvalidDataException exception) {
-          exception.printStackTrace();
-          break;
-        }
-      }
-    }
+  /**
+   * Stops recording and closes the journal, does nothing when no recording is running
+   *
+   * @throws IOException when the journal can not be trimmed
+   */
+  public static void stopRecording() throws IOException {
+    getDefaultSession().stopRecording();
+  }
+
+  /**
+   * Starts writing the ExG and orientation data of the device stream into a BDF+ file
+   *
+   * <p>The file header is written with the next ExG packet, a running BDF recording is stopped
+   * first.
+   *
+   * @param file BDF file
+   * @param samplingRate ExG sampling rate the device is configured to
+   * @throws IOException when the file can not be created
+   */
+  public static void startBdfRecording(File file, int samplingRate) throws IOException {
+    getDefaultSession().startBdfRecording(file, samplingRate);
+  }
+
+  /**
+   * Stops the BDF recording and completes the file, does nothing when no recording is running
+   *
+   * @throws IOException when the header can not be completed
+   */
+  public static void stopBdfRecording() throws IOException {
+    getDefaultSession().stopBdfRecording();
+  }
+
+  /**
+   * Encodes a command, see {@link CommandChannel} to send commands and wait for their execution
+   *
+   * @param hostTimestamp host time in seconds the device echoes in its acknowledgements
+   * @return byte[] encoded command that can be sent to the device
+   */
+  static byte[] encodeCommand(DeviceCommand command, long hostTimestamp) {
+    final byte[] frame = new byte[DeviceCommand.FRAME_LENGTH];
+    command.encode(frame, 0, 0, hostTimestamp);
+    return frame;
+  }
+
+  /** Creates a parser that decodes every frame of a stream into {@link #decodedDataMap} */
+  static FrameParser createFrameParser(InputStream stream) {
+    return new FrameParser(stream, new FrameDecoder(getDefaultSession()));
+  }
 
-    void initializeMapInstance() {
+  static synchronized void initializeMapInstance() {
 
-      if (decodedDataMap == null) {
-        decodedDataMap = new HashMap<>();
-      }
+    if (defaultSession == null) {
+      defaultSession = new DeviceSession("Explore", SAMPLE_BLOCKS);
+      sampleStore = defaultSession.getSampleStore();
+      decodedDataMap = sampleStore.asMap();
     }
   }
 }
@@ -5,14 +5,23 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
 import android.util.Log;
 import com.mentalab.exception.CommandFailedException;
+import com.mentalab.exception.InvalidCommandException;
 import com.mentalab.exception.NoBluetoothException;
 import com.mentalab.exception.NoConnectionException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 public class MentalabCommands {
 
@@ -72,6 +81,45 @@ public class MentalabCommands {
    */
   public static void connect(String deviceName)
       throws CommandFailedException, NoBluetoothException, NoConnectionException {
+    if (mmSocket != null) {
+      try {
+        mmSocket.close();
+      } catch (Exception ignored) {
+      }
+      mmSocket = null;
+    }
+    mmSocket = openSocket(deviceName);
+  }
+
+  /**
+   * Connects to an Explore device and starts decoding its stream in a new {@link DeviceSession}
+   *
+   * <p>Unlike {@link #connect(String)} every call opens its own connection, so several devices can
+   * stream at the same time. Close the session to disconnect.
+   *
+   * @param deviceName name of the device to connect to
+   * @return session decoding the device stream
+   * @throws NoConnectionException when the device is not paired
+   * @throws NoBluetoothException
+   */
+  public static DeviceSession openSession(String deviceName)
+      throws CommandFailedException, NoBluetoothException, NoConnectionException {
+    final BluetoothSocket socket = openSocket(deviceName);
+    final DeviceSession session = new DeviceSession(deviceName);
+    try {
+      session.connect(socket.getInputStream(), socket.getOutputStream());
+    } catch (IOException exception) {
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+      }
+      throw new CommandFailedException("Connection to device failed", exception);
+    }
+    return session;
+  }
+
+  private static BluetoothSocket openSocket(String deviceName)
+      throws CommandFailedException, NoBluetoothException, NoConnectionException {
     UUID uuid = UUID.fromString("00001101-0000-1000-8000-00805f9b34fb");
     final BluetoothAdapter btAdapter = BluetoothAdapter.getDefaultAdapter();
 
@@ -88,55 +136,36 @@ public class MentalabCommands {
       }
     }
 
-    if (mmSocket != null) {
-      try {
-        mmSocket.close();
-      } catch (Exception ignored) {
-      }
-    }
-
     if (btDevice == null) {
       Log.e(TAG, "Bluetooth device is null.");
       throw new NoConnectionException("Bluetooth device not found", null);
     }
 
+    final BluetoothSocket socket;
     try {
-      mmSocket = btDevice.createRfcommSocketToServiceRecord(uuid);
+      socket = btDevice.createRfcommSocketToServiceRecord(uuid);
     } catch (Exception exception) {
       Log.d(TAG, "Could not get rfComm socket:", exception);
-      try {
-        mmSocket.close();
-      } catch (Exception ignored) {
-        Log.e(TAG, "Exception occurred!! rfComm socket:", exception);
-      }
-      mmSocket = null;
       throw new NoConnectionException("Connection to device failed", exception);
     }
 
     Log.v(TAG, "Got rfComm socket!");
 
-    if (mmSocket != null) {
+    try {
+      socket.connect();
+    } catch (IOException e) {
+      Log.d(TAG, "socket.connect() failed with message: " + e.getMessage());
       try {
-        mmSocket.connect();
-      } catch (IOException e) {
-        Log.d(TAG, "mmSocket.connect() failed with message: " + e.getMessage());
-        if (mmSocket != null) {
-          try {
-            mmSocket.close();
-          } catch (Exception exception) {
-            Log.d(
-                TAG,
-                "mmSocket.close()  failed after failed connection with message:" + e.getMessage());
-            throw new CommandFailedException("Connection to device failed", exception);
-          }
-        }
-        mmSocket = null;
-        Log.d(TAG, "mmSocket.connect() failed");
-        throw new CommandFailedException("Connection to device failed", null);
+        socket.close();
+      } catch (Exception exception) {
+        Log.d(TAG, "socket.close()  failed after failed connection with message:" + e.getMessage());
+        throw new CommandFailedException("Connection to device failed", exception);
       }
+      throw new CommandFailedException("Connection to device failed", null);
     }
 
     Log.d(TAG, "Connected to Mentalab Explore!");
+    return socket;
   }
 
   /**
@@ -144,16 +173,12 @@ public class MentalabCommands {
    *
    * <p>Defaults: 250Hz sampling rate, data collection from all modules is enabled.
    *
-   * @throws CommandFailedException
-   * @throws NoConnectionException
-   * @throws NoBluetoothException
+   * @throws CommandFailedException when the device does not execute the reset
+   * @throws NoConnectionException when the device stream is not being decoded
    */
-  /*
-    public static void
-    softReset()
-            throws CommandFailedException, NoConnectionException, NoBluetoothException {...}
-
-  */
+  public static void softReset() throws CommandFailedException, NoConnectionException {
+    execute(Collections.singletonList(DeviceCommand.softReset()));
+  }
 
   /**
    * Returns the device data stream
@@ -162,10 +187,11 @@ public class MentalabCommands {
    * @throws NoBluetoothException
    * @return InputStream of raw bytes
    */
-  public static InputStream getRawData() throws NoBluetoothException {
+  public static synchronized InputStream getRawData() throws NoBluetoothException {
     try {
       assert mmSocket != null;
       mmInStream = mmSocket.getInputStream();
+      mmOutputStream = mmSocket.getOutputStream();
 
     } catch (Exception exception) {
       Log.d(TAG, "NoBluetoothException occurred");
@@ -175,27 +201,49 @@ public class MentalabCommands {
     return mmInStream;
   }
 
-  /* */
+  /**
+   * Returns the device connection as a transport for {@link MentalabCodec#decode(Transport)},
+   * commands are written to the same connection
+   *
+   * @throws NoBluetoothException when the streams of the device are not available
+   */
+  public static synchronized Transport getTransport() throws NoBluetoothException {
+    final InputStream input = getRawData();
+    return Transports.of(input, mmOutputStream);
+  }
+
+  /**
+   * Starts decoding the connected device into {@link MentalabCodec#decodedDataMap}, commands are
+   * written to the same connection
+   *
+   * @return Immutable Map of Queues of Numbers, see {@link MentalabCodec#decode(InputStream)}
+   * @throws NoBluetoothException when the streams of the device are not available
+   */
+  public static synchronized Map<String, Queue<Float>> startDecoding() throws NoBluetoothException {
+    final InputStream input = getRawData();
+    MentalabCodec.getDefaultSession().connect(input, mmOutputStream);
+    return MentalabCodec.decodedDataMap;
+  }
+
   /**
    * Sets sampling rate of the device
    *
    * <p>Sampling rate only applies to ExG data. Orientation and Environment data are always sampled
    * at 20Hz. Currently available sampling rates are 250,500 and 1000 Hz. Default is 250Hz.
    *
-   * @param SamplingRate enumerator to choose sampling rate
+   * @param samplingRate enumerator to choose sampling rate
    * @throws CommandFailedException when sampling rate change fails
-   * @throws NoBluetoothException
+   * @throws NoConnectionException when the device stream is not being decoded
    */
-  /*
-  public static void
-  setSamplingRate(SamplingRate s)
-          throws CommandFailedException, NoBluetoothException {...}
-
-
-
-
+  public static void setSamplingRate(SamplingRate samplingRate)
+      throws CommandFailedException, NoConnectionException {
+    try {
+      execute(Collections.singletonList(DeviceCommand.setSamplingRate(samplingRate.hertz)));
+    } catch (InvalidCommandException exception) {
+      throw new CommandFailedException(exception.getMessage(), exception);
+    }
+  }
 
-  */
   /**
    * Enables or disables data collection per module or channel.
    *
@@ -203,27 +251,116 @@ public class MentalabCommands {
    * bandwidth and power. Calling setEnabled with a partial map is supported. Trying to enable a
    * channel that the device does not have results in a CommandFailedException thrown. When a
    * CommandFailedException is received from this method, none or only some of the switches may have
-   * been set.
+   * been set. All switches are sent at once and confirmed by the device in a single round trip.
    *
-   * @param switches Map of modules to on (true) or off (false) state accelerometer, magnetometer,
-   *     gyroscope, environment, channel0 .. 31
+   * @param switches Map of modules to on (true) or off (false) state environment, orientation
+   *     (accelerometer, magnetometer and gyroscope are switched together), exg, channel0 .. 7
    * @throws CommandFailedException
-   * @throws NoConnectionException
-   * @throws NoBluetoothException
+   * @throws NoConnectionException when the device stream is not being decoded
    */
-  /*
-  public static void
-  setEnabled(Map<String, Boolean> switches)
-          throws CommandFailedException, NoConnectionException, NoBluetoothException {...}
-
+  public static void setEnabled(Map<String, Boolean> switches)
+      throws CommandFailedException, NoConnectionException {
+    final List<DeviceCommand> commands = new ArrayList<>();
+    final Map<DeviceCommand.Module, Boolean> modules = new EnumMap<>(DeviceCommand.Module.class);
+    // all channels are enabled until the device reports its mask
+    int channelMask = MentalabCodec.getDefaultSession().getChannelMask();
+    if (channelMask == 0) {
+      channelMask = 0xFF;
+    }
+    boolean channelsChanged = false;
+    for (Map.Entry<String, Boolean> entry : switches.entrySet()) {
+      final String key = entry.getKey().toLowerCase(Locale.ROOT);
+      final boolean enabled = entry.getValue();
+      if (key.startsWith("channel")) {
+        final int channel;
+        try {
+          channel = Integer.parseInt(key.substring("channel".length()));
+        } catch (NumberFormatException exception) {
+          throw new CommandFailedException("Unknown switch: " + entry.getKey(), exception);
+        }
+        if (channel < 0 || channel > 7) {
+          throw new CommandFailedException("Device has no " + entry.getKey(), null);
+        }
+        channelMask = enabled ? channelMask | 1 << channel : channelMask & ~(1 << channel);
+        channelsChanged = true;
+        continue;
+      }
+      final DeviceCommand.Module module = moduleOf(key);
+      if (module == null) {
+        throw new CommandFailedException("Unknown switch: " + entry.getKey(), null);
+      }
+      final Boolean previous = modules.put(module, enabled);
+      if (previous != null && previous != enabled) {
+        throw new CommandFailedException("Conflicting switches for " + module, null);
+      }
+    }
+    for (Map.Entry<DeviceCommand.Module, Boolean> module : modules.entrySet()) {
+      commands.add(DeviceCommand.setModuleEnabled(module.getKey(), module.getValue()));
+    }
+    if (channelsChanged) {
+      try {
+        commands.add(DeviceCommand.setChannelMask(channelMask));
+      } catch (InvalidCommandException exception) {
+        throw new CommandFailedException(exception.getMessage(), exception);
+      }
+    }
+    execute(commands);
+  }
 
+  private static DeviceCommand.Module moduleOf(String key) {
+    switch (key) {
+      case "environment":
+        return DeviceCommand.Module.ENVIRONMENT;
+      case "orientation":
+      case "accelerometer":
+      case "magnetometer":
+      case "gyroscope":
+        return DeviceCommand.Module.ORIENTATION;
+      case "exg":
+        return DeviceCommand.Module.EXG;
+      default:
+        return null;
+    }
+  }
 
+  /** Sends commands to the device of {@link #startDecoding()} and waits for their execution */
+  private static void execute(List<DeviceCommand> commands)
+      throws CommandFailedException, NoConnectionException {
+    if (commands.isEmpty()) {
+      return;
+    }
+    final CommandChannel channel = MentalabCodec.getDefaultSession().getCommandChannel();
+    if (channel == null) {
+      throw new NoConnectionException("Device stream is not being decoded", null);
+    }
+    try {
+      for (CommandFuture future : channel.sendAll(commands)) {
+        future.get();
+      }
+    } catch (IOException exception) {
+      throw new CommandFailedException("Sending command failed", exception);
+    } catch (ExecutionException exception) {
+      throw new CommandFailedException(exception.getMessage(), exception.getCause());
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new CommandFailedException("Interrupted while waiting for the device", exception);
+    }
+  }
 
-  */
   /** Available sampling rates */
-  enum SamplingRate {
-    SR_250,
-    SR_500,
-    SR_100,
+  public enum SamplingRate {
+    SR_250(250),
+    SR_500(500),
+    SR_1000(1000);
+
+    private final int hertz;
+
+    SamplingRate(int hertz) {
+      this.hertz = hertz;
+    }
+
+    public int getHertz() {
+      return hertz;
+    }
   }
 }
@@ -0,0 +1,201 @@
+package com.mentalab;
+
+import android.util.Log;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counters, latency histograms and gauges of the decoder, shared by all sessions
+ *
+ * <p>Recording costs a few uncontended atomic adds and two {@link System#nanoTime()} calls per
+ * frame, so metrics are enabled by default. Read them with {@link #snapshot()} or have snapshots
+ * published periodically:
+ *
+ * <pre>{@code
+ * MetricsRegistry.getInstance().startReporting(10, TimeUnit.SECONDS);
+ * PuSubManager.getInstance()
+ *     .subscribe(MetricsRegistry.METRICS, snapshot -> Log.i("Explore", snapshot.toString()));
+ * }</pre>
+ */
+public final class MetricsRegistry {
+
+  private static final String TAG = "Explore";
+
+  /** Topic the snapshots of {@link #startReporting(long, TimeUnit)} are published on */
+  public static final Topic<MetricsSnapshot> METRICS =
+      new Topic<>("Metrics", MetricsSnapshot.class);
+
+  /** Events counted by the decoder and its consumers */
+  public enum Counter {
+    /** Frames missing according to the frame counter of the device */
+    FRAMES_DROPPED,
+    /** Frames with intact boundaries whose packet data could not be decoded */
+    FRAMES_CORRUPT,
+    /** Times a parser lost the frame boundaries of a stream and searched for the next frame */
+    RESYNCS,
+    /** Bytes discarded while resynchronizing */
+    BYTES_SKIPPED,
+    /** Sample blocks discarded by a full {@link SampleBlockQueue} */
+    BLOCKS_DROPPED,
+    /** Sample blocks written to the spill file of a full {@link SampleBlockQueue} */
+    BLOCKS_SPILLED,
+    /** Messages lost to the overflow policy of an asynchronous subscriber */
+    MESSAGES_DROPPED
+  }
+
+  /** Value sampled when a snapshot is taken, e.g. a queue depth */
+  public interface Gauge {
+    long getValue();
+  }
+
+  private static final int PID_COUNT = 256;
+
+  private volatile boolean enabled = true;
+  private final StripedCounter frames = new StripedCounter(PID_COUNT);
+  private final StripedCounter bytes = new StripedCounter(PID_COUNT);
+  private final StripedCounter counters = new StripedCounter(Counter.values().length);
+  private final AtomicReferenceArray<LatencyHistogram> decodeLatency =
+      new AtomicReferenceArray<>(PID_COUNT);
+  private final LatencyHistogram publishLatency = new LatencyHistogram();
+  private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+  private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+  private ScheduledExecutorService reporter;
+  private ScheduledFuture<?> report;
+
+  MetricsRegistry() {}
+
+  public static MetricsRegistry getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Turns recording on or off, values recorded so far are kept */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Samples a gauge in every snapshot, replacing a gauge of the same name
+   *
+   * @param name name of the value, e.g. Explore_1234/blockQueue.depth
+   */
+  public void registerGauge(String name, Gauge gauge) {
+    gauges.put(name, gauge);
+  }
+
+  public void unregisterGauge(String name) {
+    gauges.remove(name);
+  }
+
+  /** Counts a decoded frame of frameLength bytes that took decodeNanos to decode */
+  void recordFrame(int pid, int frameLength, long decodeNanos) {
+    frames.increment(pid);
+    bytes.add(pid, frameLength);
+    LatencyHistogram histogram = decodeLatency.get(pid);
+    if (histogram == null) {
+      decodeLatency.compareAndSet(pid, null, new LatencyHistogram());
+      histogram = decodeLatency.get(pid);
+    }
+    histogram.record(decodeNanos);
+  }
+
+  void recordPublish(long nanos) {
+    publishLatency.record(nanos);
+  }
+
+  void recordDispatch(long nanos) {
+    dispatchLatency.record(nanos);
+  }
+
+  void increment(Counter counter) {
+    counters.increment(counter.ordinal());
+  }
+
+  void add(Counter counter, long delta) {
+    counters.add(counter.ordinal(), delta);
+  }
+
+  /** Copies all current values */
+  public MetricsSnapshot snapshot() {
+    final long[] frameCounts = new long[PID_COUNT];
+    final long[] byteCounts = new long[PID_COUNT];
+    final Map<Integer, MetricsSnapshot.Histogram> latencies = new TreeMap<>();
+    for (int pid = 0; pid < PID_COUNT; pid++) {
+      frameCounts[pid] = frames.sum(pid);
+      byteCounts[pid] = bytes.sum(pid);
+      final LatencyHistogram histogram = decodeLatency.get(pid);
+      if (histogram != null) {
+        latencies.put(pid, histogram.snapshot());
+      }
+    }
+    final long[] counterValues = new long[counters.size()];
+    for (int index = 0; index < counterValues.length; index++) {
+      counterValues[index] = counters.sum(index);
+    }
+    final Map<String, Long> gaugeValues = new TreeMap<>();
+    for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+      gaugeValues.put(gauge.getKey(), gauge.getValue().getValue());
+    }
+    return new MetricsSnapshot(
+        System.nanoTime(),
+        frameCounts,
+        byteCounts,
+        counterValues,
+        latencies,
+        publishLatency.snapshot(),
+        dispatchLatency.snapshot(),
+        gaugeValues);
+  }
+
+  /**
+   * Publishes a snapshot on {@link #METRICS} every period, replacing a running schedule
+   *
+   * @param period time between two snapshots
+   */
+  public synchronized void startReporting(long period, TimeUnit unit) {
+    stopReporting();
+    if (reporter == null) {
+      final ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(
+              1,
+              runnable -> {
+                final Thread thread = new Thread(runnable, "Explore-metrics");
+                thread.setDaemon(true);
+                return thread;
+              });
+      executor.setRemoveOnCancelPolicy(true);
+      reporter = executor;
+    }
+    report = reporter.scheduleAtFixedRate(this::report, period, period, unit);
+  }
+
+  private void report() {
+    try {
+      PuSubManager.getInstance().publish(METRICS, snapshot());
+    } catch (RuntimeException exception) {
+      // a failing gauge or subscriber would cancel all later reports
+      Log.e(TAG, "Reporting metrics failed: " + exception);
+    }
+  }
+
+  public synchronized void stopReporting() {
+    if (report != null) {
+      report.cancel(false);
+      report = null;
+    }
+  }
+
+  private static final class Holder {
+    static final MetricsRegistry INSTANCE = new MetricsRegistry();
+  }
+}
@@ -0,0 +1,213 @@
+package com.mentalab;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Values of the {@link MetricsRegistry} at one point in time
+ *
+ * <p>Counters are totals since the start of the process. Rates are computed against an earlier
+ * snapshot:
+ *
+ * <pre>{@code
+ * MetricsSnapshot previous = registry.snapshot();
+ * ...
+ * MetricsSnapshot current = registry.snapshot();
+ * double exgFramesPerSecond = current.getFramesPerSecond(146, previous); // EEG98 frames
+ * }</pre>
+ */
+public final class MetricsSnapshot {
+
+  private final long nanoTime;
+  private final long[] frames;
+  private final long[] bytes;
+  private final long[] counters;
+  private final Map<Integer, Histogram> decodeLatency;
+  private final Histogram publishLatency;
+  private final Histogram dispatchLatency;
+  private final Map<String, Long> gauges;
+
+  MetricsSnapshot(
+      long nanoTime,
+      long[] frames,
+      long[] bytes,
+      long[] counters,
+      Map<Integer, Histogram> decodeLatency,
+      Histogram publishLatency,
+      Histogram dispatchLatency,
+      Map<String, Long> gauges) {
+    this.nanoTime = nanoTime;
+    this.frames = frames;
+    this.bytes = bytes;
+    this.counters = counters;
+    this.decodeLatency = Collections.unmodifiableMap(decodeLatency);
+    this.publishLatency = publishLatency;
+    this.dispatchLatency = dispatchLatency;
+    this.gauges = Collections.unmodifiableMap(gauges);
+  }
+
+  /** {@link System#nanoTime()} when the snapshot was taken */
+  public long getNanoTime() {
+    return nanoTime;
+  }
+
+  /** Number of frames of a packet id decoded */
+  public long getFrames(int pid) {
+    return frames[pid & 0xFF];
+  }
+
+  /** Number of bytes received in frames of a packet id, headers and checksums included */
+  public long getBytes(int pid) {
+    return bytes[pid & 0xFF];
+  }
+
+  /** Number of frames decoded, all packet ids */
+  public long getTotalFrames() {
+    long total = 0;
+    for (long count : frames) {
+      total += count;
+    }
+    return total;
+  }
+
+  /** Number of bytes received, all packet ids */
+  public long getTotalBytes() {
+    long total = 0;
+    for (long count : bytes) {
+      total += count;
+    }
+    return total;
+  }
+
+  /** Frames of a packet id per second since an earlier snapshot */
+  public double getFramesPerSecond(int pid, MetricsSnapshot previous) {
+    return rate(getFrames(pid) - previous.getFrames(pid), previous);
+  }
+
+  /** Bytes of a packet id per second since an earlier snapshot */
+  public double getBytesPerSecond(int pid, MetricsSnapshot previous) {
+    return rate(getBytes(pid) - previous.getBytes(pid), previous);
+  }
+
+  private double rate(long delta, MetricsSnapshot previous) {
+    final long nanos = nanoTime - previous.nanoTime;
+    return nanos > 0 ? delta * 1e9 / nanos : 0;
+  }
+
+  public long getCounter(MetricsRegistry.Counter counter) {
+    return counters[counter.ordinal()];
+  }
+
+  /** Decode latency of a packet id, null when no frame of it was decoded */
+  public Histogram getDecodeLatency(int pid) {
+    return decodeLatency.get(pid & 0xFF);
+  }
+
+  /** Decode latency per packet id */
+  public Map<Integer, Histogram> getDecodeLatencies() {
+    return decodeLatency;
+  }
+
+  /** Time from the arrival of the first frame of a chunk to the publish of its sample blocks */
+  public Histogram getPublishLatency() {
+    return publishLatency;
+  }
+
+  /** Time subscribers spent handling a message */
+  public Histogram getDispatchLatency() {
+    return dispatchLatency;
+  }
+
+  /** Gauge values by name */
+  public Map<String, Long> getGauges() {
+    return gauges;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder("Metrics[frames=");
+    builder.append(getTotalFrames()).append(", bytes=").append(getTotalBytes());
+    for (MetricsRegistry.Counter counter : MetricsRegistry.Counter.values()) {
+      builder.append(", ").append(counter).append('=').append(getCounter(counter));
+    }
+    for (Map.Entry<Integer, Histogram> latency : decodeLatency.entrySet()) {
+      builder.append(", decode[").append(latency.getKey()).append("]=").append(latency.getValue());
+    }
+    builder.append(", publish=").append(publishLatency);
+    builder.append(", dispatch=").append(dispatchLatency);
+    for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+      builder.append(", ").append(gauge.getKey()).append('=').append(gauge.getValue());
+    }
+    return builder.append(']').toString();
+  }
+
+  /** Distribution of durations in power of two buckets */
+  public static final class Histogram {
+
+    private final long[] counts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    Histogram(long[] counts, long totalNanos, long maxNanos) {
+      this.counts = counts;
+      this.totalNanos = totalNanos;
+      this.maxNanos = maxNanos;
+      long count = 0;
+      for (long bucket : counts) {
+        count += bucket;
+      }
+      this.count = count;
+    }
+
+    /** Number of recorded durations */
+    public long getCount() {
+      return count;
+    }
+
+    public double getMeanNanos() {
+      return count == 0 ? 0 : totalNanos / (double) count;
+    }
+
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+
+    /**
+     * Upper bound of a percentile, at most twice the exact value
+     *
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return nanoseconds, 0 when nothing was recorded
+     */
+    public long getPercentileNanos(double quantile) {
+      if (count == 0) {
+        return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+      long seen = 0;
+      for (int bucket = 0; bucket < counts.length; bucket++) {
+        seen += counts[bucket];
+        if (seen >= rank) {
+          // bucket n holds durations below 2^n, never report more than the maximum
+          return bucket == 0 ? 0 : Math.min(maxNanos, (1L << bucket) - 1);
+        }
+      }
+      return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "{n="
+          + count
+          + ", mean="
+          + Math.round(getMeanNanos())
+          + "ns, p50="
+          + getPercentileNanos(0.5)
+          + "ns, p99="
+          + getPercentileNanos(0.99)
+          + "ns, max="
+          + maxNanos
+          + "ns}";
+    }
+  }
+}
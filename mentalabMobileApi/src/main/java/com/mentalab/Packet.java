@@ -2,12 +2,8 @@ package com.mentalab;
 
 import com.mentalab.exception.InvalidDataException;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.ListIterator;
 
 /** Root packet interface */
 abstract class Packet {
@@ -15,36 +11,25 @@ abstract class Packet {
   private byte[] byteBuffer = null;
   private int dataCount;
 
-  /** String representation of attributes */
-  static double[] bytesToDouble(byte[] bytes, int numOfbytesPerNumber) throws InvalidDataException {
-    if (bytes.length % numOfbytesPerNumber != 0) {
-      throw new InvalidDataException("Illegal length", null);
-    }
-    int arraySize = bytes.length / numOfbytesPerNumber;
-    double[] values = new double[arraySize];
-    for (int index = 0; index < bytes.length; index += numOfbytesPerNumber) {
-      int signBit = bytes[index + numOfbytesPerNumber - 1] >> 7;
-      double value;
-
-      value =
-          ByteBuffer.wrap(new byte[] {bytes[index], bytes[index + 1]})
-              .order(ByteOrder.LITTLE_ENDIAN)
-              .getShort();
-      if (signBit == 1) {
-        value = -1 * (Math.pow(2, 8 * numOfbytesPerNumber) - value);
-      }
+  /** Reads the signed 16 bit little endian number at offset */
+  static int readInt16(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | bytes[offset + 1] << 8;
+  }
 
-      values[index / numOfbytesPerNumber] = value;
-    }
-    return values;
+  /** Reads the unsigned 16 bit little endian number at offset */
+  static int readUInt16(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
   }
 
   /**
    * Converts binary data stream to human readable voltage values
    *
-   * @param byteBuffer
+   * @param byteBuffer buffer holding the packet data
+   * @param offset offset of the packet data in byteBuffer
+   * @param length number of packet data bytes
    */
-  public abstract void convertData(byte[] byteBuffer) throws InvalidDataException;
+  public abstract void convertData(byte[] byteBuffer, int offset, int length)
+      throws InvalidDataException;
 
   /** String representation of attributes */
   public abstract String toString();
@@ -52,6 +37,21 @@ abstract class Packet {
   /** Number of element in each packet */
   public abstract int getDataCount();
 
+  /** Clears decoded values so a pooled instance can be refilled by the next frame */
+  void reset() {}
+
+  /**
+   * Copies the decoded values into an immutable block
+   *
+   * @param pid packet id of the frame
+   * @param timestamp device timestamp of the frame
+   * @param hostTimestamp estimated host time of the frame, see {@link ClockSync}
+   * @return SampleBlock, or null for packets that carry no samples
+   */
+  SampleBlock toSampleBlock(int pid, long timestamp, long hostTimestamp) {
+    return null;
+  }
+
   enum PacketId {
     ORIENTATION(13) {
       @Override
@@ -68,7 +68,7 @@ abstract class Packet {
     TIMESTAMP(27) {
       @Override
       public Packet createInstance() {
-        return null;
+        return new TimeStampPacket();
       }
     },
     DISCONNECT(25) {
@@ -80,7 +80,7 @@ abstract class Packet {
     INFO(99) {
       @Override
       public Packet createInstance() {
-        return null;
+        return new DeviceInfoPacket();
       }
     },
     EEG94(144) {
@@ -98,37 +98,37 @@ abstract class Packet {
     EEG99S(30) {
       @Override
       public Packet createInstance() {
-        return null;
+        return new Eeg99s();
       }
     },
     EEG99(62) {
       @Override
       public Packet createInstance() {
-        return null;
+        return new Eeg99();
       }
     },
     EEG94R(208) {
       @Override
       public Packet createInstance() {
-        return null;
+        return new Eeg94r();
       }
     },
     EEG98R(210) {
       @Override
       public Packet createInstance() {
-        return null;
+        return new Eeg98r();
       }
     },
     CMDRCV(192) {
       @Override
       public Packet createInstance() {
-        return null;
+        return new AckPacket();
       }
     },
     CMDSTAT(193) {
       @Override
       public Packet createInstance() {
-        return null;
+        return new CommandStatusPacket();
       }
     },
     MARKER(194) {
@@ -144,12 +144,26 @@ abstract class Packet {
       }
     };
 
+    /** Packet ids indexed by their numeric value, null for unknown values */
+    private static final PacketId[] BY_NUM_VAL = new PacketId[256];
+
+    static {
+      for (PacketId packetId : values()) {
+        BY_NUM_VAL[packetId.value] = packetId;
+      }
+    }
+
     private int value;
 
     PacketId(int value) {
       this.value = value;
     }
 
+    /** Returns the packet id of a PID byte, or null when the PID is unknown */
+    static PacketId fromNumVal(int value) {
+      return BY_NUM_VAL[value & 0xFF];
+    }
+
     public int getNumVal() {
       return value;
     }
@@ -162,58 +176,258 @@ abstract class Packet {
 /** Interface for different EEG packets */
 abstract class DataPacket extends Packet {
   private static final String TAG = "Explore";
-  private static byte channelMask;
-  protected ArrayList<Float> convertedSamples;
+  /**
+   * ExG units (uV) per ADC count of the 4 and 8 channel devices (ADS1294, ADS1298): 2.4V reference,
+   * gain of 6 and a 24 bit ADC
+   */
+  static final float UV_PER_COUNT = (float) (2.4 / (6 * (Math.pow(2, 23) - 1)) * 1e6);
 
-  static double[] toInt32(byte[] byteArray) throws InvalidDataException, IOException {
-    if (byteArray.length % 3 != 0)
-      throw new InvalidDataException("Byte buffer is not read properly", null);
-    int arraySize = byteArray.length / 3;
+  /**
+   * ExG units (uV) per ADC count of the 32 channel devices (ADS1299): 4.5V reference, gain of 24
+   * and a 24 bit ADC, the scale explorepy applies to EEG99 packets
+   */
+  static final float ADS1299_UV_PER_COUNT = (float) (4.5 / (24 * (Math.pow(2, 23) - 1)) * 1e6);
+
+  /** Channel samples per row, enabled or not */
+  private final int rowChannels;
+  /** Channels decoded from the next packet */
+  ExgLayout layout;
+  /** Decoded samples of the enabled channels, interleaved channel by channel */
+  protected float[] convertedSamples = new float[0];
+  /** Status word of every sample row */
+  protected int[] statusWords = new int[0];
+  /** Number of decoded sample rows */
+  protected int sampleCount;
+
+  /** Whether every row starts with a status word */
+  private final boolean hasStatus;
+
+  /** uV per ADC count of the device sending the packet */
+  private final float scale;
+
+  /** Creates a packet of rows made of a status word and rowChannels samples */
+  DataPacket(int rowChannels) {
+    this(rowChannels, true);
+  }
+
+  DataPacket(int rowChannels, boolean hasStatus) {
+    this.rowChannels = rowChannels;
+    this.hasStatus = hasStatus;
+    scale = uvPerCount(rowChannels);
+    layout = ExgLayout.of(rowChannels, hasStatus, 0);
+  }
+
+  /** ExG units (uV) per ADC count of a device with the given number of channels */
+  static float uvPerCount(int channels) {
+    return channels == 32 ? ADS1299_UV_PER_COUNT : UV_PER_COUNT;
+  }
+
+  static double[] toInt32(byte[] byteArray, int offset, int length)
+      throws InvalidDataException, IOException {
+    if (length % 3 != 0) throw new InvalidDataException("Byte buffer is not read properly", null);
+    int arraySize = length / 3;
     double[] values = new double[arraySize];
 
-    for (int index = 0; index < byteArray.length; index += 3) {
-      if (index == 0) {
-        channelMask = byteArray[index];
-      }
-      int signBit = byteArray[index + 2] >> 7;
-      double value;
-      if (signBit == 0)
-        value =
-            ByteBuffer.wrap(
-                    new byte[] {byteArray[index], byteArray[index + 1], byteArray[index + 2], 0})
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .getInt();
-      else {
-        int twosComplimentValue =
-            ByteBuffer.wrap(
-                    new byte[] {byteArray[index], byteArray[index + 1], byteArray[index + 2], 0})
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .getInt();
-        value = -1 * (Math.pow(2, 24) - twosComplimentValue);
-      }
-      values[index / 3] = value;
+    for (int index = 0; index < arraySize; index++) {
+      values[index] = readInt24(byteArray, offset + index * 3);
     }
 
     return values;
   }
 
-  public static byte getChannelMask() {
-    return channelMask;
+  /** Sign extends the 24 bit little endian number at offset */
+  static int readInt24(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | bytes[offset + 2] << 16;
+  }
+
+  /**
+   * Decodes rows of 24 bit little endian ExG samples, each row made of one status word followed by
+   * one sample per channel
+   *
+   * @param src buffer holding the packet data
+   * @param offset offset of the first row in src
+   * @param rows number of rows to decode
+   * @param channels number of channel samples per row
+   * @param scale factor applied to every ADC count
+   * @param status receives the status word of every row
+   * @param samples receives rows * channels scaled samples, interleaved channel by channel
+   */
+  static void decodeExg(
+      byte[] src, int offset, int rows, int channels, float scale, int[] status, float[] samples) {
+    final int rowLength = (channels + 1) * 3;
+    int in = offset;
+    int out = 0;
+    for (int row = 0; row < rows; row++) {
+      status[row] = readInt24(src, in);
+      out = decodeInt24(src, in + 3, channels, scale, samples, out);
+      in += rowLength;
+    }
+  }
+
+  /**
+   * Converts consecutive 24 bit little endian samples, the bulk path shared by all ExG packets
+   *
+   * @param src buffer holding the samples
+   * @param offset offset of the first sample in src
+   * @param count number of samples to convert
+   * @param scale factor applied to every ADC count
+   * @param dst receives the scaled samples
+   * @param dstOffset index of the first converted sample in dst
+   * @return index after the last converted sample
+   */
+  static int decodeInt24(
+      byte[] src, int offset, int count, float scale, float[] dst, int dstOffset) {
+    int in = offset;
+    int out = dstOffset;
+    final int end = dstOffset + count;
+    // four samples are twelve bytes, unrolled so the loads of neighbours can be scheduled together
+    for (final int unrolledEnd = end - 3; out < unrolledEnd; out += 4, in += 12) {
+      dst[out] = readInt24(src, in) * scale;
+      dst[out + 1] = readInt24(src, in + 3) * scale;
+      dst[out + 2] = readInt24(src, in + 6) * scale;
+      dst[out + 3] = readInt24(src, in + 9) * scale;
+    }
+    for (; out < end; out++, in += 3) {
+      dst[out] = readInt24(src, in) * scale;
+    }
+    return out;
+  }
+
+  /**
+   * Selects the channels decoded from the next packets
+   *
+   * @param mask enabled channels of the device, bit n set for channel n + 1, 0 for all channels
+   */
+  void setChannelMask(int mask) {
+    if (mask != layout.mask) {
+      layout = ExgLayout.of(rowChannels, hasStatus, mask);
+    }
+  }
+
+  /** Enabled channels the samples were decoded for, bit n set for channel n + 1 */
+  int getChannelMask() {
+    return layout.mask;
+  }
+
+  /** Channel number of the index-th decoded channel, 0 for Channel_1 */
+  int getChannelId(int index) {
+    return layout.channelIds[index];
+  }
+
+  /**
+   * Decodes the enabled channels of a packet made of rows of a status word and one sample per
+   * channel
+   *
+   * @throws InvalidDataException when length is not a whole number of rows
+   */
+  void convertExg(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    final ExgLayout layout = this.layout;
+    if (length % layout.rowLength != 0) {
+      throw new InvalidDataException("Byte buffer is not read properly", null);
+    }
+    final int rows = length / layout.rowLength;
+    if (statusWords.length < rows || convertedSamples.length < rows * layout.channelCount) {
+      statusWords = new int[rows];
+      convertedSamples = new float[rows * layout.channelCount];
+    }
+    layout.decode(byteBuffer, offset, rows, scale, statusWords, convertedSamples);
+    sampleCount = rows;
   }
 
-  public static void setChannelMask(byte channelMask) {
-    DataPacket.channelMask = channelMask;
+  /** Number of decoded channels, the enabled channels of the device */
+  @Override
+  public final int getDataCount() {
+    return layout.channelCount;
   }
 
-  ArrayList<Float> getVoltageValues() {
+  /**
+   * Decoded samples, interleaved channel by channel. Only the first getSampleCount() rows are
+   * valid.
+   */
+  float[] getVoltageValues() {
     return convertedSamples;
   }
+
+  /** Number of sample rows per channel in the packet */
+  int getSampleCount() {
+    return sampleCount;
+  }
+
+  @Override
+  void reset() {
+    sampleCount = 0;
+  }
+
+  /**
+   * Copies the decoded samples into a block of getDataCount() channels and getSampleCount() samples
+   *
+   * @param pid packet id of the frame
+   * @param timestamp device timestamp of the frame
+   * @param hostTimestamp estimated host time of the frame
+   */
+  @Override
+  SampleBlock toSampleBlock(int pid, long timestamp, long hostTimestamp) {
+    final int channels = getDataCount();
+    return new SampleBlock(
+        pid,
+        layout.mask,
+        timestamp,
+        hostTimestamp,
+        channels,
+        sampleCount,
+        Arrays.copyOf(convertedSamples, sampleCount * channels));
+  }
+
+  String samplesToString(String title) {
+    final StringBuilder data = new StringBuilder(title).append(": [");
+    for (int index = 0; index < sampleCount * getDataCount(); index++) {
+      data.append(convertedSamples[index]).append(" ,");
+    }
+    return data.append(']').toString();
+  }
 }
 
 /** Interface for packets related to device information */
 abstract class InfoPacket extends Packet {
-  List<Float> convertedSamples = null;
+  /** One decoded value per attribute */
+  float[] convertedSamples = new float[getDataCount()];
+
   ArrayList<String> attributes;
+  /** Id of the first {@link SampleStore} channel the attributes are stored in */
+  int firstChannelId;
+
+  /**
+   * Wraps the decoded values in a block of getDataCount() channels and a single sample, the mask
+   * has one bit set per channel
+   *
+   * @param pid packet id of the frame
+   * @param timestamp device timestamp of the frame
+   * @param hostTimestamp estimated host time of the frame
+   */
+  @Override
+  SampleBlock toSampleBlock(int pid, long timestamp, long hostTimestamp) {
+    final int channels = getDataCount();
+    if (channels == 0) {
+      return null;
+    }
+    return new SampleBlock(
+        pid,
+        (1 << channels) - 1,
+        timestamp,
+        hostTimestamp,
+        channels,
+        1,
+        Arrays.copyOf(convertedSamples, channels));
+  }
+
+  String valuesToString(String title) {
+    final StringBuilder data = new StringBuilder(title).append(": [");
+    for (int index = 0; index < getDataCount(); index++) {
+      data.append(' ').append(attributes.get(index).trim()).append(": ");
+      data.append(convertedSamples[index]).append(',');
+    }
+    return data.append(']').toString();
+  }
 }
 
 /** Interface for packets related to device synchronization */
@@ -224,188 +438,149 @@ abstract class UtilPacket extends Packet {
 
 // class Eeg implements DataPacket {}
 class Eeg98 extends DataPacket {
-  private static int channelNumber = 8;
-
-  @Override
-  public void convertData(byte[] byteBuffer) {
-    List<Float> values = new ArrayList<Float>();
-    try {
-      double[] data = DataPacket.toInt32(byteBuffer);
-
-      for (int index = 0; index < data.length; index++) {
-        // skip int representation for status bit
-        if (index % 9 == 0) continue;
-        // calculation for gain adjustment
-        double exgUnit = Math.pow(10, -6);
-        double vRef = 2.4;
-        double gain = (exgUnit * (Math.pow(2, 23) - 1)) * 6;
-        values.add((float) (data[index] * (vRef / gain)));
-      }
-    } catch (InvalidDataException | IOException e) {
-      e.printStackTrace();
-    }
-    this.convertedSamples = new ArrayList<>(values);
+
+  Eeg98() {
+    super(8);
   }
 
   @Override
-  public String toString() {
-
-    String data = "ExG 8 channel: [";
-
-    for (Float convertedSample : this.convertedSamples) {
-      data += convertedSample + " ,";
-    }
-    return data + "]";
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    convertExg(byteBuffer, offset, length);
   }
 
-  /** Number of element in each packet */
   @Override
-  public int getDataCount() {
-    return 8;
+  public String toString() {
+    return samplesToString("ExG 8 channel");
   }
 }
 
 class Eeg94 extends DataPacket {
 
-  private final int channelNumber = 4;
+  Eeg94() {
+    super(4);
+  }
+
   /**
    * Converts binary data stream to human readable voltage values
    *
    * @param byteBuffer
    */
   @Override
-  public void convertData(byte[] byteBuffer) {
-    List<Float> values = new ArrayList<Float>();
-    try {
-      double[] data = DataPacket.toInt32(byteBuffer);
-
-      for (int index = 0; index < data.length; index++) {
-        // skip int representation for status bit
-        if (index % 5 == 0) continue;
-        // calculation for gain adjustment
-        double exgUnit = Math.pow(10, -6);
-        double vRef = 2.4;
-        double gain = (exgUnit * (Math.pow(2, 23) - 1)) * 6;
-        values.add((float) (data[index] * (vRef / gain)));
-      }
-    } catch (InvalidDataException | IOException e) {
-      e.printStackTrace();
-    }
-    this.convertedSamples = new ArrayList<>(values);
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    convertExg(byteBuffer, offset, length);
   }
 
   @Override
   public String toString() {
+    return samplesToString("ExG 4 channel");
+  }
+}
 
-    String data = "ExG 4 channel: [";
-    ListIterator<Float> it = this.convertedSamples.listIterator();
+/** ExG packet of a 32 channel device: rows of a status word and 32 samples */
+class Eeg99 extends DataPacket {
 
-    while (it.hasNext()) {
-      data += it.next() + " ,";
-    }
-    return data + "]";
+  Eeg99() {
+    super(32);
   }
 
-  /** Number of element in each packet */
   @Override
-  public int getDataCount() {
-    return this.channelNumber;
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    convertExg(byteBuffer, offset, length);
   }
-}
 
-class Eeg99 extends DataPacket {
-  /**
-   * Converts binary data stream to human readable voltage values
-   *
-   * @param byteBuffer
-   */
   @Override
-  public void convertData(byte[] byteBuffer) {}
+  public String toString() {
+    return samplesToString("ExG 32 channel");
+  }
+}
+
+/** Raw ExG packet of a 32 channel device: rows of 32 samples without status word */
+class Eeg99s extends DataPacket {
+
+  Eeg99s() {
+    super(32, false);
+  }
 
-  /** String representation of attributes */
   @Override
-  public String toString() {
-    return "Eeg99";
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    convertExg(byteBuffer, offset, length);
   }
 
-  /** Number of element in each packet */
   @Override
-  public int getDataCount() {
-    return 0;
+  public String toString() {
+    return samplesToString("ExG 32 channel raw");
   }
 }
 
-class Eeg99s extends DataPacket {
-  /**
-   * Converts binary data stream to human readable voltage values
-   *
-   * @param byteBuffer byte array with input data
-   */
+/** Raw ExG packet of a 4 channel device: rows of 4 samples without status word */
+class Eeg94r extends DataPacket {
+
+  Eeg94r() {
+    super(4, false);
+  }
+
   @Override
-  public void convertData(byte[] byteBuffer) {}
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    convertExg(byteBuffer, offset, length);
+  }
 
-  /** String representation of attributes */
   @Override
   public String toString() {
-    return "Eeg99s";
+    return samplesToString("ExG 4 channel raw");
+  }
+}
+
+/** Raw ExG packet of an 8 channel device: rows of 8 samples without status word */
+class Eeg98r extends DataPacket {
+
+  Eeg98r() {
+    super(8, false);
   }
 
-  /** Number of element in each packet */
   @Override
-  public int getDataCount() {
-    return 0;
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    convertExg(byteBuffer, offset, length);
+  }
+
+  @Override
+  public String toString() {
+    return samplesToString("ExG 8 channel raw");
   }
 }
 
 /** Device related information packet to transmit firmware version, ADC mask and sampling rate */
 class Orientation extends InfoPacket {
 
+  private static final ArrayList<String> ATTRIBUTES =
+      new ArrayList<String>(
+          Arrays.asList(
+              "Acc_X", "Acc_Y", "Acc_Z", "Mag_X", "Mag_Y", "Mag_Z", "Gyro_X", "Gyro_Y", "Gyro_Z"));
+
   public Orientation() {
-    attributes =
-        new ArrayList<String>(
-            Arrays.asList(
-                "Acc_X", "Acc_Y", "Acc_Z", "Mag_X", "Mag_Y", "Mag_Z", "Gyro_X", "Gyro_Y",
-                "Gyro_Z"));
-  }
-
-  @Override
-  public void convertData(byte[] byteBuffer) throws InvalidDataException {
-    List<Float> listValues = new ArrayList<Float>();
-    double[] convertedRawValues = super.bytesToDouble(byteBuffer, 2);
-
-    for (int index = 0; index < convertedRawValues.length; index++) {
-      if (index < 3) {
-        listValues.add((float) (convertedRawValues[index] * 0.061));
-      } else if (index < 6) {
-        listValues.add((float) (convertedRawValues[index] * 8.750));
-      } else {
-        if (index == 6) {
-          listValues.add((float) (convertedRawValues[index] * 1.52 * -1));
-        } else {
-          listValues.add((float) (convertedRawValues[index] * 1.52));
-        }
-      }
-    }
-    this.convertedSamples = new ArrayList<>(listValues);
+    firstChannelId = SampleStore.ORIENTATION_CHANNEL;
+    attributes = ATTRIBUTES;
   }
 
   @Override
-  public String toString() {
-    String data = "Orientation packets: [";
-
-    for (int index = 0; index < convertedSamples.size(); index += 1) {
-      if (index % 9 < 3) {
-        data += " accelerometer: " + convertedSamples.get(index);
-      } else if (index % 9 < 6) {
-        data += " magnetometer: " + convertedSamples.get(index);
-      } else {
-        data += "gyroscope: " + convertedSamples.get(index);
-      }
-
-      data += ",";
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    if (length < 9 * 2) {
+      throw new InvalidDataException("Illegal length", null);
+    }
+    final float[] values = this.convertedSamples;
+    for (int index = 0; index < 3; index++) {
+      values[index] = readInt16(byteBuffer, offset + index * 2) * 0.061f;
     }
+    for (int index = 3; index < 6; index++) {
+      values[index] = readInt16(byteBuffer, offset + index * 2) * 8.750f;
+    }
+    values[6] = readInt16(byteBuffer, offset + 12) * -1.52f;
+    values[7] = readInt16(byteBuffer, offset + 14) * 1.52f;
+    values[8] = readInt16(byteBuffer, offset + 16) * 1.52f;
+  }
 
-    return data + "]";
+  @Override
+  public String toString() {
+    return valuesToString("Orientation packets");
   }
 
   /** Number of element in each packet */
@@ -417,12 +592,34 @@ class Orientation extends InfoPacket {
 
 /** Device related information packet to transmit firmware version, ADC mask and sampling rate */
 class DeviceInfoPacket extends InfoPacket {
+  int firmwareVersion;
+  /** ExG sampling rate in Hz, 16000 divided by a power of two */
+  int samplingRate;
+  /** Channels the ADC is configured to sample, bit n set when channel n + 1 is enabled */
+  int adcMask;
+
   @Override
-  public void convertData(byte[] byteBuffer) {}
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    if (length < 4) {
+      throw new InvalidDataException("Illegal length", null);
+    }
+    firmwareVersion = readUInt16(byteBuffer, offset);
+    final int rateExponent = byteBuffer[offset + 2] & 0xFF;
+    if (rateExponent > 14) {
+      throw new InvalidDataException("Illegal sampling rate", null);
+    }
+    samplingRate = 16000 >> rateExponent;
+    adcMask = byteBuffer[offset + 3] & 0xFF;
+  }
 
   @Override
   public String toString() {
-    return "DeviceInfoPacket";
+    return "DeviceInfoPacket: firmware "
+        + firmwareVersion
+        + ", "
+        + samplingRate
+        + "Hz, mask "
+        + Integer.toHexString(adcMask);
   }
 
   /** Number of element in each packet */
@@ -432,17 +629,26 @@ class DeviceInfoPacket extends InfoPacket {
   }
 }
 
-/**
- * Acknowledgement packet is sent when a configuration command is successfully executed on the
- * device
- */
-class AckPacket extends InfoPacket {
+/** Acknowledgement packet is sent when the device received a configuration command (CMDRCV) */
+class AckPacket extends UtilPacket {
+  /** Opcode of the acknowledged command */
+  int opcode;
+  /** Host timestamp sent with the command, unsigned 32 bit */
+  long hostTimestamp;
+
   @Override
-  public void convertData(byte[] byteBuffer) {}
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    if (length < 5) {
+      throw new InvalidDataException("Illegal length", null);
+    }
+    opcode = byteBuffer[offset] & 0xFF;
+    hostTimestamp =
+        (readUInt16(byteBuffer, offset + 1) | (long) readUInt16(byteBuffer, offset + 3) << 16);
+  }
 
   @Override
   public String toString() {
-    return "AckPacket";
+    return "AckPacket: opcode " + Integer.toHexString(opcode) + ", host time " + hostTimestamp;
   }
 
   @Override
@@ -451,14 +657,50 @@ class AckPacket extends InfoPacket {
   }
 }
 
+/** Status packet is sent when the device executed a configuration command (CMDSTAT) */
+class CommandStatusPacket extends AckPacket {
+  /** Whether the command was executed successfully */
+  boolean success;
+
+  @Override
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    if (length < 6) {
+      throw new InvalidDataException("Illegal length", null);
+    }
+    super.convertData(byteBuffer, offset, length);
+    success = byteBuffer[offset + 5] == 1;
+  }
+
+  @Override
+  public String toString() {
+    return "CommandStatusPacket: opcode "
+        + Integer.toHexString(opcode)
+        + ", host time "
+        + hostTimestamp
+        + (success ? ", done" : ", failed");
+  }
+}
+
 /** Packet sent from the device to sync clocks */
 class TimeStampPacket extends UtilPacket {
+  /** Host timestamp the device echoes, unsigned 64 bit */
+  long hostTimestamp;
+
   @Override
-  public void convertData(byte[] byteBuffer) {}
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    if (length < 8) {
+      throw new InvalidDataException("Illegal length", null);
+    }
+    long value = 0;
+    for (int index = 7; index >= 0; index--) {
+      value = value << 8 | (byteBuffer[offset + index] & 0xFF);
+    }
+    hostTimestamp = value;
+  }
 
   @Override
   public String toString() {
-    return "TimeStampPacket";
+    return "TimeStampPacket: " + hostTimestamp;
   }
 
   /** Number of element in each packet */
@@ -476,7 +718,7 @@ class DisconnectionPacket extends UtilPacket {
    * @param byteBuffer
    */
   @Override
-  public void convertData(byte[] byteBuffer) {}
+  public void convertData(byte[] byteBuffer, int offset, int length) {}
 
   /** String representation of attributes */
   @Override
@@ -494,8 +736,12 @@ class DisconnectionPacket extends UtilPacket {
 class Environment extends InfoPacket {
   float temperature, light, battery;
 
+  private static final ArrayList<String> ATTRIBUTES =
+      new ArrayList<String>(Arrays.asList("Temperature ", "Light ", "Battery "));
+
   public Environment() {
-    super.attributes = new ArrayList(Arrays.asList("Temperature ", "Light ", "Battery "));
+    firstChannelId = SampleStore.ENVIRONMENT_CHANNEL;
+    super.attributes = ATTRIBUTES;
   }
   /**
    * Converts binary data stream to human readable voltage values
@@ -503,51 +749,22 @@ class Environment extends InfoPacket {
    * @param byteBuffer
    */
   @Override
-  public void convertData(byte[] byteBuffer) throws InvalidDataException {
-    List<Float> listValues = new ArrayList<Float>();
-
-    listValues.add(
-        (float)
-            ByteBuffer.wrap(new byte[] {byteBuffer[0], 0, 0, 0})
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .getInt());
-    listValues.add(
-        (float)
-                (ByteBuffer.wrap(new byte[] {byteBuffer[1], byteBuffer[2], 0, 0})
-                    .order(ByteOrder.LITTLE_ENDIAN)
-                    .getInt())
-            * (1000 / 4095));
+  public void convertData(byte[] byteBuffer, int offset, int length) throws InvalidDataException {
+    if (length < 5) {
+      throw new InvalidDataException("Illegal length", null);
+    }
+    final float[] values = this.convertedSamples;
+    values[0] = byteBuffer[offset] & 0xFF;
+    values[1] = readUInt16(byteBuffer, offset + 1) * (1000f / 4095);
     float batteryLevelRaw =
-        (float)
-            ((ByteBuffer.wrap(new byte[] {byteBuffer[3], byteBuffer[4], 0, 0})
-                        .order(ByteOrder.LITTLE_ENDIAN)
-                        .getInt()
-                    * 16.8
-                    / 6.8)
-                * (1.8 / 2457));
-
-    listValues.add(getBatteryParcentage(batteryLevelRaw));
-    this.convertedSamples = new ArrayList<>(listValues);
+        (float) (readUInt16(byteBuffer, offset + 3) * 16.8 / 6.8 * (1.8 / 2457));
+    values[2] = getBatteryParcentage(batteryLevelRaw);
   }
 
   /** String representation of attributes */
   @Override
   public String toString() {
-    String data = "Environment packets: [";
-
-    for (int index = 0; index < convertedSamples.size(); index += 1) {
-      if (index % 9 < 3) {
-        data += " Temperature: " + convertedSamples.get(index);
-      } else if (index % 9 < 6) {
-        data += " Light: " + convertedSamples.get(index);
-      } else {
-        data += "Battery: " + convertedSamples.get(index);
-      }
-
-      data += ",";
-    }
-
-    return data + "]";
+    return valuesToString("Environment packets");
   }
 
   /** Number of element in each packet */
@@ -0,0 +1,32 @@
+package com.mentalab;
+
+/**
+ * Reusable packet instances of one decoder, indexed by PID
+ *
+ * <p>Each PID gets a single packet instance that is reset and refilled for every frame, so decoding
+ * does not allocate packets. A packet handed out by {@link #acquire(int)} is only valid until the
+ * next frame with the same PID is decoded; copy its values to keep them.
+ */
+final class PacketPool {
+
+  private final Packet[] packets = new Packet[256];
+
+  /**
+   * Returns the reset packet instance for a PID
+   *
+   * @param pid packet id byte of a frame
+   * @return reusable packet, or null when the PID is unknown or has no decoder
+   */
+  Packet acquire(int pid) {
+    Packet packet = packets[pid & 0xFF];
+    if (packet == null) {
+      final Packet.PacketId packetId = Packet.PacketId.fromNumVal(pid);
+      if (packetId == null || (packet = packetId.createInstance()) == null) {
+        return null;
+      }
+      packets[pid & 0xFF] = packet;
+    }
+    packet.reset();
+    return packet;
+  }
+}
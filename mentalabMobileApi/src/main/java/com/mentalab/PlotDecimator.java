@@ -0,0 +1,334 @@
+package com.mentalab;
+
+import java.util.Arrays;
+
+/**
+ * Multi-resolution min/max envelopes of the ExG channels of a device for live plotting
+ *
+ * <p>Every channel keeps the last capacity samples at several resolutions: the samples themselves
+ * and the min and max of buckets of 4, 16, 64 ... samples. All levels are updated as ExG packets
+ * are decoded. A query picks the level whose buckets are just narrower than a pixel, so the work
+ * depends on the number of pixels, not on the sampling rate or the time range:
+ *
+ * <pre>{@code
+ * PlotDecimator decimator = new PlotDecimator();
+ * session.setPlotDecimator(decimator);
+ * ...
+ * long newest = decimator.getNewestTimestamp();
+ * decimator.minMax(0, newest - 5 * 10000, newest, min, max); // last 5 seconds
+ * }</pre>
+ *
+ * Channels are numbered among the enabled ExG channels only, like the values of an ExG {@link
+ * SampleBlock}: with Channel_1 disabled, channel 0 is Channel_2. Timestamps are device timestamps
+ * in units of 100us.
+ */
+public final class PlotDecimator {
+
+  /** Default number of samples kept per channel, about 32 seconds at 1000Hz */
+  public static final int DEFAULT_CAPACITY = 1 << 15;
+
+  /** Samples per bucket grow by 4 = 1 << LEVEL_SHIFT from one level to the next */
+  private static final int LEVEL_SHIFT = 2;
+
+  private final int capacity;
+  private final int levelCount;
+
+  private int channelCount = 0;
+  /** Level 0, the samples of every channel */
+  private float[][] samples = new float[0][];
+  /** min and max of the buckets of level 1 .. levelCount - 1 of every channel */
+  private float[][][] mins = new float[0][][];
+
+  private float[][][] maxs = new float[0][][];
+  /** Number of samples added per channel */
+  private long count = 0;
+
+  private long anchorSample = 0;
+  private long anchorTicks = 0;
+  private int samplingRate = DeviceSession.DEFAULT_SAMPLING_RATE;
+
+  // LTTB candidates, grown on demand
+  private double[] candidateX = new double[0];
+  private float[] candidateY = new float[0];
+
+  public PlotDecimator() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a decimator
+   *
+   * @param capacity number of samples kept per channel, a power of two of at least 16
+   */
+  public PlotDecimator(int capacity) {
+    if (capacity < 16 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two of at least 16");
+    }
+    this.capacity = capacity;
+    // the coarsest level keeps at least 4 buckets
+    levelCount = (Integer.numberOfTrailingZeros(capacity) - LEVEL_SHIFT) / LEVEL_SHIFT + 1;
+  }
+
+  /**
+   * Adds the samples of a decoded ExG packet
+   *
+   * @param values interleaved samples, channel by channel
+   * @param channels number of channels per sample row
+   * @param rows number of sample rows
+   * @param timestamp device timestamp of the first row
+   * @param samplingRate sampling rate of the samples in Hz
+   */
+  synchronized void add(float[] values, int channels, int rows, long timestamp, int samplingRate) {
+    if (channels != channelCount) {
+      allocate(channels);
+    }
+    this.samplingRate = samplingRate;
+    anchorSample = count;
+    anchorTicks = timestamp;
+    int in = 0;
+    for (int row = 0; row < rows; row++, count++) {
+      final int index = (int) count & (capacity - 1);
+      for (int channel = 0; channel < channels; channel++) {
+        final float value = values[in++];
+        samples[channel][index] = value;
+        final float[][] channelMins = mins[channel];
+        final float[][] channelMaxs = maxs[channel];
+        for (int level = 1; level < levelCount; level++) {
+          final int shift = level * LEVEL_SHIFT;
+          final int bucket = index >>> shift;
+          if ((count & ((1L << shift) - 1)) == 0) {
+            channelMins[level][bucket] = value;
+            channelMaxs[level][bucket] = value;
+          } else {
+            if (value < channelMins[level][bucket]) {
+              channelMins[level][bucket] = value;
+            }
+            if (value > channelMaxs[level][bucket]) {
+              channelMaxs[level][bucket] = value;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void allocate(int channels) {
+    channelCount = channels;
+    samples = new float[channels][capacity];
+    mins = new float[channels][levelCount][];
+    maxs = new float[channels][levelCount][];
+    for (int channel = 0; channel < channels; channel++) {
+      for (int level = 1; level < levelCount; level++) {
+        mins[channel][level] = new float[capacity >>> (level * LEVEL_SHIFT)];
+        maxs[channel][level] = new float[capacity >>> (level * LEVEL_SHIFT)];
+      }
+    }
+    count = 0;
+  }
+
+  public synchronized int getChannelCount() {
+    return channelCount;
+  }
+
+  /** Device timestamp of the newest sample */
+  public synchronized long getNewestTimestamp() {
+    return toTicks(count - 1);
+  }
+
+  /** Device timestamp of the oldest sample still kept */
+  public synchronized long getOldestTimestamp() {
+    return toTicks(Math.max(0, count - capacity));
+  }
+
+  /**
+   * Computes the envelope of a time range, one min and max per pixel
+   *
+   * <p>Pixels without samples are set to NaN. Buckets that straddle the border of two pixels count
+   * for both, so the envelope never misses a peak.
+   *
+   * @param channel index of an enabled ExG channel, 0 for the first enabled channel
+   * @param from device timestamp of the left edge
+   * @param to device timestamp of the right edge
+   * @param min receives the minimum of every pixel, its length is the number of pixels
+   * @param max receives the maximum of every pixel, at least as long as min
+   * @return number of pixels with samples
+   */
+  public synchronized int minMax(int channel, long from, long to, float[] min, float[] max) {
+    final int pixels = min.length;
+    Arrays.fill(min, Float.NaN);
+    Arrays.fill(max, 0, pixels, Float.NaN);
+    final long first = toSample(from);
+    final long span = toSample(to) - first;
+    if (channel >= channelCount || pixels == 0 || span <= 0) {
+      return 0;
+    }
+    final int level = levelFor(span / (double) pixels);
+    final int shift = level * LEVEL_SHIFT;
+    final long oldest = oldestBucket(level);
+    final long newest = (count - 1) >> shift;
+    int filled = 0;
+    for (int pixel = 0; pixel < pixels; pixel++) {
+      final long start = first + span * pixel / pixels;
+      final long end = first + span * (pixel + 1) / pixels;
+      final long firstBucket = Math.max(start >> shift, oldest);
+      final long lastBucket = Math.min((Math.max(end, start + 1) - 1) >> shift, newest);
+      if (firstBucket > lastBucket) {
+        continue;
+      }
+      float low = Float.POSITIVE_INFINITY;
+      float high = Float.NEGATIVE_INFINITY;
+      for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+        low = Math.min(low, bucketMin(channel, level, bucket));
+        high = Math.max(high, bucketMax(channel, level, bucket));
+      }
+      min[pixel] = low;
+      max[pixel] = high;
+      filled++;
+    }
+    return filled;
+  }
+
+  /**
+   * Downsamples a time range with largest triangle three buckets (LTTB), which keeps the shape of
+   * the signal with one point per pixel instead of a band
+   *
+   * <p>The candidates are the minima and maxima of the level whose buckets are at most a quarter of
+   * a pixel wide.
+   *
+   * @param channel index of an enabled ExG channel, 0 for the first enabled channel
+   * @param from device timestamp of the left edge
+   * @param to device timestamp of the right edge
+   * @param timestamps receives the device timestamp of every point
+   * @param values receives the value of every point, its length is the number of points, at least 3
+   * @return number of points, less than requested when the range has fewer candidates
+   */
+  public synchronized int lttb(int channel, long from, long to, long[] timestamps, float[] values) {
+    final int points = values.length;
+    if (points < 3) {
+      throw new IllegalArgumentException("LTTB needs at least 3 points");
+    }
+    final long first = toSample(from);
+    final long span = toSample(to) - first;
+    if (channel >= channelCount || span <= 0) {
+      return 0;
+    }
+    final int candidates = collectCandidates(channel, first, first + span, points);
+    if (candidates <= points) {
+      for (int index = 0; index < candidates; index++) {
+        timestamps[index] = toTicks(Math.round(candidateX[index]));
+        values[index] = candidateY[index];
+      }
+      return candidates;
+    }
+
+    final double every = (candidates - 2) / (double) (points - 2);
+    int selected = 0;
+    timestamps[0] = toTicks(Math.round(candidateX[0]));
+    values[0] = candidateY[0];
+    for (int point = 0; point < points - 2; point++) {
+      // average of the next bucket, the last point for the last bucket
+      final int nextStart = (int) ((point + 1) * every) + 1;
+      final int nextEnd = Math.min((int) ((point + 2) * every) + 1, candidates);
+      double averageX = 0;
+      double averageY = 0;
+      for (int index = nextStart; index < nextEnd; index++) {
+        averageX += candidateX[index];
+        averageY += candidateY[index];
+      }
+      final int nextCount = nextEnd - nextStart;
+      averageX = nextCount > 0 ? averageX / nextCount : candidateX[candidates - 1];
+      averageY = nextCount > 0 ? averageY / nextCount : candidateY[candidates - 1];
+
+      final double ax = candidateX[selected];
+      final double ay = candidateY[selected];
+      final int start = (int) (point * every) + 1;
+      final int end = (int) ((point + 1) * every) + 1;
+      double largest = -1;
+      int chosen = start;
+      for (int index = start; index < end; index++) {
+        final double area =
+            Math.abs(
+                (ax - averageX) * (candidateY[index] - ay)
+                    - (ax - candidateX[index]) * (averageY - ay));
+        if (area > largest) {
+          largest = area;
+          chosen = index;
+        }
+      }
+      selected = chosen;
+      timestamps[point + 1] = toTicks(Math.round(candidateX[chosen]));
+      values[point + 1] = candidateY[chosen];
+    }
+    timestamps[points - 1] = toTicks(Math.round(candidateX[candidates - 1]));
+    values[points - 1] = candidateY[candidates - 1];
+    return points;
+  }
+
+  /** Fills the candidate arrays with the bucket extremes of a sample range in time order */
+  private int collectCandidates(int channel, long first, long end, int points) {
+    final int level = levelFor((end - first) / (4.0 * points));
+    final int shift = level * LEVEL_SHIFT;
+    final long firstBucket = Math.max(first >> shift, oldestBucket(level));
+    final long lastBucket = Math.min((end - 1) >> shift, (count - 1) >> shift);
+    final int perBucket = level == 0 ? 1 : 2;
+    final int needed = (int) Math.max(0, (lastBucket - firstBucket + 1) * perBucket);
+    if (candidateY.length < needed) {
+      candidateX = new double[needed];
+      candidateY = new float[needed];
+    }
+    int candidates = 0;
+    final double width = 1 << shift;
+    for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+      final double center = bucket * width + (width - 1) / 2;
+      if (level == 0) {
+        candidateX[candidates] = bucket;
+        candidateY[candidates++] = bucketMin(channel, 0, bucket);
+        continue;
+      }
+      final float low = bucketMin(channel, level, bucket);
+      final float high = bucketMax(channel, level, bucket);
+      // keep both extremes, the one reached first is unknown so they share the bucket center
+      candidateX[candidates] = center - width / 4;
+      candidateY[candidates++] = low;
+      candidateX[candidates] = center + width / 4;
+      candidateY[candidates++] = high;
+    }
+    return candidates;
+  }
+
+  /** Coarsest level with buckets of at most samplesPerPixel samples */
+  private int levelFor(double samplesPerPixel) {
+    int level = 0;
+    while (level + 1 < levelCount && (1L << ((level + 1) * LEVEL_SHIFT)) <= samplesPerPixel) {
+      level++;
+    }
+    return level;
+  }
+
+  /** Oldest bucket of a level that was not overwritten yet */
+  private long oldestBucket(int level) {
+    final int shift = level * LEVEL_SHIFT;
+    return Math.max(0, ((count - 1) >> shift) - (capacity >>> shift) + 1);
+  }
+
+  private float bucketMin(int channel, int level, long bucket) {
+    final int slot = (int) (bucket & ((capacity >>> (level * LEVEL_SHIFT)) - 1));
+    return level == 0 ? samples[channel][slot] : mins[channel][level][slot];
+  }
+
+  private float bucketMax(int channel, int level, long bucket) {
+    final int slot = (int) (bucket & ((capacity >>> (level * LEVEL_SHIFT)) - 1));
+    return level == 0 ? samples[channel][slot] : maxs[channel][level][slot];
+  }
+
+  private long toSample(long ticks) {
+    return anchorSample
+        + Math.round((ticks - anchorTicks) * (double) samplingRate / FrameParser.TICKS_PER_SECOND);
+  }
+
+  private long toTicks(long sample) {
+    return anchorTicks
+        + Math.round(
+            (sample - anchorSample) * (double) FrameParser.TICKS_PER_SECOND / samplingRate);
+  }
+}
@@ -1,41 +1,320 @@
 package com.mentalab;
 
-import android.os.Build.VERSION_CODES;
-import androidx.annotation.RequiresApi;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.function.Consumer;
-
-class PuSubManager {
-  private static PuSubManager pubSubSingleton = null;
-  private Map<String, ArrayList<Consumer<?>>> topicsSubscribers =
-      new HashMap<String, ArrayList<Consumer<?>>>();
+import android.util.Log;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
-  public static PuSubManager getInstance() {
-    if (pubSubSingleton == null) pubSubSingleton = new PuSubManager();
+/**
+ * Publish/subscribe hub for decoded data
+ *
+ * <p>Subscriber lists are copy-on-write arrays, so publishing never locks and subscribing or
+ * unsubscribing does not disturb a running publish. Synchronous subscribers are called on the
+ * publishing thread. Asynchronous subscribers get a bounded mailbox that is drained on a shared
+ * dispatch executor, so a slow consumer never stalls the thread decoding the device stream.
+ */
+public final class PuSubManager {
+
+  private static final String TAG = "Explore";
+
+  /** Messages delivered per mailbox drain before yielding the dispatch thread to other mailboxes */
+  private static final int DRAIN_BATCH = 64;
+
+  private final ConcurrentMap<Topic<?>, Subscriber<?>[]> topicsSubscribers =
+      new ConcurrentHashMap<>();
+  private final Executor dispatchExecutor;
 
-    return pubSubSingleton;
+  PuSubManager(Executor dispatchExecutor) {
+    this.dispatchExecutor = dispatchExecutor;
   }
 
-  @RequiresApi(api = VERSION_CODES.N)
-  public <T> void publish(String topic, T message) {
-    ArrayList<Consumer<?>> subscribers = this.topicsSubscribers.get(topic);
+  public static PuSubManager getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * Publishes a message to every subscriber of a topic
+   *
+   * <p>Synchronous subscribers are called before this method returns. Asynchronous subscribers
+   * receive the message through their mailbox; with {@link OverflowPolicy#BLOCK} a full mailbox
+   * blocks the caller until there is space.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void publish(Topic<T> topic, T message) {
+    final Subscriber<?>[] subscribers = topicsSubscribers.get(topic);
     if (subscribers == null) return;
 
-    for (Consumer subscriberConsumer : subscribers) {
-      subscriberConsumer.accept(message);
+    for (Subscriber<?> subscriber : subscribers) {
+      ((Subscriber<T>) subscriber).deliver(message);
     }
   }
 
-  public synchronized <T> void subscribe(String topicName, Consumer<T> subscriberCallback) {
-    ArrayList<Consumer<?>> subscribers = this.topicsSubscribers.get(topicName);
+  /** Returns true when the topic has at least one subscriber */
+  public boolean hasSubscribers(Topic<?> topic) {
+    return topicsSubscribers.containsKey(topic);
+  }
+
+  /**
+   * Subscribes a callback that is invoked on the publishing thread
+   *
+   * @return Subscription to cancel the subscription with
+   */
+  public <T> Subscription subscribe(Topic<T> topic, Listener<? super T> listener) {
+    return add(topic, new Subscriber<T>(topic, listener));
+  }
+
+  /**
+   * Subscribes a callback that is invoked on a dispatch thread
+   *
+   * <p>Messages are queued in a mailbox of mailboxCapacity messages and delivered in publishing
+   * order. When the mailbox is full, overflowPolicy decides which message is lost or whether the
+   * publisher waits.
+   *
+   * @return Subscription to cancel the subscription with
+   */
+  public <T> Subscription subscribe(
+      Topic<T> topic,
+      Listener<? super T> listener,
+      int mailboxCapacity,
+      OverflowPolicy overflowPolicy) {
+    return add(topic, new AsyncSubscriber<T>(topic, listener, mailboxCapacity, overflowPolicy));
+  }
+
+  // subscribing is rare: writers serialize on this and publish a new array, readers never lock
+  private synchronized <T> Subscription add(Topic<T> topic, Subscriber<T> subscriber) {
+    final Subscriber<?>[] subscribers = topicsSubscribers.get(topic);
     if (subscribers == null) {
-      subscribers = new ArrayList<Consumer<?>>();
-      subscribers.add(subscriberCallback);
-      this.topicsSubscribers.put(topicName, subscribers);
+      topicsSubscribers.put(topic, new Subscriber<?>[] {subscriber});
     } else {
-      subscribers.add(subscriberCallback);
+      final Subscriber<?>[] grown = Arrays.copyOf(subscribers, subscribers.length + 1);
+      grown[subscribers.length] = subscriber;
+      topicsSubscribers.put(topic, grown);
+    }
+    return subscriber;
+  }
+
+  private synchronized void remove(Subscriber<?> subscriber) {
+    final Subscriber<?>[] subscribers = topicsSubscribers.get(subscriber.topic);
+    if (subscribers == null) return;
+
+    final Subscriber<?>[] shrunk = new Subscriber<?>[subscribers.length];
+    int count = 0;
+    for (Subscriber<?> existing : subscribers) {
+      if (existing != subscriber) {
+        shrunk[count++] = existing;
+      }
+    }
+    if (count == 0) {
+      // removing the topic keeps hasSubscribers() a single lookup
+      topicsSubscribers.remove(subscriber.topic);
+    } else if (count < subscribers.length) {
+      topicsSubscribers.put(subscriber.topic, Arrays.copyOf(shrunk, count));
+    }
+  }
+
+  /** Number of messages waiting in all asynchronous mailboxes */
+  long mailboxDepth() {
+    long depth = 0;
+    for (Subscriber<?>[] subscribers : topicsSubscribers.values()) {
+      for (Subscriber<?> subscriber : subscribers) {
+        if (subscriber instanceof AsyncSubscriber) {
+          depth += ((AsyncSubscriber<?>) subscriber).mailbox.size();
+        }
+      }
+    }
+    return depth;
+  }
+
+  /** Fill level of the fullest asynchronous mailbox in percent */
+  long mailboxFillPercent() {
+    long percent = 0;
+    for (Subscriber<?>[] subscribers : topicsSubscribers.values()) {
+      for (Subscriber<?> subscriber : subscribers) {
+        if (subscriber instanceof AsyncSubscriber) {
+          final ArrayBlockingQueue<?> mailbox = ((AsyncSubscriber<?>) subscriber).mailbox;
+          final int size = mailbox.size();
+          percent = Math.max(percent, size * 100L / (size + mailbox.remainingCapacity()));
+        }
+      }
+    }
+    return percent;
+  }
+
+  /** Receives the messages of a topic */
+  public interface Listener<T> {
+    void onMessage(T message);
+  }
+
+  /** Handle of a subscription */
+  public interface Subscription {
+
+    /** Stops delivery to the subscriber. Messages already in a mailbox are discarded. */
+    void unsubscribe();
+
+    /** Number of messages lost to the overflow policy of an asynchronous subscriber */
+    long droppedCount();
+  }
+
+  /** What to do with a message published to a full mailbox */
+  public enum OverflowPolicy {
+    /** Discard the oldest queued message to make room */
+    DROP_OLDEST,
+    /** Discard the message being published */
+    DROP_NEWEST,
+    /** Block the publisher until the subscriber has made room */
+    BLOCK
+  }
+
+  private class Subscriber<T> implements Subscription {
+    final Topic<T> topic;
+    final Listener<? super T> listener;
+    volatile boolean active = true;
+
+    Subscriber(Topic<T> topic, Listener<? super T> listener) {
+      this.topic = topic;
+      this.listener = listener;
+    }
+
+    void deliver(T message) {
+      dispatch(message);
+    }
+
+    /** Hands a message to the listener, timing it when metrics are enabled */
+    final void dispatch(T message) {
+      final MetricsRegistry metrics = MetricsRegistry.getInstance();
+      if (!metrics.isEnabled()) {
+        listener.onMessage(message);
+        return;
+      }
+      final long start = System.nanoTime();
+      try {
+        listener.onMessage(message);
+      } finally {
+        metrics.recordDispatch(System.nanoTime() - start);
+      }
+    }
+
+    @Override
+    public void unsubscribe() {
+      active = false;
+      remove(this);
+    }
+
+    @Override
+    public long droppedCount() {
+      return 0;
+    }
+  }
+
+  private final class AsyncSubscriber<T> extends Subscriber<T> implements Runnable {
+    private final ArrayBlockingQueue<T> mailbox;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+
+    AsyncSubscriber(
+        Topic<T> topic,
+        Listener<? super T> listener,
+        int mailboxCapacity,
+        OverflowPolicy overflowPolicy) {
+      super(topic, listener);
+      this.mailbox = new ArrayBlockingQueue<>(mailboxCapacity);
+      this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    void deliver(T message) {
+      if (!mailbox.offer(message)) {
+        switch (overflowPolicy) {
+          case DROP_OLDEST:
+            while (!mailbox.offer(message)) {
+              if (mailbox.poll() != null) {
+                drop();
+              }
+            }
+            break;
+          case DROP_NEWEST:
+            drop();
+            return;
+          case BLOCK:
+            try {
+              mailbox.put(message);
+            } catch (InterruptedException exception) {
+              Thread.currentThread().interrupt();
+              drop();
+              return;
+            }
+            break;
+        }
+      }
+      schedule();
+    }
+
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        dispatchExecutor.execute(this);
+      }
+    }
+
+    /** Drains the mailbox on a dispatch thread */
+    @Override
+    public void run() {
+      try {
+        for (int count = 0; count < DRAIN_BATCH && active; count++) {
+          final T message = mailbox.poll();
+          if (message == null) {
+            break;
+          }
+          try {
+            dispatch(message);
+          } catch (RuntimeException exception) {
+            // a failing listener loses the message, not its subscription
+            Log.e(TAG, "Subscriber of " + topic + " failed: " + exception);
+          }
+        }
+        if (!active) {
+          mailbox.clear();
+        }
+      } finally {
+        scheduled.set(false);
+      }
+      // a message published after the last poll must not be stranded
+      if (active && !mailbox.isEmpty()) {
+        schedule();
+      }
+    }
+
+    private void drop() {
+      dropped.incrementAndGet();
+      MetricsRegistry.getInstance().increment(MetricsRegistry.Counter.MESSAGES_DROPPED);
+    }
+
+    @Override
+    public long droppedCount() {
+      return dropped.get();
+    }
+  }
+
+  private static final class Holder {
+    private static final ExecutorService DISPATCH_EXECUTOR =
+        Executors.newCachedThreadPool(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "Explore-dispatch");
+              thread.setDaemon(true);
+              return thread;
+            });
+    static final PuSubManager INSTANCE = new PuSubManager(DISPATCH_EXECUTOR);
+
+    static {
+      final MetricsRegistry metrics = MetricsRegistry.getInstance();
+      metrics.registerGauge("mailboxes.depth", INSTANCE::mailboxDepth);
+      metrics.registerGauge("mailboxes.fillPercent", INSTANCE::mailboxFillPercent);
     }
   }
 }
@@ -0,0 +1,102 @@
+package com.mentalab;
+
+/**
+ * Radix-2 FFT of real input with precomputed twiddle and bit reversal tables
+ *
+ * <p>The N real samples are packed into N/2 complex values, transformed with an N/2 point complex
+ * FFT and split into the spectrum of the real input, which halves the work of a complex transform.
+ * All buffers are allocated up front, so transforms do not allocate. Instances are not thread-safe.
+ */
+final class RealFft {
+
+  private final int size;
+  private final int half;
+  /** cos and sin of 2 pi k / size for k = 0 .. size / 2 */
+  private final double[] cos;
+
+  private final double[] sin;
+  private final int[] reversed;
+  private final double[] re;
+  private final double[] im;
+
+  /**
+   * Creates a transform
+   *
+   * @param size number of real samples, a power of two of at least 4
+   */
+  RealFft(int size) {
+    if (size < 4 || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("Size must be a power of two of at least 4: " + size);
+    }
+    this.size = size;
+    half = size / 2;
+    cos = new double[half + 1];
+    sin = new double[half + 1];
+    for (int k = 0; k <= half; k++) {
+      cos[k] = Math.cos(2 * Math.PI * k / size);
+      sin[k] = Math.sin(2 * Math.PI * k / size);
+    }
+    reversed = new int[half];
+    final int bits = Integer.numberOfTrailingZeros(half);
+    for (int index = 0; index < half; index++) {
+      reversed[index] = bits == 0 ? 0 : Integer.reverse(index) >>> (32 - bits);
+    }
+    re = new double[half];
+    im = new double[half];
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Computes the squared magnitudes of the spectrum of real input
+   *
+   * @param input size real samples
+   * @param power receives |X[k]|^2 for k = 0 .. size / 2
+   */
+  void powerSpectrum(double[] input, double[] power) {
+    for (int index = 0; index < half; index++) {
+      final int target = reversed[index];
+      re[target] = input[2 * index];
+      im[target] = input[2 * index + 1];
+    }
+    transform();
+
+    for (int k = 0; k <= half; k++) {
+      final int a = k == half ? 0 : k;
+      final int b = k == 0 ? 0 : half - k;
+      // even and odd samples' spectra from Z[k] and conj(Z[half - k])
+      final double evenRe = (re[a] + re[b]) / 2;
+      final double evenIm = (im[a] - im[b]) / 2;
+      final double oddRe = (im[a] + im[b]) / 2;
+      final double oddIm = -(re[a] - re[b]) / 2;
+      final double xRe = evenRe + cos[k] * oddRe + sin[k] * oddIm;
+      final double xIm = evenIm + cos[k] * oddIm - sin[k] * oddRe;
+      power[k] = xRe * xRe + xIm * xIm;
+    }
+  }
+
+  /** In place complex FFT of the bit reversed half size buffers */
+  private void transform() {
+    for (int length = 2; length <= half; length <<= 1) {
+      final int middle = length / 2;
+      // twiddles of the half size transform are every other entry of the tables
+      final int step = 2 * half / length;
+      for (int start = 0; start < half; start += length) {
+        for (int offset = 0; offset < middle; offset++) {
+          final double wRe = cos[offset * step];
+          final double wIm = -sin[offset * step];
+          final int a = start + offset;
+          final int b = a + middle;
+          final double tRe = re[b] * wRe - im[b] * wIm;
+          final double tIm = re[b] * wIm + im[b] * wRe;
+          re[b] = re[a] - tRe;
+          im[b] = im[a] - tIm;
+          re[a] += tRe;
+          im[a] += tIm;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,287 @@
+package com.mentalab;
+
+import android.util.Log;
+import com.mentalab.exception.InvalidDataException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Feeds a recorded raw frame file back through the decoder
+ *
+ * <p>Frames are decoded exactly like a live device stream, into the outputs of a {@link
+ * DeviceSession}: its sample store, sample block queue and topic and its recordings. The source is
+ * a {@link FrameJournal} or any other file of concatenated raw frames. Replay is paced by the frame
+ * timestamps in real time, N times faster or not at all:
+ *
+ * <pre>{@code
+ * ReplayEngine replay = new ReplayEngine(journalFile).setSpeed(0);
+ * replay.seek(60 * 10000); // start one minute into the session
+ * replay.run();
+ * }</pre>
+ */
+public final class ReplayEngine implements Closeable {
+
+  private static final String TAG = "Explore";
+  private static final int REPLAY_BUFFER_SIZE = 64 * 1024;
+  private static final long NO_SEEK = -1;
+
+  private final File file;
+  private final DeviceSession session;
+  private final RandomAccessFile input;
+  private final FrameIndex index;
+  private volatile double speed = 1;
+  private volatile long pendingSeek = NO_SEEK;
+  private volatile Thread thread;
+  private volatile Exception failure;
+
+  /**
+   * Opens a recording
+   *
+   * <p>When the recording has a {@link FrameIndex} it is used for seeking, otherwise seeking scans
+   * the frame headers from the start of the file.
+   *
+   * @param file raw frame file
+   * @throws IOException when the file can not be opened
+   */
+  public ReplayEngine(File file) throws IOException {
+    this(file, MentalabCodec.getDefaultSession());
+  }
+
+  /**
+   * Opens a recording that is replayed into the outputs of a session
+   *
+   * @param file raw frame file
+   * @param session session receiving the decoded data, e.g. one per recorded device
+   * @throws IOException when the file can not be opened
+   */
+  public ReplayEngine(File file, DeviceSession session) throws IOException {
+    this.file = file;
+    this.session = session;
+    input = new RandomAccessFile(file, "r");
+    index = FrameJournal.indexFile(file).exists() ? FrameIndex.open(file) : null;
+  }
+
+  /** Pacing relative to real time: 1 for real time, N for N times faster, 0 for no pacing */
+  public ReplayEngine setSpeed(double speed) {
+    this.speed = speed;
+    return this;
+  }
+
+  /**
+   * Continues the replay at the first frame at or after a device time, also while replaying
+   *
+   * @param timestamp device timestamp in units of 100us
+   */
+  public void seek(long timestamp) {
+    pendingSeek = timestamp;
+  }
+
+  /**
+   * Replays on a new thread until the end of the recording or {@link #stop()}
+   *
+   * @throws IllegalStateException when a replay is running
+   */
+  public synchronized void start() {
+    if (thread != null) {
+      throw new IllegalStateException("Replay of " + file + " is running");
+    }
+    failure = null;
+    thread =
+        new Thread("Explore-replay") {
+          @Override
+          public void run() {
+            try {
+              ReplayEngine.this.run();
+            } catch (InterruptedIOException exception) {
+              Log.d(TAG, "Replay stopped");
+            } catch (IOException | InvalidDataException | RuntimeException exception) {
+              Log.e(TAG, "Replay of " + file + " failed: " + exception);
+              failure = exception;
+            } finally {
+              synchronized (ReplayEngine.this) {
+                thread = null;
+              }
+            }
+          }
+        };
+    thread.start();
+  }
+
+  /** Whether a replay started with {@link #start()} is running */
+  public boolean isRunning() {
+    return thread != null;
+  }
+
+  /**
+   * Returns what ended the last replay started with {@link #start()}
+   *
+   * @return IOException, InvalidDataException or RuntimeException, null while running and when the
+   *     replay reached the end of the recording or was stopped
+   */
+  public Exception getFailure() {
+    return failure;
+  }
+
+  /** Stops a replay started with {@link #start()} */
+  public void stop() {
+    final Thread running = thread;
+    if (running != null) {
+      running.interrupt();
+    }
+  }
+
+  /**
+   * Replays on the calling thread until the end of the recording
+   *
+   * @return number of frames replayed
+   * @throws InterruptedIOException when the thread is interrupted while pacing
+   * @throws IOException when the recording can not be read
+   * @throws InvalidDataException when a frame header is malformed
+   */
+  public long run() throws IOException, InvalidDataException {
+    final FrameDecoder decoder = new FrameDecoder(session);
+    final Pacer pacer = new Pacer(decoder);
+    final InputStream stream = new RecordingStream();
+    // host times are estimated from the replay, not from the original recording
+    session.getClockSync().reset();
+    while (true) {
+      final long seek = pendingSeek;
+      if (seek != NO_SEEK) {
+        pendingSeek = NO_SEEK;
+        input.seek(offsetOf(seek));
+        pacer.restart();
+        session.getClockSync().reset();
+      }
+      // a new parser after each seek drops the bytes buffered from the old position
+      final FrameParser parser = new FrameParser(stream, pacer, REPLAY_BUFFER_SIZE);
+      while (pendingSeek == NO_SEEK) {
+        final int read = parser.readFrames();
+        decoder.flushBlocks();
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException("Replay interrupted");
+        }
+        if (read < 0) {
+          return pacer.frames;
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes the recording, stops a running replay and waits for it first so the replay does not fail
+   * on the closed file
+   */
+  @Override
+  public void close() throws IOException {
+    final Thread running = thread;
+    stop();
+    if (running != null && running != Thread.currentThread()) {
+      try {
+        running.join();
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    input.close();
+  }
+
+  /** Journal offset of the first frame at or after a device time */
+  private long offsetOf(long timestamp) throws IOException {
+    if (index != null) {
+      final int frame = index.search(timestamp);
+      return frame < index.size() ? index.offset(frame) : input.length();
+    }
+    final byte[] header = new byte[FrameParser.HEADER_LENGTH];
+    long position = 0;
+    while (position + header.length <= input.length()) {
+      input.seek(position);
+      input.readFully(header);
+      final long frameTimestamp =
+          ((header[4] & 0xFF)
+                  | (header[5] & 0xFF) << 8
+                  | (header[6] & 0xFF) << 16
+                  | (header[7] & 0xFF) << 24)
+              & 0xFFFFFFFFL;
+      if (frameTimestamp >= timestamp) {
+        return position;
+      }
+      position += 4 + ((header[2] & 0xFF) | (header[3] & 0xFF) << 8);
+    }
+    return input.length();
+  }
+
+  /**
+   * Reads the recording from the current file position; unlike a channel stream it is not closed
+   * when a paced replay is interrupted
+   */
+  private final class RecordingStream extends InputStream {
+    @Override
+    public int read() throws IOException {
+      return input.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      return input.read(buffer, offset, length);
+    }
+  }
+
+  /** Delays every frame until its device time, relative to the first frame, is due */
+  private final class Pacer implements FrameParser.FrameHandler {
+    private final FrameDecoder decoder;
+    private long startTicks;
+    private long startNanos = -1;
+    long frames = 0;
+
+    Pacer(FrameDecoder decoder) {
+      this.decoder = decoder;
+    }
+
+    void restart() {
+      startNanos = -1;
+    }
+
+    @Override
+    public void onFrame(int pid, int count, long timestamp, byte[] buffer, int offset, int length)
+        throws InvalidDataException {
+      if (pendingSeek != NO_SEEK) {
+        return; // the rest of the chunk is skipped, run() repositions after it
+      }
+      final double pace = speed;
+      if (pace > 0 && !pace(timestamp, pace)) {
+        return; // interrupted, run() stops after this chunk
+      }
+      decoder.onFrame(pid, count, timestamp, buffer, offset, length);
+      frames++;
+      if (pace > 0) {
+        // hand paced blocks out as they are due instead of once per chunk
+        decoder.flushBlocks();
+      }
+    }
+
+    /** Waits until a frame is due, false when the thread is interrupted */
+    private boolean pace(long timestamp, double pace) {
+      if (startNanos < 0) {
+        startNanos = System.nanoTime();
+        startTicks = timestamp;
+      }
+      // signed difference of the 32 bit device times, frames may be slightly out of order
+      final int ticks = (int) (timestamp - startTicks);
+      final long due = startNanos + (long) (ticks * (1e9 / FrameParser.TICKS_PER_SECOND) / pace);
+      long wait;
+      while ((wait = due - System.nanoTime()) > 0) {
+        try {
+          Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        } catch (InterruptedException exception) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      return !Thread.currentThread().isInterrupted();
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package com.mentalab;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable block of samples decoded from one ExG, orientation or environment packet
+ *
+ * <p>Samples of all channels taken at the same time stay together: the values are interleaved
+ * sample by sample, so the value of channel c in sample s is at index {@code s * channelCount + c}.
+ * ExG values are in uV, orientation and environment values in the units of {@link
+ * MentalabCodec#decodedDataMap}.
+ */
+public final class SampleBlock {
+
+  /** Length of the serialized fields preceding the samples */
+  static final int HEADER_LENGTH = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+  private final int pid;
+  private final int channelMask;
+  private final long deviceTimestamp;
+  private final long hostTimestamp;
+  private final int channelCount;
+  private final int sampleCount;
+  private final float[] samples;
+
+  SampleBlock(
+      int pid,
+      int channelMask,
+      long deviceTimestamp,
+      long hostTimestamp,
+      int channelCount,
+      int sampleCount,
+      float[] samples) {
+    this.pid = pid;
+    this.channelMask = channelMask;
+    this.deviceTimestamp = deviceTimestamp;
+    this.hostTimestamp = hostTimestamp;
+    this.channelCount = channelCount;
+    this.sampleCount = sampleCount;
+    this.samples = samples;
+  }
+
+  /** Packet id of the frame the block was decoded from */
+  public int getPid() {
+    return pid;
+  }
+
+  /**
+   * Channels the values belong to, bit n set when channel n + 1 is enabled. ExG blocks only hold
+   * the enabled channels, in channel order.
+   */
+  public int getChannelMask() {
+    return channelMask;
+  }
+
+  /**
+   * Channel a value of a sample belongs to, numbered from 0 within the source of the block
+   *
+   * @param channel index of the value within a sample, counted among the enabled channels
+   * @return position of the matching set bit of the channel mask, e.g. 1 for Channel_2
+   */
+  int getChannelId(int channel) {
+    int mask = channelMask;
+    for (int index = 0; index < channel; index++) {
+      mask &= mask - 1;
+    }
+    return mask == 0 ? channel : Integer.numberOfTrailingZeros(mask);
+  }
+
+  /** Device timestamp of the first sample in units of 100us */
+  public long getDeviceTimestamp() {
+    return deviceTimestamp;
+  }
+
+  /**
+   * Host time of the first sample estimated by the {@link ClockSync} of the session, in the time
+   * base of {@link System#nanoTime()}
+   */
+  public long getHostTimestamp() {
+    return hostTimestamp;
+  }
+
+  public int getChannelCount() {
+    return channelCount;
+  }
+
+  public int getSampleCount() {
+    return sampleCount;
+  }
+
+  /** Value of a channel in a sample */
+  public float getSample(int sampleIndex, int channel) {
+    return samples[sampleIndex * channelCount + channel];
+  }
+
+  /**
+   * Copies all samples of one channel into dst starting at offset
+   *
+   * @return number of samples copied
+   */
+  public int copyChannel(int channel, float[] dst, int offset) {
+    for (int index = 0; index < sampleCount; index++) {
+      dst[offset + index] = samples[index * channelCount + channel];
+    }
+    return sampleCount;
+  }
+
+  /** Returns a copy of the interleaved samples */
+  public float[] toArray() {
+    return samples.clone();
+  }
+
+  /** Number of bytes {@link #writeTo(ByteBuffer)} writes */
+  int serializedLength() {
+    return HEADER_LENGTH + samples.length * 4;
+  }
+
+  /** Writes the block in the format read by {@link #readFrom(ByteBuffer)} */
+  void writeTo(ByteBuffer buffer) {
+    buffer.putInt(pid).putInt(channelMask).putLong(deviceTimestamp).putLong(hostTimestamp);
+    buffer.putInt(channelCount).putInt(sampleCount).putInt(samples.length);
+    buffer.asFloatBuffer().put(samples);
+    buffer.position(buffer.position() + samples.length * 4);
+  }
+
+  /** Reads a block written by {@link #writeTo(ByteBuffer)} */
+  static SampleBlock readFrom(ByteBuffer buffer) {
+    final int pid = buffer.getInt();
+    final int channelMask = buffer.getInt();
+    final long deviceTimestamp = buffer.getLong();
+    final long hostTimestamp = buffer.getLong();
+    final int channelCount = buffer.getInt();
+    final int sampleCount = buffer.getInt();
+    final float[] samples = new float[buffer.getInt()];
+    buffer.asFloatBuffer().get(samples);
+    buffer.position(buffer.position() + samples.length * 4);
+    return new SampleBlock(
+        pid, channelMask, deviceTimestamp, hostTimestamp, channelCount, sampleCount, samples);
+  }
+
+  @Override
+  public String toString() {
+    return "SampleBlock[pid="
+        + pid
+        + ", mask="
+        + Integer.toHexString(channelMask)
+        + ", timestamp="
+        + deviceTimestamp
+        + ", "
+        + channelCount
+        + "x"
+        + sampleCount
+        + "]";
+  }
+}
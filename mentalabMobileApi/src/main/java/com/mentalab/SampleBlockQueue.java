@@ -0,0 +1,273 @@
+package com.mentalab;
+
+import android.util.Log;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of decoded {@link SampleBlock}s for consumers that poll in bulk
+ *
+ * <p>Memory stays bounded whatever the consumer does, the {@link BufferPolicy} decides what happens
+ * to blocks arriving while the queue is full. Dropped and spilled blocks are counted, in blocks and
+ * in samples:
+ *
+ * <pre>{@code
+ * session.setSampleBlockQueue(SampleBlockQueue.spillToDisk(1024, new File(cacheDir, "blocks")));
+ * }</pre>
+ */
+public final class SampleBlockQueue implements Closeable {
+
+  private static final String TAG = "Explore";
+
+  /** Default number of blocks kept, several seconds of ExG data at 1000Hz */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /** What a full queue does with a new block */
+  public enum BufferPolicy {
+    /** Drops the oldest queued block, the decoding thread never waits */
+    DROP_OLDEST,
+    /** Drops the new block, the decoding thread never waits */
+    DROP_NEWEST,
+    /**
+     * Waits up to a timeout for the consumer to make room, then drops the new block. Decoding of
+     * the device, and of the other devices of its {@link DecoderPool} worker, stops meanwhile.
+     */
+    BLOCK,
+    /** Appends the block to a file, blocks are read back in order when the consumer catches up */
+    SPILL_TO_DISK
+  }
+
+  private final BufferPolicy policy;
+  private final int capacity;
+  private final BlockingQueue<SampleBlock> blocks;
+  private final long blockTimeoutNanos;
+  /** Overflow of SPILL_TO_DISK queues, guards itself */
+  private final BlockSpillFile spill;
+
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong droppedSamples = new AtomicLong();
+  private final AtomicLong spilled = new AtomicLong();
+  private final AtomicLong spilledSamples = new AtomicLong();
+
+  public SampleBlockQueue() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /** Creates a queue dropping the oldest block when full */
+  public SampleBlockQueue(int capacity) {
+    this(capacity, BufferPolicy.DROP_OLDEST, 0, null);
+  }
+
+  private SampleBlockQueue(
+      int capacity, BufferPolicy policy, long blockTimeoutNanos, BlockSpillFile spill) {
+    this.policy = policy;
+    this.capacity = capacity;
+    this.blockTimeoutNanos = blockTimeoutNanos;
+    this.spill = spill;
+    blocks = new ArrayBlockingQueue<>(capacity);
+  }
+
+  /** Creates a queue dropping the new block when full */
+  public static SampleBlockQueue dropNewest(int capacity) {
+    return new SampleBlockQueue(capacity, BufferPolicy.DROP_NEWEST, 0, null);
+  }
+
+  /**
+   * Creates a queue making the decoding thread wait for room
+   *
+   * @param timeout time to wait for room before the new block is dropped
+   */
+  public static SampleBlockQueue blocking(int capacity, long timeout, TimeUnit unit) {
+    return new SampleBlockQueue(capacity, BufferPolicy.BLOCK, unit.toNanos(timeout), null);
+  }
+
+  /**
+   * Creates a queue appending the blocks that do not fit in memory to a file
+   *
+   * @param file spill file, replaced when it exists and deleted by {@link #close()}
+   * @throws IOException when the file can not be created
+   */
+  public static SampleBlockQueue spillToDisk(int capacity, File file) throws IOException {
+    return new SampleBlockQueue(capacity, BufferPolicy.SPILL_TO_DISK, 0, new BlockSpillFile(file));
+  }
+
+  public BufferPolicy getPolicy() {
+    return policy;
+  }
+
+  /** Appends a block, applying the policy of the queue when it is full */
+  void offer(SampleBlock block) {
+    switch (policy) {
+      case DROP_OLDEST:
+        while (!blocks.offer(block)) {
+          final SampleBlock oldest = blocks.poll();
+          if (oldest != null) {
+            drop(oldest);
+          }
+        }
+        break;
+      case DROP_NEWEST:
+        if (!blocks.offer(block)) {
+          drop(block);
+        }
+        break;
+      case BLOCK:
+        try {
+          if (!blocks.offer(block, blockTimeoutNanos, TimeUnit.NANOSECONDS)) {
+            drop(block);
+          }
+        } catch (InterruptedException exception) {
+          Thread.currentThread().interrupt();
+          drop(block);
+        }
+        break;
+      case SPILL_TO_DISK:
+        synchronized (spill) {
+          // once blocks are spilled, new ones queue behind them to keep the order
+          if (spill.size() == 0 && blocks.offer(block)) {
+            return;
+          }
+          try {
+            spill.write(block);
+            spilled.incrementAndGet();
+            spilledSamples.addAndGet(block.getSampleCount());
+            MetricsRegistry.getInstance().increment(MetricsRegistry.Counter.BLOCKS_SPILLED);
+          } catch (IOException exception) {
+            Log.e(TAG, "Spilling sample block failed: " + exception.getMessage());
+            drop(block);
+          }
+        }
+        break;
+    }
+  }
+
+  private void drop(SampleBlock block) {
+    dropped.incrementAndGet();
+    droppedSamples.addAndGet(block.getSampleCount());
+    MetricsRegistry.getInstance().increment(MetricsRegistry.Counter.BLOCKS_DROPPED);
+  }
+
+  /** Moves spilled blocks back into memory while there is room */
+  private void pageIn() {
+    if (spill == null) {
+      return;
+    }
+    synchronized (spill) {
+      try {
+        while (spill.size() > 0 && blocks.remainingCapacity() > 0) {
+          blocks.offer(spill.read());
+        }
+      } catch (IOException exception) {
+        Log.e(TAG, "Reading spilled sample blocks failed: " + exception.getMessage());
+        dropped.addAndGet(spill.size());
+        droppedSamples.addAndGet(spill.sampleCount());
+        MetricsRegistry.getInstance().add(MetricsRegistry.Counter.BLOCKS_DROPPED, spill.size());
+        try {
+          spill.clear();
+        } catch (IOException ignored) {
+          // the next write fails as well and drops its block
+        }
+      }
+    }
+  }
+
+  /** Removes and returns the oldest block, or null when the queue is empty */
+  public SampleBlock poll() {
+    pageIn();
+    return blocks.poll();
+  }
+
+  /**
+   * Removes and returns the oldest block, waiting up to the given time for one to arrive
+   *
+   * @return SampleBlock, or null when the time elapsed
+   */
+  public SampleBlock poll(long timeout, TimeUnit unit) throws InterruptedException {
+    pageIn();
+    return blocks.poll(timeout, unit);
+  }
+
+  /**
+   * Moves up to maxBlocks available blocks, oldest first, into dst
+   *
+   * @return number of blocks moved
+   */
+  public int drainTo(Collection<? super SampleBlock> dst, int maxBlocks) {
+    int moved = 0;
+    int drained;
+    do {
+      pageIn();
+      drained = blocks.drainTo(dst, maxBlocks - moved);
+      moved += drained;
+    } while (spill != null && drained > 0 && moved < maxBlocks);
+    return moved;
+  }
+
+  /** Number of blocks currently queued, spilled blocks included */
+  public int size() {
+    if (spill == null) {
+      return blocks.size();
+    }
+    synchronized (spill) {
+      return blocks.size() + spill.size();
+    }
+  }
+
+  /** Maximum number of blocks queued in memory */
+  public int capacity() {
+    return capacity;
+  }
+
+  /** Total number of blocks dropped because the queue was full */
+  public long droppedCount() {
+    return dropped.get();
+  }
+
+  /** Total number of samples in the dropped blocks */
+  public long droppedSampleCount() {
+    return droppedSamples.get();
+  }
+
+  /** Total number of blocks written to the spill file */
+  public long spilledCount() {
+    return spilled.get();
+  }
+
+  /** Total number of samples in the spilled blocks */
+  public long spilledSampleCount() {
+    return spilledSamples.get();
+  }
+
+  /** Discards all queued blocks */
+  public void clear() {
+    if (spill == null) {
+      blocks.clear();
+      return;
+    }
+    synchronized (spill) {
+      blocks.clear();
+      try {
+        spill.clear();
+      } catch (IOException exception) {
+        Log.e(TAG, "Clearing spilled sample blocks failed: " + exception.getMessage());
+      }
+    }
+  }
+
+  /** Discards all queued blocks and deletes the spill file */
+  @Override
+  public void close() throws IOException {
+    blocks.clear();
+    if (spill != null) {
+      synchronized (spill) {
+        spill.close();
+      }
+    }
+  }
+}
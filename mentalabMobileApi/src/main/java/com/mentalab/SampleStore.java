@@ -0,0 +1,127 @@
+package com.mentalab;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-channel store of decoded samples backed by bounded {@link FloatRingBuffer}s
+ *
+ * <p>Channels are addressed by integer ids: ExG channels first, followed by orientation and
+ * environment channels. Buffers are created on the first sample of a channel, so only channels the
+ * device actually sends show up in {@link #asMap()}.
+ */
+public final class SampleStore {
+
+  /** Maximum number of ExG channels of an Explore device */
+  public static final int EXG_CHANNEL_COUNT = 32;
+  /** Id of the first orientation channel, Acc_X */
+  public static final int ORIENTATION_CHANNEL = EXG_CHANNEL_COUNT;
+  /** Id of the first environment channel, Temperature */
+  public static final int ENVIRONMENT_CHANNEL = ORIENTATION_CHANNEL + 9;
+  /** Total number of channel ids */
+  public static final int CHANNEL_COUNT = ENVIRONMENT_CHANNEL + 3;
+
+  /** Default number of samples kept per channel, about 32 seconds of ExG data at 1000Hz */
+  public static final int DEFAULT_CAPACITY = 1 << 15;
+
+  private static final String[] CHANNEL_NAMES = new String[CHANNEL_COUNT];
+
+  static {
+    for (int index = 0; index < EXG_CHANNEL_COUNT; index++) {
+      CHANNEL_NAMES[index] = "Channel_" + (index + 1);
+    }
+    final String[] orientation = {
+      "Acc_X", "Acc_Y", "Acc_Z", "Mag_X", "Mag_Y", "Mag_Z", "Gyro_X", "Gyro_Y", "Gyro_Z"
+    };
+    final String[] environment = {"Temperature ", "Light ", "Battery "};
+    System.arraycopy(orientation, 0, CHANNEL_NAMES, ORIENTATION_CHANNEL, orientation.length);
+    System.arraycopy(environment, 0, CHANNEL_NAMES, ENVIRONMENT_CHANNEL, environment.length);
+  }
+
+  private final int capacity;
+  private final FloatRingBuffer[] buffers = new FloatRingBuffer[CHANNEL_COUNT];
+  private final Map<String, Queue<Float>> queues = new ConcurrentHashMap<>();
+  private final Map<String, Queue<Float>> queuesView = Collections.unmodifiableMap(queues);
+
+  public SampleStore() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty store
+   *
+   * @param capacity number of samples kept per channel
+   */
+  public SampleStore(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /** Name of a channel id as used in {@link MentalabCodec#decodedDataMap} */
+  public static String channelName(int channelId) {
+    return CHANNEL_NAMES[channelId];
+  }
+
+  /** Returns the buffer of a channel or null when the device has not sent it yet */
+  public FloatRingBuffer channel(int channelId) {
+    return buffers[channelId];
+  }
+
+  /**
+   * Moves available samples of a channel, oldest first, into dst
+   *
+   * @return number of samples copied
+   */
+  public int drainTo(int channelId, float[] dst) {
+    final FloatRingBuffer buffer = buffers[channelId];
+    return buffer == null ? 0 : buffer.drainTo(dst);
+  }
+
+  /** Read-only map of channel name to a queue view of its buffer */
+  public Map<String, Queue<Float>> asMap() {
+    return queuesView;
+  }
+
+  /** Appends one sample to a channel. Must only be called from the decoding thread. */
+  void write(int channelId, float sample) {
+    writer(channelId).write(sample);
+  }
+
+  /** Appends count strided samples to a channel. Must only be called from the decoding thread. */
+  void write(int channelId, float[] src, int offset, int stride, int count) {
+    writer(channelId).write(src, offset, stride, count);
+  }
+
+  /** Number of samples waiting in the fullest channel */
+  int maxDepth() {
+    int depth = 0;
+    for (FloatRingBuffer buffer : buffers) {
+      if (buffer != null) {
+        depth = Math.max(depth, buffer.size());
+      }
+    }
+    return depth;
+  }
+
+  /** Fill level of the fullest channel in percent, samples are dropped from 100 */
+  int maxFillPercent() {
+    int percent = 0;
+    for (FloatRingBuffer buffer : buffers) {
+      if (buffer != null) {
+        percent = Math.max(percent, (int) (buffer.size() * 100L / buffer.capacity()));
+      }
+    }
+    return percent;
+  }
+
+  private FloatRingBuffer writer(int channelId) {
+    FloatRingBuffer buffer = buffers[channelId];
+    if (buffer == null) {
+      buffer = new FloatRingBuffer(capacity);
+      buffers[channelId] = buffer;
+      queues.put(CHANNEL_NAMES[channelId], buffer.asQueue());
+    }
+    return buffer;
+  }
+}
@@ -0,0 +1,53 @@
+package com.mentalab;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Array of counters that many threads can increment without contending on one cache line
+ *
+ * <p>Every thread adds to one of a few stripes picked by its id, reading a counter sums all
+ * stripes. Stripes are padded to whole cache lines, so threads on different stripes never share a
+ * line.
+ */
+final class StripedCounter {
+
+  /** Longs per 64 byte cache line */
+  private static final int LINE = 8;
+
+  private static final int STRIPES =
+      Integer.highestOneBit(Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())))
+          * 2;
+
+  private final int size;
+  private final int stride;
+  private final AtomicLongArray cells;
+
+  /** Creates size counters starting at 0 */
+  StripedCounter(int size) {
+    this.size = size;
+    // a stripe spans whole cache lines plus one, the array start is not line aligned
+    stride = ((size + LINE - 1) / LINE + 1) * LINE;
+    cells = new AtomicLongArray(STRIPES * stride);
+  }
+
+  int size() {
+    return size;
+  }
+
+  void add(int index, long delta) {
+    final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    cells.addAndGet(stripe * stride + index, delta);
+  }
+
+  void increment(int index) {
+    add(index, 1);
+  }
+
+  long sum(int index) {
+    long sum = 0;
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      sum += cells.get(stripe * stride + index);
+    }
+    return sum;
+  }
+}
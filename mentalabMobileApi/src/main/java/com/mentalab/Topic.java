@@ -0,0 +1,33 @@
+package com.mentalab;
+
+/**
+ * Typed key of a {@link PuSubManager} topic
+ *
+ * <p>Topics are compared by identity, so declare each topic once as a constant and share it between
+ * publishers and subscribers.
+ *
+ * @param <T> type of the messages published on the topic
+ */
+public final class Topic<T> {
+
+  private final String name;
+  private final Class<T> messageType;
+
+  public Topic(String name, Class<T> messageType) {
+    this.name = name;
+    this.messageType = messageType;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Class<T> getMessageType() {
+    return messageType;
+  }
+
+  @Override
+  public String toString() {
+    return "Topic[" + name + ", " + messageType.getSimpleName() + "]";
+  }
+}
@@ -0,0 +1,28 @@
+package com.mentalab;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+
+/**
+ * Byte channel between the decoder and a device, a recording or a test server
+ *
+ * <p>The decoder reads device frames in bulk with {@link #read(ByteBuffer)} straight into the
+ * buffer it parses, and writes commands with {@link #write(ByteBuffer)}. A session polls {@link
+ * #isReadable()} so a worker of its {@link DecoderPool} never waits for a device. See {@link
+ * Transports} for the Bluetooth stream, file, pipe and TCP adapters.
+ */
+public interface Transport extends ByteChannel {
+
+  /**
+   * Whether the next read returns without waiting, because bytes arrived or the end of the stream
+   * was reached
+   */
+  boolean isReadable() throws IOException;
+
+  /**
+   * Whether commands can be written to the other end, false for recordings. Writing to a read-only
+   * transport throws {@link java.nio.channels.NonWritableChannelException}.
+   */
+  boolean isWritable();
+}
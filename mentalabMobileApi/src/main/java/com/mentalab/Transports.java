@@ -0,0 +1,424 @@
+package com.mentalab;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link Transport} adapters for the device streams, recordings and test servers
+ *
+ * <pre>{@code
+ * session.connect(Transports.of(socket.getInputStream(), socket.getOutputStream()));
+ * session.connect(Transports.open(new File(dir, "recording.bin")));
+ * session.connect(Transports.connect("127.0.0.1", 9000));
+ * }</pre>
+ */
+public final class Transports {
+
+  private Transports() {}
+
+  /**
+   * Adapts the streams of a Bluetooth socket or any other stream pair
+   *
+   * <p>A daemon thread reads the input ahead of the decoder with blocking reads, so streams that
+   * always report 0 {@link InputStream#available()} bytes, like pipes or wrapped streams, are
+   * decoded and their end is seen. The thread stops when the transport is closed.
+   *
+   * @param output stream commands are written to, null for a read-only transport
+   */
+  public static Transport of(InputStream input, OutputStream output) {
+    return new ReadAheadTransport(new StreamTransport(input, output));
+  }
+
+  /** Adapts a stream read by the calling thread, reads block until bytes arrive */
+  static Transport blocking(InputStream input) {
+    return new StreamTransport(input, null);
+  }
+
+  /** Opens a read-only transport on a recording, the end of the file ends the stream */
+  public static Transport open(File file) throws IOException {
+    return new ChannelTransport(new FileInputStream(file).getChannel(), null);
+  }
+
+  /**
+   * Adapts a pair of channels, e.g. the source and sink channels of two {@link
+   * java.nio.channels.Pipe}s for a loopback test
+   *
+   * <p>Selectable inputs such as pipes and sockets are switched to non-blocking mode and polled
+   * with a {@link Selector}. Other inputs are assumed to never block, like file channels.
+   *
+   * @param output channel commands are written to, null for a read-only transport
+   * @throws IOException when a selectable input can not be registered with a selector
+   */
+  public static Transport of(ReadableByteChannel input, WritableByteChannel output)
+      throws IOException {
+    return new ChannelTransport(input, output);
+  }
+
+  /** Adapts a connected TCP socket, commands are written to the same socket */
+  public static Transport of(SocketChannel channel) throws IOException {
+    channel.socket().setTcpNoDelay(true);
+    return new ChannelTransport(channel, channel);
+  }
+
+  /** Connects to a TCP server streaming device frames, e.g. a local test server */
+  public static Transport connect(String host, int port) throws IOException {
+    final SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+    try {
+      return of(channel);
+    } catch (IOException exception) {
+      channel.close();
+      throw exception;
+    }
+  }
+
+  /** Stream pair read and written by the calling thread */
+  private static final class StreamTransport implements Transport {
+    private final InputStream input;
+    private final OutputStream output;
+    private byte[] scratch = null;
+    private volatile boolean open = true;
+
+    StreamTransport(InputStream input, OutputStream output) {
+      this.input = input;
+      this.output = output;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      ensureOpen();
+      final int length = dst.remaining();
+      if (length == 0) {
+        return 0;
+      }
+      if (dst.hasArray()) {
+        final int read = input.read(dst.array(), dst.arrayOffset() + dst.position(), length);
+        if (read > 0) {
+          dst.position(dst.position() + read);
+        }
+        return read;
+      }
+      final byte[] bytes = scratch(length);
+      final int read = input.read(bytes, 0, length);
+      if (read > 0) {
+        dst.put(bytes, 0, read);
+      }
+      return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      ensureOpen();
+      if (output == null) {
+        throw new NonWritableChannelException();
+      }
+      final int length = src.remaining();
+      if (src.hasArray()) {
+        output.write(src.array(), src.arrayOffset() + src.position(), length);
+        src.position(src.position() + length);
+      } else {
+        final byte[] bytes = scratch(length);
+        src.get(bytes, 0, length);
+        output.write(bytes, 0, length);
+      }
+      output.flush();
+      return length;
+    }
+
+    private byte[] scratch(int length) {
+      if (scratch == null || scratch.length < length) {
+        scratch = new byte[length];
+      }
+      return scratch;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+      if (!open) {
+        throw new ClosedChannelException();
+      }
+    }
+
+    @Override
+    public boolean isReadable() throws IOException {
+      return input.available() > 0;
+    }
+
+    @Override
+    public boolean isWritable() {
+      return output != null;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+      open = false;
+      try {
+        input.close();
+      } finally {
+        if (output != null) {
+          output.close();
+        }
+      }
+    }
+  }
+
+  /** Stream pair whose input is read ahead by its own thread, so reads never wait */
+  private static final class ReadAheadTransport implements Transport {
+    /** Bytes buffered ahead of the decoder, about a second of a 32 channel device at 1000Hz */
+    private static final int CAPACITY = 128 * 1024;
+
+    private static final int CHUNK = 4096;
+
+    private final Transport stream;
+    private final byte[] ring = new byte[CAPACITY];
+    /** Guards the ring and the reader state */
+    private final Object lock = new Object();
+
+    private int head = 0;
+    private int count = 0;
+    private boolean ended = false;
+    private IOException failure = null;
+    private Thread reader = null;
+    private volatile boolean open = true;
+
+    ReadAheadTransport(Transport stream) {
+      this.stream = stream;
+    }
+
+    /** Starts the reader on first use, a transport that is never read owns no thread */
+    private void startReader() {
+      if (reader == null) {
+        reader = new Thread(this::readAhead, "Explore-reader");
+        reader.setDaemon(true);
+        reader.start();
+      }
+    }
+
+    private void readAhead() {
+      final ByteBuffer chunk = ByteBuffer.allocate(CHUNK);
+      try {
+        while (open) {
+          chunk.clear();
+          if (stream.read(chunk) < 0) {
+            break;
+          }
+          synchronized (lock) {
+            int offset = 0;
+            while (offset < chunk.position()) {
+              while (open && count == ring.length) {
+                lock.wait();
+              }
+              if (!open) {
+                return;
+              }
+              final int tail = (head + count) % ring.length;
+              final int length =
+                  Math.min(
+                      chunk.position() - offset, Math.min(ring.length - count, ring.length - tail));
+              System.arraycopy(chunk.array(), offset, ring, tail, length);
+              count += length;
+              offset += length;
+            }
+          }
+        }
+      } catch (IOException exception) {
+        synchronized (lock) {
+          failure = exception;
+        }
+      } catch (InterruptedException exception) {
+        // closed while waiting for room
+      } finally {
+        synchronized (lock) {
+          ended = true;
+        }
+      }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      if (!open) {
+        throw new ClosedChannelException();
+      }
+      synchronized (lock) {
+        startReader();
+        if (count == 0) {
+          if (failure != null) {
+            throw failure;
+          }
+          return ended ? -1 : 0;
+        }
+        int moved = 0;
+        while (count > 0 && dst.hasRemaining()) {
+          final int length = Math.min(dst.remaining(), Math.min(count, ring.length - head));
+          dst.put(ring, head, length);
+          head = (head + length) % ring.length;
+          count -= length;
+          moved += length;
+        }
+        lock.notifyAll();
+        return moved;
+      }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      return stream.write(src);
+    }
+
+    @Override
+    public boolean isReadable() {
+      synchronized (lock) {
+        startReader();
+        return count > 0 || ended;
+      }
+    }
+
+    @Override
+    public boolean isWritable() {
+      return stream.isWritable();
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+      open = false;
+      final Thread running;
+      synchronized (lock) {
+        lock.notifyAll();
+        running = reader;
+      }
+      // closing the stream unblocks a reader waiting for a socket
+      stream.close();
+      if (running != null) {
+        running.interrupt();
+      }
+    }
+  }
+
+  /** Files, pipes and sockets */
+  private static final class ChannelTransport implements Transport {
+    /** Longest wait for room in the output before the write is retried */
+    private static final long WRITE_WAIT_MILLIS = 100;
+
+    private final ReadableByteChannel input;
+    private final WritableByteChannel output;
+    /** Polls selectable inputs, null for inputs that never block */
+    private final Selector selector;
+    /** Waits for room in non-blocking outputs, null for outputs that block */
+    private final Selector writeSelector;
+
+    ChannelTransport(ReadableByteChannel input, WritableByteChannel output) throws IOException {
+      this.input = input;
+      this.output = output;
+      selector = input instanceof SelectableChannel ? Selector.open() : null;
+      Selector writeSelector = null;
+      try {
+        if (selector != null) {
+          final SelectableChannel selectable = (SelectableChannel) input;
+          selectable.configureBlocking(false);
+          selectable.register(selector, SelectionKey.OP_READ);
+        }
+        // a socket shared with the input was just switched to non-blocking mode
+        if (output instanceof SelectableChannel && !((SelectableChannel) output).isBlocking()) {
+          writeSelector = Selector.open();
+          ((SelectableChannel) output).register(writeSelector, SelectionKey.OP_WRITE);
+        }
+      } catch (IOException exception) {
+        if (selector != null) {
+          selector.close();
+        }
+        if (writeSelector != null) {
+          writeSelector.close();
+        }
+        throw exception;
+      }
+      this.writeSelector = writeSelector;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return input.read(dst);
+    }
+
+    /**
+     * Writes all bytes, a non-blocking socket is selected until it has room again so the writer
+     * sleeps instead of spinning
+     */
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+      if (output == null) {
+        throw new NonWritableChannelException();
+      }
+      final int length = src.remaining();
+      while (src.hasRemaining()) {
+        if (output.write(src) == 0 && writeSelector != null) {
+          try {
+            writeSelector.selectedKeys().clear();
+            writeSelector.select(WRITE_WAIT_MILLIS);
+          } catch (ClosedSelectorException exception) {
+            throw new ClosedChannelException();
+          }
+        }
+      }
+      return length;
+    }
+
+    @Override
+    public boolean isReadable() throws IOException {
+      if (selector == null) {
+        return input.isOpen();
+      }
+      // keys stay selected until cleared, selectNow() only counts newly ready keys
+      selector.selectedKeys().clear();
+      return selector.selectNow() > 0;
+    }
+
+    @Override
+    public boolean isWritable() {
+      return output != null;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return input.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        input.close();
+        if (output != null && output != input) {
+          output.close();
+        }
+      } finally {
+        if (selector != null) {
+          selector.close();
+        }
+        if (writeSelector != null) {
+          writeSelector.close();
+        }
+      }
+    }
+  }
+}
@@ -2,5 +2,7 @@ package com.mentalab.exception;
 
 // changed access modifier public to private
 public class MentalabException extends Exception {
-  public MentalabException(String errorMessage, Throwable err) {}
+  public MentalabException(String errorMessage, Throwable err) {
+    super(errorMessage, err);
+  }
 }
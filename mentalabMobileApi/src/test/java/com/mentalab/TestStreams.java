@@ -0,0 +1,45 @@
+package com.mentalab;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/** Simulated device streams and recordings shared by the tests */
+final class TestStreams {
+
+  private TestStreams() {}
+
+  /** Every byte of a simulated stream, which must have a duration */
+  static byte[] simulatedBytes(ExploreSimulator simulator) throws IOException {
+    final InputStream stream = simulator.openStream();
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] chunk = new byte[4096];
+    int read;
+    while ((read = stream.read(chunk)) >= 0) {
+      bytes.write(chunk, 0, read);
+    }
+    return bytes.toByteArray();
+  }
+
+  /** Bytes of an 8 channel device at 250Hz, ExG frames of 16 rows */
+  static byte[] simulatedBytes(double seconds) throws IOException {
+    return simulatedBytes(new ExploreSimulator(8, 250).setDurationSeconds(seconds));
+  }
+
+  static byte[] readFile(File file) throws IOException {
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      final byte[] bytes = new byte[(int) input.length()];
+      input.readFully(bytes);
+      return bytes;
+    }
+  }
+
+  static void writeFile(File file, byte[] bytes) throws IOException {
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class UnitTestBandPowerEngine {
+
+  /** Blocks of 16 rows of a 20uV sine per channel at the given frequencies plus a DC offset */
+  private static SampleBlock[] sines(int samplingRate, int rows, double... frequencies) {
+    final int channels = frequencies.length;
+    final SampleBlock[] blocks = new SampleBlock[rows / 16];
+    for (int index = 0; index < blocks.length; index++) {
+      final float[] samples = new float[16 * channels];
+      for (int row = 0; row < 16; row++) {
+        final double time = (index * 16 + row) / (double) samplingRate;
+        for (int channel = 0; channel < channels; channel++) {
+          samples[row * channels + channel] =
+              (float) (500 + 20 * Math.sin(2 * Math.PI * frequencies[channel] * time));
+        }
+      }
+      blocks[index] = new SampleBlock(146, 0xFF, index * 640L, -1, channels, 16, samples);
+    }
+    return blocks;
+  }
+
+  @Test
+  public void fftMatchesTheDiscreteFourierTransform() {
+    final int size = 64;
+    final double[] input = new double[size];
+    final Random random = new Random(3);
+    for (int index = 0; index < size; index++) {
+      input[index] = random.nextGaussian();
+    }
+    final double[] power = new double[size / 2 + 1];
+    new RealFft(size).powerSpectrum(input.clone(), power);
+    for (int k = 0; k <= size / 2; k++) {
+      double re = 0;
+      double im = 0;
+      for (int n = 0; n < size; n++) {
+        re += input[n] * Math.cos(2 * Math.PI * k * n / size);
+        im -= input[n] * Math.sin(2 * Math.PI * k * n / size);
+      }
+      assertEquals(re * re + im * im, power[k], 1e-9);
+    }
+  }
+
+  @Test
+  public void sinesShowUpInTheirBands() {
+    final BandPowerEngine engine = new BandPowerEngine(250, 256, 50);
+    engine.onMessage(sines(250, 512, 10, 20));
+
+    // a sine of amplitude 20 has a mean squared amplitude of 200
+    assertEquals(200, engine.getPower(0, BandPowers.Band.ALPHA), 10);
+    assertEquals(200, engine.getPower(1, BandPowers.Band.BETA), 10);
+    assertTrue(engine.getPower(0, BandPowers.Band.DELTA) < 1);
+    assertTrue(engine.getPower(0, BandPowers.Band.BETA) < 1);
+    assertTrue(engine.getPower(1, BandPowers.Band.ALPHA) < 1);
+  }
+
+  @Test
+  public void publishesEveryHopOnceTheWindowIsFull() {
+    final Topic<BandPowers> topic = new Topic<>("TestBandPowers", BandPowers.class);
+    final BandPowerEngine engine = new BandPowerEngine(topic, 250, 256, 32);
+    final List<BandPowers> published = new ArrayList<>();
+    final PuSubManager.Subscription subscription =
+        PuSubManager.getInstance().subscribe(topic, published::add);
+    try {
+      engine.onMessage(sines(250, 512, 10));
+    } finally {
+      subscription.unsubscribe();
+    }
+    // windows end at samples 256, 288 ... 512
+    assertEquals(9, published.size());
+    assertEquals(9, engine.getUpdateCount());
+    assertEquals(255 * 40, published.get(0).getDeviceTimestamp());
+    assertEquals(1, published.get(8).getRelativePower(0, BandPowers.Band.ALPHA), 0.05);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void windowMustBeAPowerOfTwo() {
+    new BandPowerEngine(250, 250, 25);
+  }
+}
@@ -0,0 +1,65 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UnitTestBdfWriter {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+  private static String field(byte[] bytes, int offset, int length) {
+    return new String(bytes, offset, length, LATIN1).trim();
+  }
+
+  @Test
+  public void writesRecordsOfRawCounts() throws Exception {
+    final byte[] stream =
+        TestStreams.simulatedBytes(
+            new ExploreSimulator(8, 250).setDurationSeconds(3.1).setMarkerIntervalSeconds(1.5));
+    final File file = folder.newFile("session.bdf");
+
+    MentalabCodec.startBdfRecording(file, 250);
+    try {
+      final FrameParser parser =
+          new FrameParser(
+              new ByteArrayInputStream(stream),
+              new FrameDecoder(MentalabCodec.getDefaultSession()));
+      while (parser.readFrames() >= 0) {}
+    } finally {
+      MentalabCodec.stopBdfRecording();
+    }
+
+    final byte[] bdf = TestStreams.readFile(file);
+    final int signals = 8 + 9 + 1;
+    final int headerLength = 256 * (signals + 1);
+    final int recordLength = (8 * 250 + 9 * BdfWriter.ORIENTATION_SAMPLES) * 3 + 120;
+    assertEquals((byte) 0xFF, bdf[0]);
+    assertEquals("BIOSEMI", field(bdf, 1, 7));
+    assertEquals(String.valueOf(headerLength), field(bdf, 184, 8));
+    assertEquals("BDF+D", field(bdf, 192, 44));
+    assertEquals("3", field(bdf, 236, 8));
+    assertEquals(String.valueOf(signals), field(bdf, 252, 4));
+    assertEquals("Channel_1", field(bdf, 256, 16));
+    assertEquals("BDF Annotations", field(bdf, 256 + 17 * 16, 16));
+    assertEquals(headerLength + 3 * recordLength, bdf.length);
+
+    // the first sample of Channel_1 is a byte copy of the first ExG frame, after the info frame
+    final int exg = 16 + 8;
+    assertEquals(stream[exg + 3], bdf[headerLength]);
+    assertEquals(stream[exg + 4], bdf[headerLength + 1]);
+    assertEquals(stream[exg + 5], bdf[headerLength + 2]);
+
+    final int annotations = headerLength + recordLength + recordLength - 120;
+    final String tals = new String(bdf, annotations, 120, LATIN1);
+    assertTrue(tals.startsWith("+1\u0014\u0014\u0000+1.5\u0014Marker 1\u0014\u0000"));
+  }
+}
@@ -0,0 +1,93 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mentalab.exception.InvalidDataException;
+import java.util.Random;
+import org.junit.Test;
+
+public class UnitTestClockSync {
+
+  private static final long NANOS_PER_TICK = 100_000;
+
+  @Test
+  public void tracksOffsetAndDrift() {
+    final ClockSync clock = new ClockSync();
+    final Random random = new Random(1);
+    final long base = 5_000_000_000L;
+    for (int index = 0; index < 200; index++) {
+      final long ticks = 1000 + index * 10_000L;
+      // device runs 40ppm slow, frames arrive 0 to 2ms late
+      final long host = base + (long) (ticks * NANOS_PER_TICK * 1.00004);
+      clock.update(ticks, host + random.nextInt(2_000_000));
+    }
+    assertEquals(40, clock.getDriftPpm(), 5);
+    final long ticks = 1000 + 210 * 10_000L;
+    final long expected = base + (long) (ticks * NANOS_PER_TICK * 1.00004);
+    assertEquals(expected + 1_000_000, clock.toHostNanos(ticks), 1_000_000);
+  }
+
+  @Test
+  public void singleObservationAnchorsNominalRate() {
+    final ClockSync clock = new ClockSync();
+    assertEquals(-1, clock.toHostNanos(0));
+    clock.update(500, 1_000_000_000L);
+    assertEquals(1_100_000_000L, clock.toHostNanos(1500));
+    assertEquals(0, clock.getDriftPpm(), 0);
+  }
+
+  @Test
+  public void unwrapsTheDeviceCounter() {
+    final ClockSync clock = new ClockSync();
+    final long start = (1L << 32) - 50_000;
+    for (int index = 0; index < 10; index++) {
+      final long ticks = (start + index * 10_000L) & 0xFFFFFFFFL;
+      clock.update(ticks, index * 10_000L * NANOS_PER_TICK);
+    }
+    // 100000 ticks after the start, past the wrap-around
+    assertEquals(100_000 * NANOS_PER_TICK, clock.toHostNanos(50_000), 1000);
+    assertEquals(95_000 * NANOS_PER_TICK, clock.toHostNanos(start + 95_000 - (1L << 32)), 1000);
+  }
+
+  @Test
+  public void resetForgetsObservations() {
+    final ClockSync clock = new ClockSync();
+    clock.update(0, 0);
+    clock.reset();
+    assertEquals(0, clock.getUpdateCount());
+    clock.update(0, 7_000);
+    assertEquals(7_000, clock.toHostNanos(0));
+  }
+
+  @Test
+  public void decoderStampsBlocksWithHostTime() throws InvalidDataException {
+    final DeviceSession session = new DeviceSession("Explore_clock");
+    final SampleBlockQueue queue = session.getSampleBlockQueue();
+    final FrameDecoder decoder = new FrameDecoder(session);
+
+    final byte[] timestamp = {1, 2, 3, 4, 5, 6, 7, (byte) 0x80};
+    final long before = System.nanoTime();
+    decoder.onFrame(Packet.PacketId.TIMESTAMP.getNumVal(), 0, 1000, timestamp, 0, 8);
+    final byte[] orientation = new byte[18];
+    decoder.onFrame(Packet.PacketId.ORIENTATION.getNumVal(), 1, 11_000, orientation, 0, 18);
+    decoder.flushBlocks();
+
+    assertEquals(1, session.getClockSync().getUpdateCount());
+    final long offset = queue.poll().getHostTimestamp() - before;
+    // one second of device time after the timestamp packet
+    assertTrue(offset >= 1_000_000_000L && offset < 1_100_000_000L);
+  }
+
+  @Test
+  public void timestampPacketDecodesHostTimestamp() throws InvalidDataException {
+    final TimeStampPacket packet = new TimeStampPacket();
+    packet.convertData(new byte[] {0, 1, 2, 3, 4, 5, 6, 7, (byte) 0xFF}, 1, 8);
+    assertEquals(0xFF07060504030201L, packet.hostTimestamp);
+  }
+
+  @Test(expected = InvalidDataException.class)
+  public void shortTimestampPacketIsRejected() throws InvalidDataException {
+    new TimeStampPacket().convertData(new byte[4], 0, 4);
+  }
+}
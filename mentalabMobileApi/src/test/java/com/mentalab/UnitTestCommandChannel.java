@@ -0,0 +1,141 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.mentalab.exception.CommandFailedException;
+import com.mentalab.exception.InvalidCommandException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class UnitTestCommandChannel {
+
+  private static byte[] ack(int pid, int opcode, long hostTimestamp, int status) {
+    final byte[] data = new byte[pid == 193 ? 6 : 5];
+    data[0] = (byte) opcode;
+    for (int index = 0; index < 4; index++) {
+      data[1 + index] = (byte) (hostTimestamp >> (8 * index));
+    }
+    if (pid == 193) {
+      data[5] = (byte) status;
+    }
+    return UnitTestFrameParser.frame(pid, 0, 0, data);
+  }
+
+  /** Decodes device frames through a decoder routing acknowledgements to the channel */
+  private static void receive(CommandChannel channel, byte[]... frames) throws Exception {
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (byte[] frame : frames) {
+      stream.write(frame);
+    }
+    final FrameParser parser =
+        new FrameParser(
+            new ByteArrayInputStream(stream.toByteArray()),
+            new FrameDecoder(new DeviceSession("Explore_Commands"), channel));
+    while (parser.readFrames() >= 0) {}
+  }
+
+  @Test
+  public void commandsAreEncodedAsFrames() throws InvalidCommandException {
+    final byte[] frame = MentalabCodec.encodeCommand(DeviceCommand.setSamplingRate(500), 0x1234);
+    assertArrayEquals(
+        new byte[] {
+          (byte) 0xA0,
+          0,
+          10,
+          0,
+          0x34,
+          0x12,
+          0,
+          0,
+          (byte) 0xA1,
+          5,
+          (byte) 0xAF,
+          (byte) 0xBE,
+          (byte) 0xAD,
+          (byte) 0xDE
+        },
+        frame);
+    assertEquals(6, DeviceCommand.setSamplingRate(250).getParameter());
+    assertEquals(4, DeviceCommand.setSamplingRate(1000).getParameter());
+  }
+
+  @Test(expected = InvalidCommandException.class)
+  public void unsupportedSamplingRateIsRejected() throws InvalidCommandException {
+    DeviceCommand.setSamplingRate(100);
+  }
+
+  @Test
+  public void batchIsWrittenAtOnceAndMatchedWithAcknowledgements() throws Exception {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final CommandChannel channel = new CommandChannel(output);
+    final List<CommandFuture> futures =
+        channel.sendAll(
+            Arrays.asList(
+                DeviceCommand.setSamplingRate(1000),
+                DeviceCommand.setModuleEnabled(DeviceCommand.Module.ENVIRONMENT, false),
+                DeviceCommand.setChannelMask(0x0F)));
+    assertEquals(3 * DeviceCommand.FRAME_LENGTH, output.size());
+    assertEquals(3, channel.getPendingCount());
+    final long hostTimestamp = futures.get(0).hostTimestamp;
+
+    receive(
+        channel,
+        ack(192, 0xA1, hostTimestamp, 0),
+        ack(192, 0xA5, hostTimestamp, 0),
+        ack(193, 0xA1, hostTimestamp, 1),
+        ack(192, 0xA2, hostTimestamp, 0),
+        ack(193, 0xA2, hostTimestamp, 0));
+
+    futures.get(0).get(1, TimeUnit.SECONDS);
+    assertTrue(futures.get(1).isReceived());
+    assertFalse(futures.get(1).isDone());
+    try {
+      futures.get(2).get(1, TimeUnit.SECONDS);
+      fail("Rejected command succeeded");
+    } catch (ExecutionException exception) {
+      assertTrue(exception.getCause() instanceof CommandFailedException);
+    }
+    assertEquals(1, channel.getPendingCount());
+
+    receive(channel, ack(193, 0xA5, hostTimestamp, 1));
+    futures.get(1).get(1, TimeUnit.SECONDS);
+    assertEquals(0, channel.getPendingCount());
+  }
+
+  @Test
+  public void unansweredCommandsTimeOut() throws Exception {
+    final CommandChannel channel = new CommandChannel(new ByteArrayOutputStream());
+    final CommandFuture future =
+        channel.sendAll(Arrays.asList(DeviceCommand.softReset()), 20).get(0);
+    try {
+      future.get(2, TimeUnit.SECONDS);
+      fail("Unanswered command succeeded");
+    } catch (ExecutionException exception) {
+      assertTrue(exception.getMessage().startsWith("No acknowledgement"));
+    }
+    assertEquals(0, channel.getPendingCount());
+  }
+
+  @Test
+  public void closingFailsCommandsInFlight() throws Exception {
+    final CommandChannel channel = new CommandChannel(new ByteArrayOutputStream());
+    final CommandFuture future = channel.send(DeviceCommand.formatMemory());
+    channel.close();
+    assertTrue(future.isDone());
+    try {
+      future.get();
+      fail("Command succeeded after close");
+    } catch (ExecutionException exception) {
+      assertEquals("Connection closed", exception.getMessage());
+    }
+  }
+}
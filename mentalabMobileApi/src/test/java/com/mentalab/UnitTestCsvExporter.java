@@ -0,0 +1,87 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.junit.Test;
+
+public class UnitTestCsvExporter {
+
+  private static SampleBlock block(int pid, long timestamp, int channels, float... samples) {
+    return new SampleBlock(pid, 0xFF, timestamp, -1, channels, samples.length / channels, samples);
+  }
+
+  @Test
+  public void formatsRowsWithFixedPrecision() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final CsvExporter exporter =
+        new CsvExporter(out, CsvExporter.Source.EXG).setPrecision(3).setSamplingRate(250);
+    exporter.onMessage(
+        new SampleBlock[] {
+          block(146, 12345, 2, 1.5f, -0.0004f, 123456.789f, 0.0005f), block(13, 0, 9, new float[9]),
+        });
+    exporter.close();
+
+    assertEquals(
+        "TimeStamp,Channel_1,Channel_2\n1.2345,1.500,-0.000\n1.2385,123456.789,0.001\n",
+        out.toString("US-ASCII"));
+  }
+
+  @Test
+  public void exportsSelectedChannelsOfItsSource() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final CsvExporter exporter =
+        new CsvExporter(out, CsvExporter.Source.ENVIRONMENT).setChannels(2, 0).setPrecision(0);
+    exporter.onMessage(
+        new SampleBlock[] {block(146, 0, 1, 1f), block(19, 20000, 3, 25f, 488.4f, 87.6f)});
+    exporter.close();
+
+    assertEquals("TimeStamp,Battery,Temperature\n2.0000,88,25\n", out.toString("US-ASCII"));
+  }
+
+  @Test
+  public void labelsTheEnabledChannels() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final CsvExporter exporter = new CsvExporter(out, CsvExporter.Source.EXG).setPrecision(0);
+    // Channel_1 and Channel_3 disabled
+    exporter.write(new SampleBlock(146, 0b11111010, 0, -1, 2, 1, new float[] {2f, 4f}));
+    exporter.close();
+
+    assertEquals("TimeStamp,Channel_2,Channel_4\n0.0000,2,4\n", out.toString("US-ASCII"));
+  }
+
+  @Test
+  public void flushesFullBuffers() throws IOException {
+    final int[] writes = {0};
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final OutputStream out =
+        new OutputStream() {
+          @Override
+          public void write(int b) {
+            bytes.write(b);
+          }
+
+          @Override
+          public void write(byte[] buffer, int offset, int length) {
+            writes[0]++;
+            bytes.write(buffer, offset, length);
+          }
+        };
+    final CsvExporter exporter = new CsvExporter(out, CsvExporter.Source.EXG, 256);
+    final float[] samples = new float[8 * 33];
+    for (int index = 0; index < samples.length; index++) {
+      samples[index] = index;
+    }
+    exporter.write(block(144, 0, 8, samples));
+    exporter.close();
+
+    final String[] rows = bytes.toString("US-ASCII").split("\n");
+    assertEquals(34, rows.length);
+    assertEquals(
+        "0.0000,256.0000,257.0000,258.0000,259.0000,260.0000,261.0000,262.0000,263.0000", rows[33]);
+    assertTrue(writes[0] > 1);
+  }
+}
@@ -0,0 +1,158 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class UnitTestDeviceSession {
+
+  private final DecoderPool pool = new DecoderPool(1);
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  /** Waits until a session decoded the given number of samples of its first ExG channel */
+  private static void awaitSamples(DeviceSession session, int samples) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline) {
+      final FloatRingBuffer channel = session.getSampleStore().channel(0);
+      if (channel != null && channel.size() >= samples) {
+        return;
+      }
+      Thread.sleep(5);
+    }
+  }
+
+  @Test
+  public void sessionsKeepTheirOwnOutputs() throws Exception {
+    final DeviceSession eight = new DeviceSession("Explore_0008");
+    final DeviceSession four = new DeviceSession("Explore_0004");
+    final SampleBlockQueue fourBlocks = four.getSampleBlockQueue();
+
+    eight.connect(new ExploreSimulator(8, 250).setDurationSeconds(1).openStream(), null, pool);
+    four.connect(new ExploreSimulator(4, 500).setDurationSeconds(1).openStream(), null, pool);
+    // a second of samples, the last frame is complete
+    awaitSamples(eight, 16 * 16);
+    awaitSamples(four, 16 * 33);
+    eight.disconnect();
+    four.disconnect();
+
+    assertEquals(0xFF, eight.getChannelMask());
+    assertEquals(0x0F, four.getChannelMask());
+    assertNotNull(eight.getSampleStore().channel(7));
+    assertNull(four.getSampleStore().channel(7));
+    assertEquals(16 * 16, eight.getSampleStore().channel(0).size());
+    assertEquals(16 * 33, four.getSampleStore().channel(0).size());
+
+    final List<SampleBlock> blocks = new ArrayList<>();
+    fourBlocks.drainTo(blocks, 1000);
+    assertTrue(blocks.size() > 15);
+    for (SampleBlock block : blocks) {
+      assertTrue(block.getPid() != Packet.PacketId.EEG98.getNumVal());
+    }
+  }
+
+  @Test
+  public void blocksArePublishedOnTheSessionTopic() throws Exception {
+    final DeviceSession session = new DeviceSession("Explore_topic");
+    final List<SampleBlock[]> batches = new ArrayList<>();
+    final PuSubManager.Subscription subscription =
+        PuSubManager.getInstance().subscribe(session.getSampleBlockTopic(), batches::add);
+    try {
+      session.connect(new ExploreSimulator(8, 250).setDurationSeconds(1).openStream(), null, pool);
+      awaitSamples(session, 16 * 16);
+      session.disconnect();
+    } finally {
+      subscription.unsubscribe();
+    }
+    assertFalse(batches.isEmpty());
+    assertTrue(session.getFrameCount() > 0);
+  }
+
+  @Test
+  public void failingSubscriberDisconnectsTheSession() throws Exception {
+    final DeviceSession session = new DeviceSession("Explore_failing");
+    final PuSubManager.Subscription subscription =
+        PuSubManager.getInstance()
+            .subscribe(
+                session.getSampleBlockTopic(),
+                batch -> {
+                  throw new IllegalStateException("subscriber failed");
+                });
+    try {
+      session.connect(new ExploreSimulator(8, 250).setSpeed(1).openStream(), null, pool);
+      final long deadline = System.currentTimeMillis() + 5000;
+      while (session.isConnected() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertFalse(session.isConnected());
+    } finally {
+      subscription.unsubscribe();
+    }
+  }
+
+  @Test
+  public void reconnectingWhileASubscriberQueriesTheSession() throws Exception {
+    final DeviceSession session = new DeviceSession("Explore_reconnect");
+    final CountDownLatch decoding = new CountDownLatch(1);
+    final PuSubManager.Subscription subscription =
+        PuSubManager.getInstance()
+            .subscribe(
+                session.getSampleBlockTopic(),
+                batch -> {
+                  decoding.countDown();
+                  try {
+                    // the reconnect starts while the pump is in this subscriber
+                    Thread.sleep(100);
+                  } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                  }
+                  session.isConnected();
+                  session.getCommandChannel();
+                });
+    try {
+      session.connect(new ExploreSimulator(8, 250).setSpeed(1).openStream(), null, pool);
+      assertTrue(decoding.await(5, TimeUnit.SECONDS));
+      final Thread reconnecting =
+          new Thread(
+              () -> {
+                session.connect(new ExploreSimulator(8, 250).setSpeed(1).openStream(), null, pool);
+                session.disconnect();
+              });
+      reconnecting.setDaemon(true);
+      reconnecting.start();
+      reconnecting.join(5000);
+      assertFalse("deadlocked reconnecting", reconnecting.isAlive());
+    } finally {
+      subscription.unsubscribe();
+    }
+  }
+
+  @Test
+  public void disconnectStopsAPacedStream() throws Exception {
+    final DeviceSession session = new DeviceSession("Explore_paced");
+    final InputStream stream = new ExploreSimulator(8, 250).setSpeed(1).openStream();
+    session.connect(stream, null, pool);
+    Thread.sleep(200);
+    assertTrue(session.isConnected());
+    assertTrue(session.getFrameCount() > 0);
+
+    session.disconnect();
+    assertFalse(session.isConnected());
+    final long frames = session.getFrameCount();
+    Thread.sleep(100);
+    assertEquals(frames, session.getFrameCount());
+  }
+}
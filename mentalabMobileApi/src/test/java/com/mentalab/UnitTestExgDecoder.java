@@ -0,0 +1,162 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mentalab.exception.InvalidDataException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class UnitTestExgDecoder {
+
+  private static void putInt24(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) value;
+    bytes[offset + 1] = (byte) (value >> 8);
+    bytes[offset + 2] = (byte) (value >> 16);
+  }
+
+  @Test
+  public void int24IsSignExtended() {
+    final byte[] bytes = new byte[12];
+    putInt24(bytes, 0, -1);
+    putInt24(bytes, 3, 0x7FFFFF);
+    putInt24(bytes, 6, -0x800000);
+    putInt24(bytes, 9, 1234);
+
+    assertEquals(-1, DataPacket.readInt24(bytes, 0));
+    assertEquals(0x7FFFFF, DataPacket.readInt24(bytes, 3));
+    assertEquals(-0x800000, DataPacket.readInt24(bytes, 6));
+    assertEquals(1234, DataPacket.readInt24(bytes, 9));
+  }
+
+  @Test
+  public void eeg94RowsAreSplitIntoStatusAndChannels() throws InvalidDataException {
+    final int rows = 33;
+    final byte[] payload = new byte[2 + rows * 5 * 3];
+    for (int row = 0; row < rows; row++) {
+      putInt24(payload, 2 + row * 15, 0x10000 + row);
+      for (int channel = 0; channel < 4; channel++) {
+        putInt24(payload, 2 + row * 15 + 3 + channel * 3, (channel - 2) * 1000 * row);
+      }
+    }
+
+    final Eeg94 packet = new Eeg94();
+    packet.convertData(payload, 2, payload.length - 2);
+
+    assertEquals(rows, packet.getSampleCount());
+    for (int row = 0; row < rows; row++) {
+      assertEquals(0x10000 + row, packet.statusWords[row]);
+      for (int channel = 0; channel < 4; channel++) {
+        final double expected =
+            (channel - 2) * 1000 * row * 2.4 / (1e-6 * (Math.pow(2, 23) - 1) * 6);
+        assertEquals(expected, packet.getVoltageValues()[row * 4 + channel], 1e-3);
+      }
+    }
+  }
+
+  @Test
+  public void toInt32MatchesBulkDecoder() throws Exception {
+    final byte[] bytes = new byte[3 * 9 * 4];
+    for (int index = 0; index < bytes.length; index++) {
+      bytes[index] = (byte) (index * 37);
+    }
+    final double[] reference = DataPacket.toInt32(bytes, 0, bytes.length);
+    final int[] status = new int[4];
+    final float[] samples = new float[32];
+    DataPacket.decodeExg(bytes, 0, 4, 8, 1f, status, samples);
+
+    final float[] expected = new float[32];
+    for (int index = 0, out = 0; index < reference.length; index++) {
+      if (index % 9 != 0) {
+        expected[out++] = (float) reference[index];
+      }
+    }
+    assertArrayEquals(expected, samples, 0f);
+  }
+
+  @Test
+  public void maskedPacketDecodesOnlyEnabledChannels() throws Exception {
+    final byte[] bytes = new byte[3 * 9 * 4];
+    for (int index = 0; index < bytes.length; index++) {
+      bytes[index] = (byte) (index * 37);
+    }
+    final Eeg98 full = new Eeg98();
+    full.convertData(bytes, 0, bytes.length);
+    final Eeg98 masked = new Eeg98();
+    masked.setChannelMask(0x05);
+    masked.convertData(bytes, 0, bytes.length);
+
+    assertEquals(2, masked.getDataCount());
+    assertEquals(0x05, masked.getChannelMask());
+    assertEquals(2, masked.getChannelId(1));
+    for (int row = 0; row < 4; row++) {
+      assertEquals(full.statusWords[row], masked.statusWords[row]);
+      assertEquals(full.getVoltageValues()[row * 8], masked.getVoltageValues()[row * 2], 0f);
+      assertEquals(
+          full.getVoltageValues()[row * 8 + 2], masked.getVoltageValues()[row * 2 + 1], 0f);
+    }
+  }
+
+  /** Decodes the rows of a packet with status words and the same rows without them */
+  private static void assertRawVariantMatches(DataPacket status, DataPacket raw, int channels)
+      throws Exception {
+    final int rows = 5;
+    final byte[] bytes = new byte[rows * (channels + 1) * 3];
+    for (int index = 0; index < bytes.length; index++) {
+      bytes[index] = (byte) (index * 37 + 11);
+    }
+    final byte[] rawBytes = new byte[rows * channels * 3];
+    for (int row = 0; row < rows; row++) {
+      System.arraycopy(
+          bytes, row * (channels + 1) * 3 + 3, rawBytes, row * channels * 3, channels * 3);
+    }
+    status.convertData(bytes, 0, bytes.length);
+    raw.convertData(rawBytes, 0, rawBytes.length);
+
+    assertEquals(channels, raw.getDataCount());
+    assertEquals(rows, raw.getSampleCount());
+    assertArrayEquals(
+        Arrays.copyOf(status.getVoltageValues(), rows * channels),
+        Arrays.copyOf(raw.getVoltageValues(), rows * channels),
+        0f);
+  }
+
+  @Test
+  public void rawVariantsDecodeLikeStatusVariants() throws Exception {
+    assertRawVariantMatches(new Eeg94(), new Eeg94r(), 4);
+    assertRawVariantMatches(new Eeg98(), new Eeg98r(), 8);
+    assertRawVariantMatches(new Eeg99(), new Eeg99s(), 32);
+  }
+
+  @Test
+  public void allExgPacketIdsHaveDecoders() {
+    for (Packet.PacketId packetId :
+        new Packet.PacketId[] {
+          Packet.PacketId.EEG94, Packet.PacketId.EEG98, Packet.PacketId.EEG99,
+          Packet.PacketId.EEG99S, Packet.PacketId.EEG94R, Packet.PacketId.EEG98R
+        }) {
+      assertTrue(packetId.name(), packetId.createInstance() instanceof DataPacket);
+    }
+  }
+
+  @Test
+  public void simulated32ChannelStreamIsDecoded() throws Exception {
+    final DeviceSession session = new DeviceSession("Explore_0032");
+    final FrameDecoder decoder = new FrameDecoder(session);
+    final FrameParser parser =
+        new FrameParser(new ExploreSimulator(32, 250).setDurationSeconds(1).openStream(), decoder);
+    while (parser.readFrames() >= 0) {}
+
+    // a second of whole packets of 4 rows
+    final FloatRingBuffer channel = session.getSampleStore().channel(0);
+    assertEquals(63 * 4, channel.size());
+    // the 50uV sine of the simulator comes back through the ADS1299 scale
+    float max = Float.NEGATIVE_INFINITY;
+    for (float sample = channel.poll(); !Float.isNaN(sample); sample = channel.poll()) {
+      max = Math.max(max, sample);
+    }
+    assertEquals(50, max, 1);
+    assertEquals(63 * 4, session.getSampleStore().channel(31).size());
+  }
+}
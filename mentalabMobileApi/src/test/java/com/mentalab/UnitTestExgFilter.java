@@ -0,0 +1,111 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mentalab.exception.InvalidDataException;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class UnitTestExgFilter {
+
+  private static final int ROWS = 16;
+
+  /**
+   * Filters seconds of a sine on channel 0 and silence on channel 1 in packets of 16 rows
+   *
+   * @return peak amplitude of both channels during the last second
+   */
+  private static float[] peaks(ExgFilter filter, double frequency, int samplingRate, int seconds) {
+    final float[] packet = new float[ROWS * 2];
+    final float[] peak = new float[2];
+    long sample = 0;
+    for (int index = 0; index < seconds * samplingRate / ROWS; index++) {
+      for (int row = 0; row < ROWS; row++, sample++) {
+        packet[row * 2] = (float) (100 * Math.sin(2 * Math.PI * frequency * sample / samplingRate));
+        packet[row * 2 + 1] = 0;
+      }
+      filter.process(packet, 2, ROWS, samplingRate);
+      if (sample > (seconds - 1) * samplingRate) {
+        for (int row = 0; row < ROWS; row++) {
+          peak[0] = Math.max(peak[0], Math.abs(packet[row * 2]));
+          peak[1] = Math.max(peak[1], Math.abs(packet[row * 2 + 1]));
+        }
+      }
+    }
+    return peak;
+  }
+
+  @Test
+  public void notchRemovesMainsKeepsSignal() {
+    final ExgFilter filter = new ExgFilter().setNotch(50);
+    assertTrue(peaks(filter, 50, 250, 4)[0] < 5);
+    assertEquals(100, peaks(new ExgFilter().setNotch(50), 10, 250, 4)[0], 5);
+  }
+
+  @Test
+  public void bandpassAttenuatesOutsideTheBand() {
+    assertTrue(peaks(new ExgFilter().setBandpass(1, 40), 100, 250, 4)[0] < 25);
+    assertEquals(100, peaks(new ExgFilter().setBandpass(1, 40), 10, 250, 4)[0], 5);
+  }
+
+  @Test
+  public void highpassRemovesOffset() {
+    final ExgFilter filter = new ExgFilter().setHighpass(0.5);
+    final float[] packet = new float[ROWS];
+    for (int index = 0; index < 5 * 250 / ROWS; index++) {
+      Arrays.fill(packet, 1000);
+      filter.process(packet, 1, ROWS, 250);
+    }
+    assertEquals(0, packet[ROWS - 1], 1);
+  }
+
+  @Test
+  public void channelsKeepSeparateState() {
+    assertEquals(0, peaks(new ExgFilter().setHighpass(1).setNotch(50), 10, 250, 2)[1], 0);
+  }
+
+  @Test
+  public void coefficientsFollowTheSamplingRate() {
+    final ExgFilter filter = new ExgFilter().setNotch(60);
+    peaks(filter, 60, 250, 1);
+    assertTrue(peaks(filter, 60, 1000, 4)[0] < 5);
+  }
+
+  private static float[] decode(DeviceSession session) throws IOException, InvalidDataException {
+    final FrameParser parser =
+        new FrameParser(
+            new ExploreSimulator(8, 500).setDurationSeconds(1).openStream(),
+            new FrameDecoder(session));
+    while (parser.readFrames() >= 0) {}
+    final float[] samples = new float[500];
+    session.getSampleStore().drainTo(0, samples);
+    return samples;
+  }
+
+  @Test
+  public void decoderFiltersAtTheReportedSamplingRate() throws IOException, InvalidDataException {
+    final DeviceSession raw = new DeviceSession("Explore_raw");
+    final DeviceSession filtered = new DeviceSession("Explore_filtered");
+    final ExgFilter filter = new ExgFilter().setHighpass(0.5);
+    filtered.setExgFilter(filter);
+
+    final float[] expected = decode(raw);
+    filter.process(expected, 1, expected.length, 500);
+    final float[] actual = decode(filtered);
+    assertEquals(500, filtered.getSamplingRate());
+    for (int index = 0; index < expected.length; index += 50) {
+      assertEquals(expected[index], actual[index], 1e-3);
+    }
+  }
+
+  @Test
+  public void infoPacketDecodesSamplingRate() throws InvalidDataException {
+    final DeviceInfoPacket packet = new DeviceInfoPacket();
+    packet.convertData(new byte[] {0x35, 0x02, 4, 0x0F}, 0, 4);
+    assertEquals(1000, packet.samplingRate);
+    assertEquals(0x235, packet.firmwareVersion);
+    assertEquals(0x0F, packet.adcMask);
+  }
+}
@@ -0,0 +1,65 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mentalab.exception.InvalidDataException;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Test;
+
+public class UnitTestExploreSimulator {
+
+  private static int[] countFrames(InputStream stream) throws IOException, InvalidDataException {
+    final int[] counts = new int[256];
+    final FrameParser parser =
+        new FrameParser(stream, (pid, count, timestamp, buffer, offset, length) -> counts[pid]++);
+    while (parser.readFrames() >= 0) {}
+    return counts;
+  }
+
+  @Test
+  public void streamCarriesAllPacketTypesAtTheirRates() throws Exception {
+    final int[] counts =
+        countFrames(
+            new ExploreSimulator(8, 250)
+                .setDurationSeconds(2)
+                .setMarkerIntervalSeconds(1)
+                .openStream());
+
+    assertEquals(32, counts[Packet.PacketId.EEG98.getNumVal()]);
+    assertEquals(40, counts[Packet.PacketId.ORIENTATION.getNumVal()]);
+    assertEquals(2, counts[Packet.PacketId.ENVIRONMENT.getNumVal()]);
+    assertEquals(2, counts[Packet.PacketId.TIMESTAMP.getNumVal()]);
+    assertEquals(1, counts[Packet.PacketId.MARKER.getNumVal()]);
+  }
+
+  @Test
+  public void exgFramesDecodeToTheSimulatedSignal() throws Exception {
+    final Eeg94 packet = new Eeg94();
+    final float[] peak = {0};
+    final FrameParser parser =
+        new FrameParser(
+            new ExploreSimulator(4, 500).setDurationSeconds(1).openStream(),
+            (pid, count, timestamp, buffer, offset, length) -> {
+              if (pid == Packet.PacketId.EEG94.getNumVal()) {
+                packet.convertData(buffer, offset, length);
+                for (int index = 0; index < packet.getSampleCount() * 4; index++) {
+                  peak[0] = Math.max(peak[0], Math.abs(packet.getVoltageValues()[index]));
+                }
+              }
+            });
+    while (parser.readFrames() >= 0) {}
+
+    assertTrue(peak[0] > 50 && peak[0] < 100);
+  }
+
+  @Test
+  public void packetLossDropsFrames() throws Exception {
+    final int[] counts =
+        countFrames(
+            new ExploreSimulator(4, 250).setDurationSeconds(10).setPacketLoss(1).openStream());
+
+    assertEquals(0, counts[Packet.PacketId.ORIENTATION.getNumVal()]);
+  }
+}
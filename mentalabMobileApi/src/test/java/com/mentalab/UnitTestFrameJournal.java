@@ -0,0 +1,73 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UnitTestFrameJournal {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void recordingHoldsExactStreamAndIndexSeeks() throws Exception {
+    final byte[] stream = TestStreams.simulatedBytes(3);
+    final File file = folder.newFile("session.bin");
+    final List<Long> timestamps = new ArrayList<>();
+
+    MentalabCodec.startRecording(file);
+    try {
+      final FrameDecoder decoder = new FrameDecoder(MentalabCodec.getDefaultSession());
+      final FrameParser parser =
+          new FrameParser(
+              new ByteArrayInputStream(stream),
+              (pid, count, timestamp, buffer, offset, length) -> {
+                timestamps.add(timestamp);
+                decoder.onFrame(pid, count, timestamp, buffer, offset, length);
+              });
+      while (parser.readFrames() >= 0) {}
+    } finally {
+      MentalabCodec.stopRecording();
+    }
+
+    assertArrayEquals(stream, TestStreams.readFile(file));
+
+    final FrameIndex index = FrameIndex.open(file);
+    assertEquals(timestamps.size(), index.size());
+    assertEquals(0, index.offset(0));
+    final int frame = index.search(2 * ExploreSimulator.TICKS_PER_SECOND);
+    assertEquals(2 * ExploreSimulator.TICKS_PER_SECOND, index.timestamp(frame));
+    assertEquals((long) timestamps.get(frame), index.timestamp(frame));
+    assertTrue(timestamps.get(frame - 1) < index.timestamp(frame));
+    // the indexed offset points at the header of a frame with the same timestamp
+    final int offset = (int) index.offset(frame);
+    assertEquals(
+        index.timestamp(frame), (stream[offset + 4] & 0xFF) | (stream[offset + 5] & 0xFF) << 8);
+    assertEquals(index.size(), index.search(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void framesSpanSeveralRegions() throws Exception {
+    final File file = folder.newFile("regions.bin");
+    final byte[] frame = UnitTestFrameParser.frame(13, 0, 0, new byte[18]);
+    try (FrameJournal journal = new FrameJournal(file, 100, 30)) {
+      for (int index = 0; index < 10; index++) {
+        journal.append(frame, 0, frame.length, index * 500);
+      }
+      assertEquals(10 * frame.length, journal.length());
+    }
+
+    assertEquals(10 * frame.length, file.length());
+    final FrameIndex index = FrameIndex.open(file);
+    assertEquals(10, index.size());
+    assertEquals(7 * frame.length, index.offset(7));
+    assertEquals(4, index.search(1600));
+  }
+}
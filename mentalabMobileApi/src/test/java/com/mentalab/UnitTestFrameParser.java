@@ -0,0 +1,164 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mentalab.exception.InvalidDataException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class UnitTestFrameParser {
+
+  static byte[] frame(int pid, int count, long timestamp, byte[] data) {
+    final int payloadLength = 4 + data.length + 4;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(pid);
+    out.write(count);
+    out.write(payloadLength & 0xFF);
+    out.write(payloadLength >> 8);
+    for (int shift = 0; shift < 32; shift += 8) {
+      out.write((int) (timestamp >> shift) & 0xFF);
+    }
+    out.write(data, 0, data.length);
+    out.write(0xAF);
+    out.write(0xBE);
+    out.write(0xAD);
+    out.write(0xDE);
+    return out.toByteArray();
+  }
+
+  /** Returns at most chunkSize bytes per read to simulate short reads from Bluetooth */
+  private static InputStream trickle(byte[] bytes, int chunkSize) {
+    return new ByteArrayInputStream(bytes) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, chunkSize));
+      }
+    };
+  }
+
+  @Test
+  public void framesSplitAcrossReadsAreReassembled() throws IOException, InvalidDataException {
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    final byte[][] payloads = new byte[40][];
+    for (int index = 0; index < payloads.length; index++) {
+      payloads[index] = new byte[index * 3 + 1];
+      Arrays.fill(payloads[index], (byte) index);
+      stream.write(frame(144, index, 0xF0000000L + index, payloads[index]));
+    }
+
+    final List<byte[]> received = new ArrayList<>();
+    final List<Long> timestamps = new ArrayList<>();
+    final FrameParser parser =
+        new FrameParser(
+            trickle(stream.toByteArray(), 7),
+            (pid, count, timestamp, buffer, offset, length) -> {
+              assertEquals(144, pid);
+              received.add(Arrays.copyOfRange(buffer, offset, offset + length));
+              timestamps.add(timestamp);
+            },
+            16);
+    while (parser.readFrames() >= 0) {}
+
+    assertEquals(payloads.length, received.size());
+    for (int index = 0; index < payloads.length; index++) {
+      assertArrayEquals(payloads[index], received.get(index));
+      assertEquals(0xF0000000L + index, (long) timestamps.get(index));
+    }
+    assertEquals(0, parser.pendingBytes());
+  }
+
+  @Test
+  public void manyFramesAreParsedPerRead() throws IOException, InvalidDataException {
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (int index = 0; index < 10; index++) {
+      stream.write(frame(13, index, index, new byte[18]));
+    }
+    final int[] frames = {0};
+    final FrameParser parser =
+        new FrameParser(
+            new ByteArrayInputStream(stream.toByteArray()),
+            (pid, count, timestamp, buffer, offset, length) -> frames[0]++);
+
+    assertEquals(10, parser.readFrames());
+    assertEquals(10, frames[0]);
+    assertEquals(-1, parser.readFrames());
+  }
+
+  @Test
+  public void corruptFramesAreSkippedAndTheStreamResynchronizes()
+      throws IOException, InvalidDataException {
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (int index = 0; index < 30; index++) {
+      final byte[] frame = frame(13, index, index, new byte[18]);
+      if (index == 5) {
+        // lost byte in the packet data
+        stream.write(frame, 0, 10);
+        stream.write(frame, 11, frame.length - 11);
+      } else if (index == 12) {
+        // extra byte in the header
+        stream.write(frame, 0, 3);
+        stream.write(0x42);
+        stream.write(frame, 3, frame.length - 3);
+      } else if (index == 20) {
+        // flipped fletcher byte and garbage before the next frame
+        frame[frame.length - 2] ^= 1;
+        stream.write(frame);
+        stream.write(new byte[] {(byte) 0xAF, 0x13, 0x00, 0x01});
+      } else {
+        stream.write(frame);
+      }
+    }
+
+    final List<Integer> counts = new ArrayList<>();
+    final FrameParser parser =
+        new FrameParser(
+            trickle(stream.toByteArray(), 11),
+            (pid, count, timestamp, buffer, offset, length) -> counts.add(count),
+            16);
+    while (parser.readFrames() >= 0) {}
+
+    final List<Integer> expected = new ArrayList<>();
+    for (int index = 0; index < 30; index++) {
+      if (index != 5 && index != 12 && index != 20) {
+        expected.add(index);
+      }
+    }
+    assertEquals(expected, counts);
+    assertEquals(3, parser.getResyncCount());
+    assertEquals(29 + 31 + 30 + 4, parser.getSkippedBytes());
+  }
+
+  @Test
+  public void corruptSimulatorStreamKeepsDecoding() throws IOException, InvalidDataException {
+    final ExploreSimulator simulator =
+        new ExploreSimulator(8, 250).setSpeed(0).setDurationSeconds(20).setSeed(3);
+    final int[] clean = {0};
+    final FrameParser cleanParser =
+        new FrameParser(
+            simulator.openStream(), (pid, count, timestamp, buffer, offset, length) -> clean[0]++);
+    while (cleanParser.readFrames() >= 0) {}
+
+    final int[] received = {0};
+    final FrameParser parser =
+        new FrameParser(
+            simulator.setCorruption(0.05).openStream(),
+            (pid, count, timestamp, buffer, offset, length) -> {
+              assertEquals(0xAF, buffer[offset + length] & 0xFF);
+              received[0]++;
+            });
+    while (parser.readFrames() >= 0) {}
+
+    assertTrue(parser.getResyncCount() > 0);
+    // a corrupt frame costs itself and at most the frame after it
+    assertTrue(received[0] >= clean[0] - 2 * parser.getResyncCount());
+    assertTrue(received[0] < clean[0]);
+  }
+}
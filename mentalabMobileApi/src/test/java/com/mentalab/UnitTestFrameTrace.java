@@ -0,0 +1,52 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class UnitTestFrameTrace {
+
+  @Test
+  public void dumpFormatsTheLastEventsOldestFirst() {
+    final FrameTrace trace = new FrameTrace(4);
+    for (int count = 0; count < 6; count++) {
+      trace.record(FrameTrace.Stage.RECEIVED, 146, count, 468, 1000L * count);
+    }
+    trace.record(FrameTrace.Stage.CORRUPT, 13, 6, 96, 6000);
+
+    final String[] lines = trace.dump().split("\n");
+    assertEquals(7, trace.getEventCount());
+    assertEquals(4, lines.length);
+    assertEquals("FrameTrace: 3 of 7 events", lines[0]);
+    assertTrue(lines[1].endsWith(" RECEIVED pid=146 count=4 length=468 timestamp=4000"));
+    assertTrue(lines[2].endsWith(" RECEIVED pid=146 count=5 length=468 timestamp=5000"));
+    assertTrue(lines[3].endsWith(" CORRUPT pid=13 count=6 length=96 timestamp=6000"));
+  }
+
+  @Test
+  public void disabledTraceRecordsNothing() {
+    final FrameTrace trace = new FrameTrace();
+    trace.setEnabled(false);
+    trace.record(FrameTrace.Stage.DECODED, 146, 0, 468, 0);
+    assertEquals(0, trace.getEventCount());
+    assertEquals("FrameTrace: 0 of 0 events", trace.dump());
+  }
+
+  @Test
+  public void decoderTracesEveryFrame() throws Exception {
+    final DeviceSession session = new DeviceSession("Explore_Trace");
+    final FrameParser parser =
+        new FrameParser(
+            new ExploreSimulator(8, 250).setSpeed(0).setDurationSeconds(1).openStream(),
+            new FrameDecoder(session));
+    while (parser.readFrames() >= 0) {
+      // decode until the stream ends
+    }
+
+    assertEquals(2 * session.getFrameCount(), session.getTrace().getEventCount());
+    final String dump = session.getTrace().dump();
+    assertTrue(dump.contains(" RECEIVED pid=146 "));
+    assertTrue(dump.contains(" DECODED pid=146 "));
+  }
+}
@@ -1,6 +1,7 @@
 package com.mentalab;
 
 import com.mentalab.exception.InvalidDataException;
+import java.io.InputStream;
 import org.junit.Test;
 
 /**
@@ -12,6 +13,6 @@ public class UnitTestMentalabCodec {
 
   @Test(expected = InvalidDataException.class)
   public void nullCheckDecodeIsCorrect() throws InvalidDataException {
-    MentalabCodec.decode(null);
+    MentalabCodec.decode((InputStream) null);
   }
 }
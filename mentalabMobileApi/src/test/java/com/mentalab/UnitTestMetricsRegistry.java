@@ -0,0 +1,163 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class UnitTestMetricsRegistry {
+
+  @Test
+  public void stripedCountersSumAllThreads() throws InterruptedException {
+    final StripedCounter counter = new StripedCounter(3);
+    final Thread[] threads = new Thread[4];
+    for (int index = 0; index < threads.length; index++) {
+      threads[index] =
+          new Thread(
+              () -> {
+                for (int count = 0; count < 10000; count++) {
+                  counter.increment(1);
+                  counter.add(2, 2);
+                }
+              });
+      threads[index].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, counter.sum(0));
+    assertEquals(40000, counter.sum(1));
+    assertEquals(80000, counter.sum(2));
+  }
+
+  @Test
+  public void histogramPercentilesAreWithinAFactorOfTwo() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int nanos = 1; nanos <= 1000; nanos++) {
+      histogram.record(nanos * 1000L);
+    }
+    final MetricsSnapshot.Histogram snapshot = histogram.snapshot();
+
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(500500, snapshot.getMeanNanos(), 1e-6);
+    assertEquals(1000000, snapshot.getMaxNanos());
+    final long median = snapshot.getPercentileNanos(0.5);
+    assertTrue(median >= 500000 && median < 1000000);
+    final long p99 = snapshot.getPercentileNanos(0.99);
+    assertTrue(p99 >= 990000 && p99 <= 1000000);
+    assertEquals(0, new LatencyHistogram().snapshot().getPercentileNanos(0.5));
+  }
+
+  @Test
+  public void reportingSurvivesAFailingGauge() throws InterruptedException {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final AtomicInteger calls = new AtomicInteger();
+    registry.registerGauge(
+        "flaky",
+        () -> {
+          if (calls.incrementAndGet() == 1) {
+            throw new IllegalStateException("gauge failed");
+          }
+          return 1;
+        });
+    final CountDownLatch published = new CountDownLatch(1);
+    final PuSubManager.Subscription subscription =
+        PuSubManager.getInstance()
+            .subscribe(MetricsRegistry.METRICS, snapshot -> published.countDown());
+    try {
+      registry.startReporting(5, TimeUnit.MILLISECONDS);
+      assertTrue(published.await(5, TimeUnit.SECONDS));
+    } finally {
+      registry.stopReporting();
+      subscription.unsubscribe();
+    }
+  }
+
+  @Test
+  public void snapshotsReportRatesCountersAndGauges() {
+    final MetricsRegistry registry = new MetricsRegistry();
+    registry.registerGauge("depth", () -> 7);
+    final MetricsSnapshot before = registry.snapshot();
+    for (int frame = 0; frame < 100; frame++) {
+      registry.recordFrame(146, 64, 2000);
+    }
+    registry.increment(MetricsRegistry.Counter.FRAMES_CORRUPT);
+    registry.add(MetricsRegistry.Counter.FRAMES_DROPPED, 3);
+    final MetricsSnapshot after = registry.snapshot();
+
+    assertEquals(100, after.getFrames(146));
+    assertEquals(6400, after.getBytes(146));
+    assertEquals(100, after.getDecodeLatency(146).getCount());
+    assertNull(after.getDecodeLatency(144));
+    assertEquals(1, after.getCounter(MetricsRegistry.Counter.FRAMES_CORRUPT));
+    assertEquals(3, after.getCounter(MetricsRegistry.Counter.FRAMES_DROPPED));
+    assertEquals(Long.valueOf(7), after.getGauges().get("depth"));
+    final double seconds = (after.getNanoTime() - before.getNanoTime()) / 1e9;
+    assertEquals(100 / seconds, after.getFramesPerSecond(146, before), 1e-6 * 100 / seconds);
+    assertEquals(6400 / seconds, after.getBytesPerSecond(146, before), 1e-6 * 6400 / seconds);
+
+    registry.unregisterGauge("depth");
+    assertTrue(registry.snapshot().getGauges().isEmpty());
+  }
+
+  /** Decodes a whole simulated stream on the calling thread, returning the decoded frames */
+  private static long decode(ExploreSimulator simulator) throws Exception {
+    final DeviceSession session = new DeviceSession("Explore_Metrics");
+    final InputStream stream = simulator.openStream();
+    final FrameParser parser = new FrameParser(stream, new FrameDecoder(session));
+    while (parser.readFrames() >= 0) {
+      // decode until the stream ends
+    }
+    return session.getFrameCount();
+  }
+
+  @Test
+  public void queueGaugesReportSampleStoresAndMailboxes() throws Exception {
+    final DeviceSession session = new DeviceSession("Explore_Gauges");
+    final FrameParser parser =
+        new FrameParser(
+            new ExploreSimulator(8, 250).setDurationSeconds(1).openStream(),
+            new FrameDecoder(session));
+    while (parser.readFrames() >= 0) {}
+    PuSubManager.getInstance();
+
+    final Map<String, Long> gauges = MetricsRegistry.getInstance().snapshot().getGauges();
+    assertEquals(Long.valueOf(16 * 16), gauges.get("Explore_Gauges/sampleStore.depth"));
+    assertEquals(Long.valueOf(0), gauges.get("Explore_Gauges/sampleStore.fillPercent"));
+    assertTrue(gauges.containsKey("mailboxes.depth"));
+    assertTrue(gauges.containsKey("mailboxes.fillPercent"));
+
+    session.close();
+    assertFalse(
+        MetricsRegistry.getInstance()
+            .snapshot()
+            .getGauges()
+            .containsKey("Explore_Gauges/sampleStore.depth"));
+  }
+
+  @Test
+  public void gapsInTheFrameCounterCountAsDroppedFrames() throws Exception {
+    final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    final ExploreSimulator simulator =
+        new ExploreSimulator(8, 250).setSpeed(0).setDurationSeconds(4).setSeed(7);
+    final long sent = decode(simulator);
+
+    final MetricsSnapshot before = metrics.snapshot();
+    final long received = decode(simulator.setPacketLoss(0.2));
+    final MetricsSnapshot after = metrics.snapshot();
+
+    final long dropped =
+        after.getCounter(MetricsRegistry.Counter.FRAMES_DROPPED)
+            - before.getCounter(MetricsRegistry.Counter.FRAMES_DROPPED);
+    assertTrue(received < sent);
+    assertEquals(sent, received + dropped);
+    assertEquals(received, after.getTotalFrames() - before.getTotalFrames());
+  }
+}
@@ -0,0 +1,113 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mentalab.exception.InvalidDataException;
+import java.io.IOException;
+import org.junit.Test;
+
+public class UnitTestPlotDecimator {
+
+  /** Ticks per sample at 250Hz */
+  private static final int TICKS = 40;
+
+  /** Adds samples of one channel at 250Hz in packets of 16, the first sample at timestamp 0 */
+  private static void add(PlotDecimator decimator, float[] values) {
+    final float[] packet = new float[16];
+    for (int offset = 0; offset < values.length; offset += 16) {
+      System.arraycopy(values, offset, packet, 0, 16);
+      decimator.add(packet, 1, 16, (long) offset * TICKS, 250);
+    }
+  }
+
+  @Test
+  public void envelopeCoversEveryPixel() {
+    final PlotDecimator decimator = new PlotDecimator(1 << 12);
+    final float[] ramp = new float[1024];
+    for (int index = 0; index < ramp.length; index++) {
+      ramp[index] = index;
+    }
+    add(decimator, ramp);
+    assertEquals(1023 * TICKS, decimator.getNewestTimestamp());
+
+    final float[] min = new float[10];
+    final float[] max = new float[10];
+    assertEquals(10, decimator.minMax(0, 0, 1000 * TICKS, min, max));
+    for (int pixel = 0; pixel < 10; pixel++) {
+      // pixels span 100 samples, buckets of 64 samples at the borders count for both pixels
+      assertTrue(min[pixel] <= pixel * 100 && min[pixel] > pixel * 100 - 64);
+      assertTrue(max[pixel] >= pixel * 100 + 99 && max[pixel] < pixel * 100 + 164);
+    }
+  }
+
+  @Test
+  public void spikesSurviveDecimation() {
+    final PlotDecimator decimator = new PlotDecimator();
+    final float[] values = new float[30_000];
+    values[12_345] = 1000;
+    add(decimator, values);
+
+    final float[] min = new float[100];
+    final float[] max = new float[100];
+    decimator.minMax(0, 0, 30_000L * TICKS, min, max);
+    float peak = 0;
+    for (float value : max) {
+      peak = Math.max(peak, value);
+    }
+    assertEquals(1000, peak, 0);
+    assertEquals(0, min[41], 0);
+  }
+
+  @Test
+  public void onlyKeptSamplesArePlotted() {
+    final PlotDecimator decimator = new PlotDecimator(64);
+    add(decimator, new float[256]);
+    assertEquals(192 * TICKS, decimator.getOldestTimestamp());
+
+    final float[] min = new float[8];
+    final float[] max = new float[8];
+    // the first half of the range was overwritten
+    assertEquals(4, decimator.minMax(0, 128 * TICKS, 256 * TICKS, min, max));
+    assertTrue(Float.isNaN(min[0]));
+    assertEquals(0, max[7], 0);
+  }
+
+  @Test
+  public void lttbKeepsTheShape() {
+    final PlotDecimator decimator = new PlotDecimator();
+    final float[] sine = new float[10_000];
+    for (int index = 0; index < sine.length; index++) {
+      sine[index] = (float) Math.sin(2 * Math.PI * index / 2500);
+    }
+    add(decimator, sine);
+
+    final long[] timestamps = new long[100];
+    final float[] values = new float[100];
+    assertEquals(100, decimator.lttb(0, 0, 10_000L * TICKS, timestamps, values));
+    float peak = 0;
+    for (int index = 0; index < 100; index++) {
+      if (index > 0) {
+        assertTrue(timestamps[index] > timestamps[index - 1]);
+      }
+      peak = Math.max(peak, values[index]);
+    }
+    assertEquals(1, peak, 0.01);
+    assertEquals(sine[0], values[0], 0.01);
+  }
+
+  @Test
+  public void decoderUpdatesTheSessionDecimator() throws IOException, InvalidDataException {
+    final DeviceSession session = new DeviceSession("Explore_plot");
+    final PlotDecimator decimator = new PlotDecimator();
+    session.setPlotDecimator(decimator);
+    final FrameParser parser =
+        new FrameParser(
+            new ExploreSimulator(8, 250).setDurationSeconds(1).openStream(),
+            new FrameDecoder(session));
+    while (parser.readFrames() >= 0) {}
+
+    assertEquals(8, decimator.getChannelCount());
+    assertEquals(255 * TICKS, decimator.getNewestTimestamp());
+  }
+}
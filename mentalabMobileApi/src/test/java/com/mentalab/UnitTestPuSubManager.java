@@ -0,0 +1,108 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class UnitTestPuSubManager {
+
+  private static final Topic<Integer> NUMBERS = new Topic<>("numbers", Integer.class);
+
+  /** Runs dispatch tasks only when asked to, so mailboxes can fill up */
+  private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+
+  private final PuSubManager manager = new PuSubManager(pending::add);
+
+  private void runPending() {
+    Runnable task;
+    while ((task = pending.poll()) != null) {
+      task.run();
+    }
+  }
+
+  @Test
+  public void synchronousSubscribersReceiveUntilUnsubscribed() {
+    final List<Integer> received = new ArrayList<>();
+    final PuSubManager.Subscription subscription = manager.subscribe(NUMBERS, received::add);
+
+    manager.publish(NUMBERS, 1);
+    subscription.unsubscribe();
+    manager.publish(NUMBERS, 2);
+
+    assertEquals(Arrays.asList(1), received);
+    assertFalse(manager.hasSubscribers(NUMBERS));
+  }
+
+  @Test
+  public void asynchronousSubscribersDropOldestWhenFull() {
+    final List<Integer> received = new ArrayList<>();
+    final PuSubManager.Subscription subscription =
+        manager.subscribe(NUMBERS, received::add, 3, PuSubManager.OverflowPolicy.DROP_OLDEST);
+
+    for (int index = 0; index < 5; index++) {
+      manager.publish(NUMBERS, index);
+    }
+    assertTrue(received.isEmpty());
+    runPending();
+
+    assertEquals(Arrays.asList(2, 3, 4), received);
+    assertEquals(2, subscription.droppedCount());
+  }
+
+  @Test
+  public void asynchronousSubscribersDropNewestWhenFull() {
+    final List<Integer> received = new ArrayList<>();
+    final PuSubManager.Subscription subscription =
+        manager.subscribe(NUMBERS, received::add, 2, PuSubManager.OverflowPolicy.DROP_NEWEST);
+
+    for (int index = 0; index < 5; index++) {
+      manager.publish(NUMBERS, index);
+    }
+    runPending();
+
+    assertEquals(Arrays.asList(0, 1), received);
+    assertEquals(3, subscription.droppedCount());
+  }
+
+  @Test
+  public void mailboxGaugesReportQueuedMessages() {
+    manager.subscribe(NUMBERS, number -> {}, 4, PuSubManager.OverflowPolicy.DROP_NEWEST);
+    manager.subscribe(NUMBERS, number -> {}, 10, PuSubManager.OverflowPolicy.DROP_NEWEST);
+    manager.publish(NUMBERS, 1);
+    manager.publish(NUMBERS, 2);
+
+    assertEquals(4, manager.mailboxDepth());
+    assertEquals(50, manager.mailboxFillPercent());
+    runPending();
+    assertEquals(0, manager.mailboxDepth());
+  }
+
+  @Test
+  public void failingListenerKeepsItsMailboxScheduled() {
+    final List<Integer> received = new ArrayList<>();
+    manager.subscribe(
+        NUMBERS,
+        number -> {
+          if (number == 0) {
+            throw new IllegalStateException("listener failed");
+          }
+          received.add(number);
+        },
+        4,
+        PuSubManager.OverflowPolicy.BLOCK);
+
+    manager.publish(NUMBERS, 0);
+    manager.publish(NUMBERS, 1);
+    runPending();
+    manager.publish(NUMBERS, 2);
+    runPending();
+
+    assertEquals(Arrays.asList(1, 2), received);
+  }
+}
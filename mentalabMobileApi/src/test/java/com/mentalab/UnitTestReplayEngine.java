@@ -0,0 +1,123 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UnitTestReplayEngine {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File recording(String name, double seconds) throws Exception {
+    final File file = folder.newFile(name);
+    TestStreams.writeFile(file, TestStreams.simulatedBytes(seconds));
+    return file;
+  }
+
+  private static long[] replayTimestamps(ReplayEngine replay) throws Exception {
+    final List<SampleBlock[]> batches = new ArrayList<>();
+    final PuSubManager.Subscription subscription =
+        PuSubManager.getInstance().subscribe(MentalabCodec.SAMPLE_BLOCKS, batches::add);
+    try {
+      replay.run();
+    } finally {
+      subscription.unsubscribe();
+    }
+    final List<Long> timestamps = new ArrayList<>();
+    for (SampleBlock[] batch : batches) {
+      for (SampleBlock block : batch) {
+        if (block.getPid() == Packet.PacketId.EEG98.getNumVal()) {
+          timestamps.add(block.getDeviceTimestamp());
+        }
+      }
+    }
+    final long[] result = new long[timestamps.size()];
+    for (int index = 0; index < result.length; index++) {
+      result[index] = timestamps.get(index);
+    }
+    return result;
+  }
+
+  @Test
+  public void unthrottledReplayDecodesEveryFrame() throws Exception {
+    try (ReplayEngine replay = new ReplayEngine(recording("session.bin", 4)).setSpeed(0)) {
+      final long[] timestamps = replayTimestamps(replay);
+      assertEquals(63, timestamps.length);
+      assertEquals(0, timestamps[0]);
+    }
+  }
+
+  @Test
+  public void seekStartsAtTheFirstFrameAfterTheTimestamp() throws Exception {
+    try (ReplayEngine replay = new ReplayEngine(recording("seek.bin", 4)).setSpeed(0)) {
+      replay.seek(2 * ExploreSimulator.TICKS_PER_SECOND);
+      final long[] timestamps = replayTimestamps(replay);
+      // ExG frames of 16 samples at 250Hz are 640 ticks apart
+      assertEquals(20480, timestamps[0]);
+      assertEquals(31, timestamps.length);
+    }
+  }
+
+  @Test
+  public void seekUsesTheJournalIndex() throws Exception {
+    final File file = folder.newFile("journal.bin");
+    MentalabCodec.startRecording(file);
+    try (ReplayEngine source = new ReplayEngine(recording("source.bin", 2)).setSpeed(0)) {
+      source.run();
+    } finally {
+      MentalabCodec.stopRecording();
+    }
+
+    try (ReplayEngine replay = new ReplayEngine(file).setSpeed(0)) {
+      replay.seek(ExploreSimulator.TICKS_PER_SECOND);
+      assertEquals(10240, replayTimestamps(replay)[0]);
+    }
+  }
+
+  @Test
+  public void failedReplayReportsItsFailure() throws Exception {
+    final ReplayEngine replay = new ReplayEngine(recording("closed.bin", 1)).setSpeed(0);
+    replay.close();
+    replay.start();
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (replay.isRunning() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+
+    assertFalse(replay.isRunning());
+    assertTrue(replay.getFailure() instanceof IOException);
+  }
+
+  @Test
+  public void closingARunningReplayIsNoFailure() throws Exception {
+    // unpaced, so the replay is most likely reading the file when it is closed
+    final ReplayEngine replay = new ReplayEngine(recording("running.bin", 600)).setSpeed(0);
+    replay.start();
+    Thread.sleep(20);
+    replay.close();
+
+    assertFalse(replay.isRunning());
+    assertNull(replay.getFailure());
+  }
+
+  @Test
+  public void pacedReplayFollowsDeviceTime() throws Exception {
+    try (ReplayEngine replay = new ReplayEngine(recording("paced.bin", 1)).setSpeed(10)) {
+      final long start = System.nanoTime();
+      replay.run();
+      final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+      // the last frame is due 0.96s of device time after the first one
+      assertTrue(elapsedMillis >= 90);
+      assertTrue(elapsedMillis < 1000);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.mentalab.exception.InvalidDataException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class UnitTestSampleBlock {
+
+  private static void putInt24(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) value;
+    bytes[offset + 1] = (byte) (value >> 8);
+    bytes[offset + 2] = (byte) (value >> 16);
+  }
+
+  @Test
+  public void exgPacketBecomesInterleavedBlock() throws InvalidDataException {
+    final int rows = 16;
+    final byte[] data = new byte[rows * 9 * 3];
+    for (int row = 0; row < rows; row++) {
+      putInt24(data, row * 27, 0x0F);
+      for (int channel = 0; channel < 8; channel++) {
+        putInt24(data, row * 27 + 3 + channel * 3, row * 8 + channel);
+      }
+    }
+    final Packet packet = new Eeg98();
+    packet.convertData(data, 0, data.length);
+
+    final SampleBlock block = packet.toSampleBlock(146, 1234, -1);
+    assertEquals(146, block.getPid());
+    assertEquals(0xFF, block.getChannelMask());
+    assertEquals(1234, block.getDeviceTimestamp());
+    assertEquals(8, block.getChannelCount());
+    assertEquals(rows, block.getSampleCount());
+    final double uv = DataPacket.UV_PER_COUNT;
+    assertEquals((5 * 8 + 3) * uv, block.getSample(5, 3), 1e-3);
+
+    final float[] channel = new float[rows];
+    assertEquals(rows, block.copyChannel(7, channel, 0));
+    assertEquals((15 * 8 + 7) * uv, channel[15], 1e-3);
+  }
+
+  @Test
+  public void orientationPacketBecomesSingleSampleBlock() throws InvalidDataException {
+    final byte[] data = new byte[18];
+    data[4] = (byte) 0xFF; // Acc_Z = -1
+    data[5] = (byte) 0xFF;
+    data[12] = 100; // Gyro_X is negated
+    final Packet packet = new Orientation();
+    packet.convertData(data, 0, data.length);
+
+    final SampleBlock block = packet.toSampleBlock(13, 0, -1);
+    assertEquals(9, block.getChannelCount());
+    assertEquals(1, block.getSampleCount());
+    assertEquals(0x1FF, block.getChannelMask());
+    assertEquals(-0.061f, block.getSample(0, 2), 1e-6);
+    assertEquals(-152f, block.getSample(0, 6), 1e-3);
+  }
+
+  @Test
+  public void environmentLightIsScaled() throws InvalidDataException {
+    final byte[] data = {25, (byte) 0xFF, 0x0F, 0, 0};
+    final Packet packet = new Environment();
+    packet.convertData(data, 0, data.length);
+
+    final SampleBlock block = packet.toSampleBlock(19, 0, -1);
+    assertEquals(25f, block.getSample(0, 0), 0);
+    assertEquals(1000f, block.getSample(0, 1), 1e-3);
+  }
+
+  @Test
+  public void queueDropsOldestBlocks() {
+    final SampleBlockQueue queue = new SampleBlockQueue(2);
+    for (int index = 0; index < 3; index++) {
+      queue.offer(new SampleBlock(13, 0x1FF, index, -1, 9, 1, new float[9]));
+    }
+    assertEquals(1, queue.droppedCount());
+
+    final List<SampleBlock> blocks = new ArrayList<>();
+    assertEquals(2, queue.drainTo(blocks, 10));
+    assertEquals(1, blocks.get(0).getDeviceTimestamp());
+    assertEquals(2, blocks.get(1).getDeviceTimestamp());
+    assertNull(queue.poll());
+  }
+
+  @Test
+  public void decoderPublishesBlocksPerChunk() throws InvalidDataException {
+    final FrameDecoder decoder = new FrameDecoder(MentalabCodec.getDefaultSession());
+    final List<SampleBlock[]> batches = new ArrayList<>();
+    final PuSubManager.Subscription subscription =
+        PuSubManager.getInstance().subscribe(MentalabCodec.SAMPLE_BLOCKS, batches::add);
+    try {
+      decoder.flushBlocks();
+      final byte[] orientation = new byte[18];
+      decoder.onFrame(13, 0, 100, orientation, 0, orientation.length);
+      decoder.onFrame(13, 1, 200, orientation, 0, orientation.length);
+      decoder.flushBlocks();
+    } finally {
+      subscription.unsubscribe();
+    }
+    assertEquals(1, batches.size());
+    assertEquals(2, batches.get(0).length);
+    assertEquals(200, batches.get(0)[1].getDeviceTimestamp());
+  }
+}
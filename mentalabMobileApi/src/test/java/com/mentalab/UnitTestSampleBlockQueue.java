@@ -0,0 +1,127 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UnitTestSampleBlockQueue {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  /** Orientation like block of 3 samples */
+  private static SampleBlock block(long timestamp) {
+    final float[] samples = new float[9 * 3];
+    samples[0] = timestamp;
+    return new SampleBlock(13, 0x1FF, timestamp, -1, 9, 3, samples);
+  }
+
+  @Test
+  public void dropNewestKeepsQueuedBlocks() {
+    final SampleBlockQueue queue = SampleBlockQueue.dropNewest(2);
+    for (int index = 0; index < 5; index++) {
+      queue.offer(block(index));
+    }
+
+    assertEquals(3, queue.droppedCount());
+    assertEquals(9, queue.droppedSampleCount());
+    assertEquals(0, queue.poll().getDeviceTimestamp());
+    assertEquals(1, queue.poll().getDeviceTimestamp());
+    assertNull(queue.poll());
+  }
+
+  @Test
+  public void blockingQueueWaitsForTheConsumer() throws Exception {
+    final SampleBlockQueue queue = SampleBlockQueue.blocking(1, 5, TimeUnit.SECONDS);
+    queue.offer(block(0));
+    final Thread consumer =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(50);
+                queue.poll();
+              } catch (InterruptedException ignored) {
+                // the producer times out and the test fails
+              }
+            });
+    consumer.start();
+    queue.offer(block(1));
+    consumer.join();
+
+    assertEquals(0, queue.droppedCount());
+    assertEquals(1, queue.poll().getDeviceTimestamp());
+
+    final SampleBlockQueue impatient = SampleBlockQueue.blocking(1, 10, TimeUnit.MILLISECONDS);
+    impatient.offer(block(0));
+    impatient.offer(block(1));
+    assertEquals(1, impatient.droppedCount());
+    assertEquals(0, impatient.poll().getDeviceTimestamp());
+  }
+
+  @Test
+  public void spilledBlocksComeBackInOrder() throws Exception {
+    final File file = new File(folder.getRoot(), "blocks.spill");
+    final SampleBlockQueue queue = SampleBlockQueue.spillToDisk(2, file);
+    assertSame(SampleBlockQueue.BufferPolicy.SPILL_TO_DISK, queue.getPolicy());
+    for (int index = 0; index < 10; index++) {
+      queue.offer(block(index));
+    }
+
+    assertEquals(10, queue.size());
+    assertEquals(8, queue.spilledCount());
+    assertEquals(24, queue.spilledSampleCount());
+    assertEquals(0, queue.droppedCount());
+    assertTrue(file.length() > 0);
+
+    assertEquals(0, queue.poll().getDeviceTimestamp());
+    // blocks offered while others are spilled queue behind them
+    queue.offer(block(10));
+    final List<SampleBlock> blocks = new ArrayList<>();
+    assertEquals(10, queue.drainTo(blocks, 100));
+    for (int index = 0; index < blocks.size(); index++) {
+      assertEquals(index + 1, blocks.get(index).getDeviceTimestamp());
+      assertEquals(index + 1, blocks.get(index).getSample(0, 0), 0);
+    }
+    assertEquals(0, file.length());
+
+    queue.close();
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void unreadableSpillFileCountsItsBlocksAsDropped() throws Exception {
+    final File file = new File(folder.getRoot(), "truncated.spill");
+    final SampleBlockQueue queue = SampleBlockQueue.spillToDisk(2, file);
+    for (int index = 0; index < 10; index++) {
+      queue.offer(block(index));
+    }
+    try (RandomAccessFile spill = new RandomAccessFile(file, "rw")) {
+      spill.setLength(10);
+    }
+    final long droppedBefore =
+        MetricsRegistry.getInstance().snapshot().getCounter(MetricsRegistry.Counter.BLOCKS_DROPPED);
+
+    assertEquals(0, queue.poll().getDeviceTimestamp());
+    assertEquals(1, queue.poll().getDeviceTimestamp());
+    assertNull(queue.poll());
+
+    assertEquals(8, queue.droppedCount());
+    assertEquals(24, queue.droppedSampleCount());
+    assertEquals(
+        droppedBefore + 8,
+        MetricsRegistry.getInstance()
+            .snapshot()
+            .getCounter(MetricsRegistry.Counter.BLOCKS_DROPPED));
+    queue.close();
+  }
+}
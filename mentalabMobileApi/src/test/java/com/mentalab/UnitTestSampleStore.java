@@ -0,0 +1,52 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Queue;
+import org.junit.Test;
+
+public class UnitTestSampleStore {
+
+  @Test
+  public void drainReturnsOldestSamplesFirst() {
+    final FloatRingBuffer buffer = new FloatRingBuffer(8);
+    buffer.write(new float[] {1, 10, 2, 20, 3, 30}, 0, 2, 3);
+
+    final float[] drained = new float[8];
+    assertEquals(3, buffer.drainTo(drained));
+    assertArrayEquals(new float[] {1, 2, 3}, java.util.Arrays.copyOf(drained, 3), 0f);
+    assertEquals(0, buffer.drainTo(drained));
+  }
+
+  @Test
+  public void overflowDropsOldestSamples() {
+    final FloatRingBuffer buffer = new FloatRingBuffer(4);
+    for (int index = 0; index < 10; index++) {
+      buffer.write(index);
+    }
+
+    final float[] drained = new float[4];
+    assertEquals(4, buffer.drainTo(drained));
+    assertArrayEquals(new float[] {6, 7, 8, 9}, drained, 0f);
+    assertEquals(6, buffer.droppedCount());
+  }
+
+  @Test
+  public void queueViewSharesTheBuffer() {
+    final SampleStore store = new SampleStore(16);
+    store.write(SampleStore.ORIENTATION_CHANNEL, 1.5f);
+    store.write(SampleStore.ORIENTATION_CHANNEL, 2.5f);
+
+    final Queue<Float> accX = store.asMap().get("Acc_X");
+    assertEquals(2, accX.size());
+    assertEquals(1.5f, accX.poll(), 0f);
+
+    final float[] rest = new float[2];
+    assertEquals(1, store.drainTo(SampleStore.ORIENTATION_CHANNEL, rest));
+    assertEquals(2.5f, rest[0], 0f);
+    assertNull(accX.poll());
+    assertNull(store.asMap().get("Channel_1"));
+  }
+}
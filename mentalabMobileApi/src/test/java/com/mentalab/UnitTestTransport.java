@@ -0,0 +1,179 @@
+package com.mentalab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UnitTestTransport {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final DecoderPool pool = new DecoderPool(1);
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  /** A second of an 8 channel device at 250Hz, 16 ExG frames of 16 rows */
+  private static byte[] simulatedSecond() throws Exception {
+    return TestStreams.simulatedBytes(1);
+  }
+
+  /** Waits for a session to reach the end of its transport */
+  private static void awaitEnd(DeviceSession session) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (session.isConnected() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertFalse(session.isConnected());
+  }
+
+  @Test
+  public void recordingFileIsDecodedToItsEnd() throws Exception {
+    final File file = folder.newFile("recording.bin");
+    TestStreams.writeFile(file, simulatedSecond());
+    final DeviceSession session = new DeviceSession("Explore_File");
+    final Transport transport = Transports.open(file);
+    assertFalse(transport.isWritable());
+
+    session.connect(transport, pool);
+    awaitEnd(session);
+
+    assertEquals(16 * 16, session.getSampleStore().channel(0).size());
+    assertNull(session.getCommandChannel());
+  }
+
+  @Test
+  public void pipeIsDecodedUntilItsSinkCloses() throws Exception {
+    final byte[] frames = simulatedSecond();
+    final Pipe pipe = Pipe.open();
+    final DeviceSession session = new DeviceSession("Explore_Pipe");
+    session.connect(Transports.of(pipe.source(), null), pool);
+
+    final ByteBuffer buffer = ByteBuffer.wrap(frames);
+    while (buffer.hasRemaining()) {
+      pipe.sink().write(buffer);
+    }
+    pipe.sink().close();
+    awaitEnd(session);
+
+    assertEquals(16 * 16, session.getSampleStore().channel(0).size());
+  }
+
+  @Test
+  public void streamWithoutAvailableBytesIsDecodedToItsEnd() throws Exception {
+    final InputStream stream =
+        new FilterInputStream(new ByteArrayInputStream(simulatedSecond())) {
+          @Override
+          public int available() {
+            return 0;
+          }
+        };
+    final DeviceSession session = new DeviceSession("Explore_Stream");
+    session.connect(stream, null, pool);
+    awaitEnd(session);
+
+    assertEquals(16 * 16, session.getSampleStore().channel(0).size());
+  }
+
+  @Test
+  public void loopbackServerStreamsFramesAndReceivesCommands() throws Exception {
+    final byte[] frames = simulatedSecond();
+    final byte[] command = new byte[DeviceCommand.FRAME_LENGTH];
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress("127.0.0.1", 0));
+      final DeviceSession session = new DeviceSession("Explore_Tcp");
+      session.connect(Transports.connect("127.0.0.1", server.socket().getLocalPort()), pool);
+
+      try (SocketChannel device = server.accept()) {
+        session.getCommandChannel().send(DeviceCommand.softReset());
+        final ByteBuffer received = ByteBuffer.wrap(command);
+        while (received.hasRemaining() && device.read(received) >= 0) {}
+
+        final ByteBuffer buffer = ByteBuffer.wrap(frames);
+        while (buffer.hasRemaining()) {
+          device.write(buffer);
+        }
+      }
+      awaitEnd(session);
+
+      assertEquals(16 * 16, session.getSampleStore().channel(0).size());
+    }
+    final byte[] expected = new byte[DeviceCommand.FRAME_LENGTH];
+    DeviceCommand.softReset().encode(expected, 0, 0, 0);
+    // the host timestamp differs
+    assertEquals(expected[0], command[0]);
+    assertEquals(expected[8], command[8]);
+    assertArrayEquals(
+        new byte[] {(byte) 0xAF, (byte) 0xBE, (byte) 0xAD, (byte) 0xDE},
+        new byte[] {command[10], command[11], command[12], command[13]});
+  }
+
+  @Test
+  public void writesWaitForRoomInFullSockets() throws Exception {
+    final byte[] bytes = new byte[4 << 20];
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress("127.0.0.1", 0));
+      final Transport transport = Transports.connect("127.0.0.1", server.socket().getLocalPort());
+      try (SocketChannel device = server.accept()) {
+        // far more than the socket buffers hold before the device reads
+        final Thread writer =
+            new Thread(
+                () -> {
+                  try {
+                    transport.write(ByteBuffer.wrap(bytes));
+                  } catch (IOException ignored) {
+                    // the device receives less and the test fails
+                  }
+                });
+        writer.start();
+        Thread.sleep(50);
+        final ByteBuffer received = ByteBuffer.allocate(bytes.length);
+        while (received.hasRemaining() && device.read(received) >= 0) {}
+        writer.join(5000);
+        assertFalse(received.hasRemaining());
+      } finally {
+        transport.close();
+      }
+    }
+  }
+
+  @Test
+  public void streamTransportFillsDirectBuffers() throws Exception {
+    final byte[] frames = simulatedSecond();
+    final Transport transport =
+        Transports.of(new ByteArrayInputStream(frames), new ByteArrayOutputStream());
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (!transport.isReadable() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertTrue(transport.isReadable());
+    final ByteBuffer direct = ByteBuffer.allocateDirect(100);
+    assertEquals(100, transport.read(direct));
+    direct.flip();
+    for (int index = 0; index < 100; index++) {
+      assertEquals(frames[index], direct.get(index));
+    }
+    transport.close();
+    assertFalse(transport.isOpen());
+  }
+}